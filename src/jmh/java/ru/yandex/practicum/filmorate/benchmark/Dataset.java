@@ -0,0 +1,153 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.async.StorageExecutor;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/*
+ * One generated dataset per trial: "scale" users and as many films, every user likes LIKES_PER_USER films
+ * (skewed towards low ids, so the popular list has a long tail) and befriends FRIENDS_PER_USER other users.
+ * The same seed gives the same data for both backends.
+ */
+@State(Scope.Benchmark)
+public class Dataset {
+
+    static final int LIKES_PER_USER = 4;
+    static final int FRIENDS_PER_USER = 4;
+    static final int SAMPLE_SIZE = 1024;
+    private static final int CHUNK_SIZE = 10_000;
+    private static final long SEED = 42;
+
+    @Param({"1000", "100000", "1000000"})
+    public int scale;
+
+    @Param({"memory", "db"})
+    public String backend;
+
+    FilmService filmService;
+    UserService userService;
+    FilmStorage filmStorage;
+    UserStorage userStorage;
+    // Pairs of random user ids for the lookups, benchmarks walk through them in a loop
+    long[] userIds;
+    long[] otherUserIds;
+
+    private ConfigurableApplicationContext context;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(FilmorateApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+                        "logging.level.root=WARN")
+                .run();
+        if (backend.equals("memory")) {
+            userStorage = context.getBean(InMemoryUserStorage.class);
+            filmStorage = context.getBean(InMemoryFilmStorage.class);
+            StorageExecutor executor = context.getBean(StorageExecutor.class);
+            userService = new UserService(userStorage, executor);
+            filmService = new FilmService(filmStorage, userService, executor);
+        } else {
+            userStorage = context.getBean(UserDbStorage.class);
+            filmStorage = context.getBean(FilmDbStorage.class);
+            userService = context.getBean(UserService.class);
+            filmService = context.getBean(FilmService.class);
+        }
+        generate(new Random(SEED));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    private void generate(Random random) {
+        for (int from = 0; from < scale; from += CHUNK_SIZE) {
+            int to = Math.min(scale, from + CHUNK_SIZE);
+            List<User> users = new ArrayList<>(to - from);
+            List<Film> films = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                users.add(User.builder()
+                        .email("user" + i + "@mail.ru")
+                        .login("user" + i)
+                        .name("User " + i)
+                        .birthday(LocalDate.of(1950, 1, 1).plusDays(random.nextInt(20_000)))
+                        .build());
+                films.add(Film.builder()
+                        .name("Film " + i)
+                        .description("Generated film " + i)
+                        .duration(60 + random.nextInt(120))
+                        .releaseDate(LocalDate.of(1950, 1, 1).plusDays(random.nextInt(25_000)))
+                        .mpa(MPA.builder().id(1 + random.nextInt(5)).build())
+                        .genres(Set.of(Genre.builder().id(1 + random.nextInt(6)).build()))
+                        .build());
+            }
+            userStorage.createAll(users);
+            filmStorage.createAll(films);
+        }
+
+        for (long from = 1; from <= scale; from += CHUNK_SIZE) {
+            long to = Math.min(scale, from + CHUNK_SIZE - 1);
+            List<Like> likes = new ArrayList<>();
+            List<Friendship> friendships = new ArrayList<>();
+            for (long userId = from; userId <= to; userId++) {
+                for (long filmId : distinctIds(random, userId, LIKES_PER_USER, true)) {
+                    likes.add(Like.builder().filmId(filmId).userId(userId).build());
+                }
+                for (long friendId : distinctIds(random, userId, FRIENDS_PER_USER, false)) {
+                    friendships.add(Friendship.builder().userId(userId).friendId(friendId).build());
+                }
+            }
+            filmStorage.addLikes(likes);
+            userStorage.addFriendships(friendships);
+        }
+
+        userIds = new long[SAMPLE_SIZE];
+        otherUserIds = new long[SAMPLE_SIZE];
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            userIds[i] = 1 + random.nextInt(scale);
+            otherUserIds[i] = 1 + random.nextInt(scale);
+        }
+    }
+
+    private Set<Long> distinctIds(Random random, long userId, int count, boolean isSkewed) {
+        Set<Long> ids = new HashSet<>();
+        while (ids.size() < Math.min(count, scale - 1)) {
+            double r = random.nextDouble();
+            long id = 1 + (long) (scale * (isSkewed ? r * r * r : r));
+            if (isSkewed || id != userId) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+}
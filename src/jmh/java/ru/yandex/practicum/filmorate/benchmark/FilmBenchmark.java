@@ -0,0 +1,44 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms4g", "-Xmx4g", "-Dfile.encoding=UTF-8"})
+public class FilmBenchmark {
+
+    private int next;
+
+    @Benchmark
+    public List<Film> findTopLikableFilms(Dataset dataset) {
+        return dataset.filmService.findTopLikableFilms(10);
+    }
+
+    @Benchmark
+    public Optional<List<Film>> findTopCommonFilms(Dataset dataset) {
+        int i = next++ & (Dataset.SAMPLE_SIZE - 1);
+        return dataset.filmService.findTopCommonFilms(dataset.userIds[i], dataset.otherUserIds[i]).join();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Film> findAll(Dataset dataset) {
+        return dataset.filmStorage.findAll();
+    }
+}
@@ -0,0 +1,232 @@
+package ru.yandex.practicum.filmorate.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Open-loop load generator: requests are sent on a fixed schedule whether or not earlier ones have answered,
+ * and latency is measured from the scheduled send time, so a stalled server shows up in the percentiles
+ * instead of silently lowering the request rate (coordinated omission).
+ *
+ * mvn -P loadtest verify -Dloadtest.rate=500 -Dloadtest.duration=60
+ */
+public class LoadTest {
+
+    private static final int LIKES_PER_USER = 5;
+    private static final int FRIENDS_PER_USER = 5;
+    private static final int CHUNK_SIZE = 10_000;
+
+    private final int rate;
+    private final Duration warmup;
+    private final Duration duration;
+    private final int users;
+    private final int films;
+    private final Map<Workload.Endpoint, EndpointStats> stats = new EnumMap<>(Workload.Endpoint.class);
+    private final AtomicLong inFlight = new AtomicLong();
+    private long maxSendLagNanos;
+
+    private LoadTest(int rate, Duration warmup, Duration duration, int users, int films) {
+        this.rate = rate;
+        this.warmup = warmup;
+        this.duration = duration;
+        this.users = users;
+        this.films = films;
+        for (Workload.Endpoint endpoint : Workload.Endpoint.values()) {
+            stats.put(endpoint, new EndpointStats());
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        LoadTest loadTest = new LoadTest(Integer.getInteger("loadtest.rate", 200),
+                Duration.ofSeconds(Integer.getInteger("loadtest.warmup", 10)),
+                Duration.ofSeconds(Integer.getInteger("loadtest.duration", 60)),
+                Integer.getInteger("loadtest.users", 10_000),
+                Integer.getInteger("loadtest.films", 10_000));
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(FilmorateApplication.class)
+                .properties("server.port=0",
+                        "spring.datasource.url=jdbc:h2:mem:loadtest;DB_CLOSE_DELAY=-1",
+                        "logging.level.root=WARN")
+                .run(args);
+        try {
+            loadTest.seed(context.getBean(UserService.class), context.getBean(FilmService.class), new Random(42));
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            loadTest.run(new Workload("http://localhost:" + port, loadTest.users, loadTest.films));
+            loadTest.report();
+        } finally {
+            context.close();
+        }
+    }
+
+    private void seed(UserService userService, FilmService filmService, Random random) {
+        for (int from = 0; from < Math.max(users, films); from += CHUNK_SIZE) {
+            List<User> userChunk = new ArrayList<>();
+            for (int i = from; i < Math.min(users, from + CHUNK_SIZE); i++) {
+                userChunk.add(User.builder().email("user" + i + "@mail.ru").login("user" + i).name("User " + i)
+                        .birthday(LocalDate.of(1970, 1, 1).plusDays(random.nextInt(15_000))).build());
+            }
+            List<Film> filmChunk = new ArrayList<>();
+            for (int i = from; i < Math.min(films, from + CHUNK_SIZE); i++) {
+                filmChunk.add(Film.builder().name("Film " + i).description("Generated film " + i)
+                        .duration(60 + random.nextInt(120))
+                        .releaseDate(LocalDate.of(1950, 1, 1).plusDays(random.nextInt(25_000)))
+                        .mpa(MPA.builder().id(1 + random.nextInt(5)).build())
+                        .genres(Set.of(Genre.builder().id(1 + random.nextInt(6)).build()))
+                        .build());
+            }
+            userService.createUsers(userChunk);
+            filmService.createFilms(filmChunk);
+        }
+
+        for (long from = 1; from <= users; from += CHUNK_SIZE) {
+            List<Like> likes = new ArrayList<>();
+            List<Friendship> friendships = new ArrayList<>();
+            for (long userId = from; userId < Math.min(users + 1L, from + CHUNK_SIZE); userId++) {
+                Set<Long> filmIds = new HashSet<>();
+                while (filmIds.size() < Math.min(LIKES_PER_USER, films)) {
+                    double r = random.nextDouble();
+                    filmIds.add(1 + (long) (films * r * r * r));
+                }
+                for (long filmId : filmIds) {
+                    likes.add(Like.builder().filmId(filmId).userId(userId).build());
+                }
+                Set<Long> friendIds = new HashSet<>();
+                while (friendIds.size() < Math.min(FRIENDS_PER_USER, users - 1)) {
+                    long friendId = 1 + random.nextInt(users);
+                    if (friendId != userId) {
+                        friendIds.add(friendId);
+                    }
+                }
+                for (long friendId : friendIds) {
+                    friendships.add(Friendship.builder().userId(userId).friendId(friendId).build());
+                }
+            }
+            filmService.addLikes(likes);
+            userService.addFriendships(friendships);
+        }
+    }
+
+    private void run(Workload workload) throws InterruptedException {
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        Random random = new Random();
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long measureFrom = start + warmup.toNanos();
+        long end = measureFrom + duration.toNanos();
+
+        System.out.printf("Sending %d req/s for %ds after %ds of warmup%n", rate, duration.toSeconds(),
+                warmup.toSeconds());
+        for (long intended = start; intended < end; intended += interval) {
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            } else {
+                maxSendLagNanos = Math.max(maxSendLagNanos, -wait);
+            }
+            Workload.Call call = workload.next(random);
+            boolean isMeasured = intended >= measureFrom;
+            long scheduledAt = intended;
+            inFlight.incrementAndGet();
+            client.sendAsync(call.request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, e) -> {
+                        if (isMeasured) {
+                            stats.get(call.endpoint).record(System.nanoTime() - scheduledAt,
+                                    e == null ? response.statusCode() : -1);
+                        }
+                        inFlight.decrementAndGet();
+                    });
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        if (inFlight.get() > 0) {
+            System.out.printf("%d requests still in flight after 30s are not counted%n", inFlight.get());
+        }
+    }
+
+    private void report() {
+        System.out.printf("%n%-42s %8s %9s %7s %7s %7s %9s %9s %9s %9s %9s%n", "Endpoint", "Count", "Req/s",
+                "2xx", "4xx", "Errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "Max ms");
+        Histogram total = new Histogram(3);
+        long count = 0;
+        for (Map.Entry<Workload.Endpoint, EndpointStats> entry : stats.entrySet()) {
+            EndpointStats endpointStats = entry.getValue();
+            print(entry.getKey().name, endpointStats.latencies, endpointStats.ok.sum(),
+                    endpointStats.clientErrors.sum(), endpointStats.errors.sum());
+            total.add(endpointStats.latencies);
+            count += endpointStats.latencies.getTotalCount();
+        }
+        print("Total", total, -1, -1, -1);
+        if (maxSendLagNanos > TimeUnit.MILLISECONDS.toNanos(10)) {
+            System.out.printf("%nThe generator fell behind its schedule by up to %.1f ms, lower the rate or run "
+                    + "it on a separate machine%n", maxSendLagNanos / 1e6);
+        }
+        System.out.printf("%nTarget %d req/s, measured %.1f req/s%n", rate, count / (double) duration.toSeconds());
+    }
+
+    private void print(String name, Histogram latencies, long ok, long clientErrors, long errors) {
+        System.out.printf("%-42s %8d %9.1f %7s %7s %7s %9.2f %9.2f %9.2f %9.2f %9.2f%n", name,
+                latencies.getTotalCount(), latencies.getTotalCount() / (double) duration.toSeconds(),
+                ok < 0 ? "" : ok, clientErrors < 0 ? "" : clientErrors, errors < 0 ? "" : errors,
+                millis(latencies.getValueAtPercentile(50)), millis(latencies.getValueAtPercentile(90)),
+                millis(latencies.getValueAtPercentile(99)), millis(latencies.getValueAtPercentile(99.9)),
+                millis(latencies.getMaxValue()));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static class EndpointStats {
+
+        private final Histogram latencies = new ConcurrentHistogram(3);
+        private final LongAdder ok = new LongAdder();
+        private final LongAdder clientErrors = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+
+        // status -1 means the request failed without a response
+        private void record(long latencyNanos, int status) {
+            latencies.recordValue(latencyNanos);
+            if (status >= 200 && status < 300) {
+                ok.increment();
+            } else if (status >= 400 && status < 500) {
+                clientErrors.increment();
+            } else {
+                errors.increment();
+            }
+        }
+    }
+}
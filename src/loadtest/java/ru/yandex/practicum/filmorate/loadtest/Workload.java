@@ -0,0 +1,122 @@
+package ru.yandex.practicum.filmorate.loadtest;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/*
+ * Weighted mix of API calls. Unlike and unfriend take back what an earlier like or friend call added,
+ * so most of them hit an existing row instead of answering 404.
+ */
+class Workload {
+
+    enum Endpoint {
+        POPULAR("GET /films/popular", 40),
+        LIKE("PUT /films/{id}/like/{userId}", 15),
+        UNLIKE("DELETE /films/{id}/like/{userId}", 10),
+        FRIEND("PUT /users/{id}/friends/{friendId}", 10),
+        UNFRIEND("DELETE /users/{id}/friends/{friendId}", 5),
+        COMMON_FRIENDS("GET /users/{id}/friends/common/{otherId}", 20);
+
+        final String name;
+        final int weight;
+
+        Endpoint(String name, int weight) {
+            this.name = name;
+            this.weight = weight;
+        }
+    }
+
+    static class Call {
+
+        final Endpoint endpoint;
+        final HttpRequest request;
+
+        private Call(Endpoint endpoint, HttpRequest request) {
+            this.endpoint = endpoint;
+            this.request = request;
+        }
+    }
+
+    private final String baseUrl;
+    private final int users;
+    private final int films;
+    private final int totalWeight;
+    private final Queue<long[]> likes = new ConcurrentLinkedQueue<>();
+    private final Queue<long[]> friendships = new ConcurrentLinkedQueue<>();
+
+    Workload(String baseUrl, int users, int films) {
+        this.baseUrl = baseUrl;
+        this.users = users;
+        this.films = films;
+        int weight = 0;
+        for (Endpoint endpoint : Endpoint.values()) {
+            weight += endpoint.weight;
+        }
+        this.totalWeight = weight;
+    }
+
+    Call next(Random random) {
+        int roll = random.nextInt(totalWeight);
+        for (Endpoint endpoint : Endpoint.values()) {
+            roll -= endpoint.weight;
+            if (roll < 0) {
+                return call(endpoint, random);
+            }
+        }
+        throw new IllegalStateException("Weights should add up to " + totalWeight);
+    }
+
+    private Call call(Endpoint endpoint, Random random) {
+        switch (endpoint) {
+            case POPULAR:
+                return get(endpoint, "/films/popular?count=10");
+            case LIKE: {
+                long[] like = {randomFilm(random), randomUser(random)};
+                likes.add(like);
+                return send(endpoint, "PUT", "/films/" + like[0] + "/like/" + like[1]);
+            }
+            case UNLIKE: {
+                long[] like = likes.poll();
+                return like == null ? call(Endpoint.LIKE, random)
+                        : send(endpoint, "DELETE", "/films/" + like[0] + "/like/" + like[1]);
+            }
+            case FRIEND: {
+                long[] friendship = {randomUser(random), randomUser(random)};
+                friendships.add(friendship);
+                return send(endpoint, "PUT", "/users/" + friendship[0] + "/friends/" + friendship[1]);
+            }
+            case UNFRIEND: {
+                long[] friendship = friendships.poll();
+                return friendship == null ? call(Endpoint.FRIEND, random)
+                        : send(endpoint, "DELETE", "/users/" + friendship[0] + "/friends/" + friendship[1]);
+            }
+            case COMMON_FRIENDS:
+                return get(endpoint, "/users/" + randomUser(random) + "/friends/common/" + randomUser(random));
+            default:
+                throw new IllegalArgumentException("Unknown endpoint " + endpoint);
+        }
+    }
+
+    private long randomUser(Random random) {
+        return 1 + random.nextInt(users);
+    }
+
+    // Skewed towards low ids, the same films keep getting liked like in a real catalogue
+    private long randomFilm(Random random) {
+        double r = random.nextDouble();
+        return 1 + (long) (films * r * r * r);
+    }
+
+    private Call get(Endpoint endpoint, String path) {
+        return new Call(endpoint, HttpRequest.newBuilder(URI.create(baseUrl + path)).GET().build());
+    }
+
+    private Call send(Endpoint endpoint, String method, String path) {
+        return new Call(endpoint, HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .method(method, HttpRequest.BodyPublishers.noBody())
+                .build());
+    }
+}
@@ -0,0 +1,109 @@
+package ru.yandex.practicum.filmorate.async;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.datasource.ReadRouting;
+import ru.yandex.practicum.filmorate.metrics.QueryScope;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/*
+ * Runs storage calls for the controllers. With filmorate.async.enabled the calls go to a pool with one thread
+ * per pooled connection and a bounded queue, so Tomcat threads are freed at once and a flood of slow calls gets
+ * 503 instead of piling up. Without it every call runs inline on the request thread, as before.
+ */
+@Component
+public class StorageExecutor {
+
+    private final boolean isAsync;
+    private final ThreadPoolTaskExecutor executor;
+
+    public StorageExecutor(MeterRegistry registry,
+                           @Value("${filmorate.async.enabled:false}") boolean isAsync,
+                           @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize,
+                           @Value("${filmorate.async.queue-capacity:1000}") int queueCapacity) {
+        this.isAsync = isAsync;
+        if (!isAsync) {
+            this.executor = null;
+            return;
+        }
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("storage-");
+        executor.setTaskDecorator(new ContextDecorator(registry.timer("filmorate.storage.executor.wait")));
+        executor.initialize();
+        new ExecutorServiceMetrics(executor.getThreadPoolExecutor(), "storage", Tags.empty()).bindTo(registry);
+    }
+
+    // Runs every call on the calling thread, for services built outside the Spring context
+    public static StorageExecutor inline() {
+        return new StorageExecutor(null, false, 0, 0);
+    }
+
+    public <T> CompletableFuture<T> supply(Supplier<T> action) {
+        if (!isAsync) {
+            return CompletableFuture.completedFuture(action.get());
+        }
+        try {
+            return CompletableFuture.supplyAsync(action, executor);
+        } catch (TaskRejectedException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    // Carries the caller's MDC, query scopes and read routing over to the pool thread and times the wait in the queue
+    private static class ContextDecorator implements TaskDecorator {
+
+        private final Timer waitTimer;
+
+        private ContextDecorator(Timer waitTimer) {
+            this.waitTimer = waitTimer;
+        }
+
+        @Override
+        public Runnable decorate(Runnable task) {
+            Map<String, String> context = MDC.getCopyOfContextMap();
+            Runnable scopedTask = ReadRouting.propagate(QueryScope.propagate(task));
+            long submittedAt = System.nanoTime();
+            return () -> {
+                waitTimer.record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+                Map<String, String> previous = MDC.getCopyOfContextMap();
+                setContext(context);
+                try {
+                    scopedTask.run();
+                } finally {
+                    setContext(previous);
+                }
+            };
+        }
+
+        private static void setContext(Map<String, String> context) {
+            if (context == null) {
+                MDC.clear();
+            } else {
+                MDC.setContextMap(context);
+            }
+        }
+    }
+}
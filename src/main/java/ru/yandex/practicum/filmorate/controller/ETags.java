@@ -0,0 +1,25 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+// Strong validators built from version columns, so a match can be checked without loading the entity
+final class ETags {
+
+    private ETags() {
+    }
+
+    static String of(String type, long id, long version) {
+        return "\"" + type + "-" + id + "-" + version + "\"";
+    }
+
+    // Ordered id -> version pairs of a list, the order is part of the representation
+    static String of(String type, Map<Long, Long> versions) {
+        StringBuilder fingerprint = new StringBuilder();
+        versions.forEach((id, version) -> fingerprint.append(id).append(':').append(version).append(','));
+        return "\"" + type + "-" + DigestUtils.md5DigestAsHex(fingerprint.toString().getBytes(StandardCharsets.UTF_8))
+                + "\"";
+    }
+}
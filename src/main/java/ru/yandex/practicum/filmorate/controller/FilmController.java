@@ -1,16 +1,28 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.async.StorageExecutor;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmDocument;
+import ru.yandex.practicum.filmorate.model.FilmSelection;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
 import javax.validation.Valid;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 @RequiredArgsConstructor
 @RestController
@@ -22,54 +34,155 @@ import java.util.List;
 public class FilmController {
 
     private final FilmService service;
+    private final ObjectMapper objectMapper;
+    private final StorageExecutor executor;
 
+    @GetMapping(params = {"!after", "!limit", "!genre", "!mpa"})
+    public ResponseEntity<StreamingResponseBody> streamAllFilms() {
+        if (service.keepsFilmDocuments()) {
+            return JsonArrayStream.ofJson(write ->
+                    service.forEachFilmDocument(document -> write.accept(document.getJson())));
+        }
+        return JsonArrayStream.of(objectMapper, service::forEachFilm);
+    }
+
+    @GetMapping(params = {"!genre", "!mpa"})
+    public CompletableFuture<ResponseEntity<List<Film>>> findAllFilms(@RequestParam(required = false) String after,
+                                                                      @RequestParam(required = false) Integer limit) {
+        return executor.supply(() -> PageCursor.page(after, limit,
+                (afterId, size) -> Optional.of(service.findAllFilms(afterId, size)), Film::getId));
+    }
+
+    // Mapped without conditions, so it only gets the requests that have genre or mpa and the other two can't take
     @GetMapping
-    public ResponseEntity<List<Film>> findAllFilms() {
-        return new ResponseEntity<>(service.findAllFilms(), HttpStatus.OK);
+    public CompletableFuture<ResponseEntity<FilmSelection>> filterFilms(
+            @RequestParam(defaultValue = "") Set<Integer> genre,
+            @RequestParam(defaultValue = "") Set<Integer> mpa,
+            @RequestParam(defaultValue = "any") String match,
+            @RequestParam(defaultValue = "10") long count) {
+        if (!match.equalsIgnoreCase("any") && !match.equalsIgnoreCase("all")) {
+            return CompletableFuture.completedFuture(new ResponseEntity<>(null, HttpStatus.BAD_REQUEST));
+        }
+        return executor.supply(() -> new ResponseEntity<>(service.filterFilms(genre, match.equalsIgnoreCase("all"),
+                mpa, count), HttpStatus.OK));
     }
 
     @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<Film> createFilm(@Valid @RequestBody Film film) {
-        return new ResponseEntity<>(service.createFilm(film), HttpStatus.CREATED);
+    public CompletableFuture<ResponseEntity<Film>> createFilm(@Valid @RequestBody Film film) {
+        return executor.supply(() -> new ResponseEntity<>(service.createFilm(film), HttpStatus.CREATED));
     }
 
     @PutMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<Film> updateFilm(@Valid @RequestBody Film film) {
-        return service.updateFilm(film).map(value -> new ResponseEntity<>(value, HttpStatus.OK))
-                .orElseGet(() -> new ResponseEntity<>(null, HttpStatus.NOT_FOUND));
+    public CompletableFuture<ResponseEntity<Film>> updateFilm(@Valid @RequestBody Film film) {
+        return executor.supply(() -> service.updateFilm(film).map(value -> new ResponseEntity<>(value, HttpStatus.OK))
+                .orElseGet(() -> new ResponseEntity<>(null, HttpStatus.NOT_FOUND)));
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<Film> findFilmById(@PathVariable long id) {
-        return service.findFilmById(id).map(film -> new ResponseEntity<>(film, HttpStatus.OK))
-                .orElseGet(() -> new ResponseEntity<>(null, HttpStatus.NOT_FOUND));
+    public CompletableFuture<ResponseEntity<?>> findFilmById(@PathVariable long id, WebRequest request) {
+        return executor.supply(() -> {
+            if (service.keepsFilmDocuments()) {
+                return findFilmDocumentById(id, request);
+            }
+            Optional<Long> version = service.findFilmVersion(id);
+            if (version.isPresent() && request.checkNotModified(ETags.of("film", id, version.get()))) {
+                return null;
+            }
+            return service.findFilmById(id).map(film -> new ResponseEntity<>(film, HttpStatus.OK))
+                    .orElseGet(() -> new ResponseEntity<>(null, HttpStatus.NOT_FOUND));
+        });
+    }
+
+    // The version for the ETag and the bytes of the body come from the same row
+    private ResponseEntity<?> findFilmDocumentById(long id, WebRequest request) {
+        Optional<FilmDocument> document = service.findFilmDocument(id);
+        if (document.isEmpty()) {
+            return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
+        }
+        if (request.checkNotModified(ETags.of("film", id, document.get().getVersion()))) {
+            return null;
+        }
+        return new ResponseEntity<>(document.get().getJson(), HttpStatus.OK);
     }
 
     @DeleteMapping("/{id}")
-    public ResponseEntity<Film> deleteFilmById(@PathVariable long id) {
-        return service.deleteFilmById(id) ? new ResponseEntity<>(null, HttpStatus.OK)
-                : new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
+    public CompletableFuture<ResponseEntity<Film>> deleteFilmById(@PathVariable long id) {
+        return executor.supply(() -> service.deleteFilmById(id) ? new ResponseEntity<>(null, HttpStatus.OK)
+                : new ResponseEntity<>(null, HttpStatus.NOT_FOUND));
     }
 
     @PutMapping("/{id}/like/{userId}")
-    public ResponseEntity<Film> likeFilm(@PathVariable long id, @PathVariable long userId) {
-        return service.likeFilm(id, userId) ? new ResponseEntity<>(null, HttpStatus.OK)
-                : new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
+    public CompletableFuture<ResponseEntity<Film>> likeFilm(@PathVariable long id, @PathVariable long userId) {
+        return service.likeFilm(id, userId).thenApply(isLiked -> isLiked ? new ResponseEntity<>(null, HttpStatus.OK)
+                : new ResponseEntity<>(null, HttpStatus.NOT_FOUND));
     }
 
     @DeleteMapping("/{id}/like/{userId}")
-    public ResponseEntity<Film> removeLikeOfFilm(@PathVariable long id, @PathVariable long userId) {
-        return service.removeLikeFromFilm(id, userId) ? new ResponseEntity<>(null, HttpStatus.OK)
-                : new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
+    public CompletableFuture<ResponseEntity<Film>> removeLikeOfFilm(@PathVariable long id,
+                                                                    @PathVariable long userId) {
+        return service.removeLikeFromFilm(id, userId).thenApply(isRemoved -> isRemoved
+                ? new ResponseEntity<>(null, HttpStatus.OK)
+                : new ResponseEntity<>(null, HttpStatus.NOT_FOUND));
+    }
+
+    @GetMapping("/liked")
+    public CompletableFuture<ResponseEntity<List<Film>>> findUserFilms(@RequestParam long userId,
+                                                                       @RequestParam(required = false) String after,
+                                                                       @RequestParam(required = false) Integer limit) {
+        return executor.supply(() -> {
+            if (after == null && limit == null) {
+                return service.getUserFilms(userId).map(films -> new ResponseEntity<>(films, HttpStatus.OK))
+                        .orElseGet(() -> new ResponseEntity<>(null, HttpStatus.NOT_FOUND));
+            }
+            return PageCursor.page(after, limit, (afterId, size) -> service.getUserFilms(userId, afterId, size),
+                    Film::getId);
+        });
     }
 
     @GetMapping("/popular")
-    public ResponseEntity<List<Film>> findTopLikableFilms(@RequestParam(defaultValue = "10") long count) {
-        return new ResponseEntity<>(service.findTopLikableFilms(count), HttpStatus.OK);
+    public CompletableFuture<ResponseEntity<?>> findTopLikableFilms(
+            @RequestParam(defaultValue = "10") long count, WebRequest request) {
+        return executor.supply(() -> {
+            if (service.keepsFilmDocuments()) {
+                return findTopLikableFilmDocuments(count, request);
+            }
+            if (request.checkNotModified(ETags.of("popular", service.findTopLikableFilmsVersions(count)))) {
+                return null;
+            }
+            return new ResponseEntity<>(service.findTopLikableFilms(count), HttpStatus.OK);
+        });
+    }
+
+    private ResponseEntity<?> findTopLikableFilmDocuments(long count, WebRequest request) {
+        List<FilmDocument> documents = service.findTopLikableFilmDocuments(count);
+        Map<Long, Long> versions = new LinkedHashMap<>();
+        documents.forEach(document -> versions.put(document.getId(), document.getVersion()));
+        if (request.checkNotModified(ETags.of("popular", versions))) {
+            return null;
+        }
+        return new ResponseEntity<>(JsonArrayStream.join(documents.stream().map(FilmDocument::getJson)
+                .collect(Collectors.toList())), HttpStatus.OK);
     }
+
+    @GetMapping("/search")
+    public CompletableFuture<ResponseEntity<?>> searchFilms(@RequestParam String q,
+                                                            @RequestParam(defaultValue = "10") int count,
+                                                            @RequestParam(defaultValue = "false") boolean boost) {
+        return executor.supply(() -> {
+            if (service.keepsFilmDocuments()) {
+                return new ResponseEntity<>(JsonArrayStream.join(service.searchFilmDocuments(q, count, boost).stream()
+                        .map(FilmDocument::getJson)
+                        .collect(Collectors.toList())), HttpStatus.OK);
+            }
+            return new ResponseEntity<>(service.searchFilms(q, count, boost), HttpStatus.OK);
+        });
+    }
+
     @GetMapping(value = "/common")
-    public ResponseEntity<List<Film>> findTopCommonFilms(@RequestParam long userId, @RequestParam long friendId) {
-        return service.findTopCommonFilms(userId, friendId).map(film -> new ResponseEntity<>(film, HttpStatus.OK))
-                .orElseGet(() -> new ResponseEntity<>(null, HttpStatus.NOT_FOUND));
+    public CompletableFuture<ResponseEntity<List<Film>>> findTopCommonFilms(@RequestParam long userId,
+                                                                            @RequestParam long friendId) {
+        return service.findTopCommonFilms(userId, friendId).thenApply(films -> films
+                .map(value -> new ResponseEntity<>(value, HttpStatus.OK))
+                .orElseGet(() -> new ResponseEntity<>(null, HttpStatus.NOT_FOUND)));
     }
 }
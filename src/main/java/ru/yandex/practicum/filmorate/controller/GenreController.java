@@ -1,6 +1,7 @@
 package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -12,6 +13,7 @@ import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.service.GenreService;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 @RequiredArgsConstructor
 @RestController
@@ -22,16 +24,19 @@ import java.util.List;
 )
 public class GenreController {
 
+    private static final CacheControl REFERENCE_DATA_CACHE = CacheControl.maxAge(1, TimeUnit.DAYS).cachePublic();
+
     private final GenreService service;
 
     @GetMapping()
     public ResponseEntity<List<Genre>> findAllGenres() {
-        return new ResponseEntity<>(service.findAllGenres(), HttpStatus.OK);
+        return ResponseEntity.ok().cacheControl(REFERENCE_DATA_CACHE).body(service.findAllGenres());
     }
 
     @GetMapping("/{id}")
     public ResponseEntity<Genre> findGenreById(@PathVariable int id) {
-        return service.findGenreById(id).map(genre -> new ResponseEntity<>(genre, HttpStatus.OK))
+        return service.findGenreById(id)
+                .map(genre -> ResponseEntity.ok().cacheControl(REFERENCE_DATA_CACHE).body(genre))
                 .orElseGet(() -> new ResponseEntity<>(null, HttpStatus.NOT_FOUND));
     }
 }
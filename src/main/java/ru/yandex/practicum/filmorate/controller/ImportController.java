@@ -0,0 +1,45 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.model.ImportResult;
+import ru.yandex.practicum.filmorate.service.ImportService;
+
+import java.io.InputStream;
+
+@RequiredArgsConstructor
+@RestController
+@RequestMapping(
+        value = "/import",
+        consumes = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_PLAIN_VALUE},
+        produces = MediaType.APPLICATION_JSON_VALUE
+)
+public class ImportController {
+
+    private final ImportService service;
+
+    @PostMapping("/users")
+    public ResponseEntity<ImportResult> importUsers(InputStream input) {
+        return new ResponseEntity<>(service.importUsers(input), HttpStatus.OK);
+    }
+
+    @PostMapping("/films")
+    public ResponseEntity<ImportResult> importFilms(InputStream input) {
+        return new ResponseEntity<>(service.importFilms(input), HttpStatus.OK);
+    }
+
+    @PostMapping("/likes")
+    public ResponseEntity<ImportResult> importLikes(InputStream input) {
+        return new ResponseEntity<>(service.importLikes(input), HttpStatus.OK);
+    }
+
+    @PostMapping("/friendships")
+    public ResponseEntity<ImportResult> importFriendships(InputStream input) {
+        return new ResponseEntity<>(service.importFriendships(input), HttpStatus.OK);
+    }
+}
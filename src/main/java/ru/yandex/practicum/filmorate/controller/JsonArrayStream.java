@@ -0,0 +1,80 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Writes rows to the response as one JSON array while the storage reads them, the whole list never sits in heap
+final class JsonArrayStream {
+
+    private JsonArrayStream() {
+    }
+
+    static <T> ResponseEntity<StreamingResponseBody> of(ObjectMapper objectMapper, Consumer<Consumer<T>> source) {
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                generator.writeStartArray();
+                source.accept(item -> {
+                    try {
+                        generator.writeObject(item);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeEndArray();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    // Elements that are JSON already are copied byte for byte, nothing goes through the ObjectMapper
+    static ResponseEntity<StreamingResponseBody> ofJson(Consumer<Consumer<byte[]>> source) {
+        StreamingResponseBody body = outputStream -> {
+            try {
+                writeArray(outputStream, source);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    static byte[] join(List<byte[]> elements) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        writeArray(outputStream, elements::forEach);
+        return outputStream.toByteArray();
+    }
+
+    private static void writeArray(OutputStream outputStream, Consumer<Consumer<byte[]>> source) {
+        try {
+            outputStream.write('[');
+            boolean[] isFirst = {true};
+            source.accept(element -> {
+                try {
+                    if (!isFirst[0]) {
+                        outputStream.write(',');
+                    }
+                    isFirst[0] = false;
+                    outputStream.write(element);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            outputStream.write(']');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
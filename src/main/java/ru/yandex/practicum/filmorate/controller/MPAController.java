@@ -1,6 +1,7 @@
 package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -12,6 +13,7 @@ import ru.yandex.practicum.filmorate.model.MPA;
 import ru.yandex.practicum.filmorate.service.MPAService;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 @RequiredArgsConstructor
 @RestController
@@ -22,16 +24,19 @@ import java.util.List;
 )
 public class MPAController {
 
+    private static final CacheControl REFERENCE_DATA_CACHE = CacheControl.maxAge(1, TimeUnit.DAYS).cachePublic();
+
     private final MPAService service;
 
     @GetMapping()
     public ResponseEntity<List<MPA>> findAllRatings() {
-        return new ResponseEntity<>(service.findAllRatings(), HttpStatus.OK);
+        return ResponseEntity.ok().cacheControl(REFERENCE_DATA_CACHE).body(service.findAllRatings());
     }
 
     @GetMapping("/{id}")
     public ResponseEntity<MPA> findRatingById(@PathVariable int id) {
-        return service.findRatingById(id).map(mpa -> new ResponseEntity<>(mpa, HttpStatus.OK))
+        return service.findRatingById(id)
+                .map(mpa -> ResponseEntity.ok().cacheControl(REFERENCE_DATA_CACHE).body(mpa))
                 .orElseGet(() -> new ResponseEntity<>(null, HttpStatus.NOT_FOUND));
     }
 
@@ -0,0 +1,66 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.function.ToLongFunction;
+
+// Opaque keyset cursor: the last id of a page, clients just send back what they got in X-Next-Cursor
+final class PageCursor {
+
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int MAX_LIMIT = 1000;
+
+    private PageCursor() {
+    }
+
+    static <T> ResponseEntity<List<T>> page(String after, Integer limit, PageLoader<T> loader,
+                                            ToLongFunction<T> idGetter) {
+        OptionalLong afterId = decode(after);
+        int pageSize = limit == null ? DEFAULT_LIMIT : limit;
+        if (afterId.isEmpty() || pageSize < 1 || pageSize > MAX_LIMIT) {
+            return new ResponseEntity<>(null, HttpStatus.BAD_REQUEST);
+        }
+        Optional<List<T>> page = loader.load(afterId.getAsLong(), pageSize);
+        if (page.isEmpty()) {
+            return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
+        }
+        List<T> items = page.get();
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (items.size() == pageSize) {
+            response.header(NEXT_CURSOR_HEADER, encode(idGetter.applyAsLong(items.get(items.size() - 1))));
+        }
+        return response.body(items);
+    }
+
+    static String encode(long id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(ByteBuffer.allocate(Long.BYTES).putLong(id).array());
+    }
+
+    static OptionalLong decode(String cursor) {
+        if (cursor == null) {
+            return OptionalLong.of(0);
+        }
+        try {
+            byte[] bytes = Base64.getUrlDecoder().decode(cursor);
+            if (bytes.length != Long.BYTES) {
+                return OptionalLong.empty();
+            }
+            long id = ByteBuffer.wrap(bytes).getLong();
+            return id < 0 ? OptionalLong.empty() : OptionalLong.of(id);
+        } catch (IllegalArgumentException e) {
+            return OptionalLong.empty();
+        }
+    }
+
+    interface PageLoader<T> {
+
+        Optional<List<T>> load(long afterId, int limit);
+    }
+}
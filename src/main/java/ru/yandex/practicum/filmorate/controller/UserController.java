@@ -1,15 +1,21 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.async.StorageExecutor;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.UserService;
 
 import javax.validation.Valid;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @RequiredArgsConstructor
 @RestController
@@ -21,54 +27,84 @@ import java.util.List;
 public class UserController {
 
     private final UserService service;
+    private final ObjectMapper objectMapper;
+    private final StorageExecutor executor;
+
+    @GetMapping(params = {"!after", "!limit"})
+    public ResponseEntity<StreamingResponseBody> streamAllUsers() {
+        return JsonArrayStream.of(objectMapper, service::forEachUser);
+    }
 
     @GetMapping
-    public ResponseEntity<List<User>> findAllUsers() {
-        return new ResponseEntity<>(service.findAllUsers(), HttpStatus.OK);
+    public CompletableFuture<ResponseEntity<List<User>>> findAllUsers(@RequestParam(required = false) String after,
+                                                                      @RequestParam(required = false) Integer limit) {
+        return executor.supply(() -> PageCursor.page(after, limit,
+                (afterId, size) -> Optional.of(service.findAllUsers(afterId, size)), User::getId));
     }
 
     @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<User> createUser(@Valid @RequestBody User user) {
-        return new ResponseEntity<>(service.createUser(user), HttpStatus.CREATED);
+    public CompletableFuture<ResponseEntity<User>> createUser(@Valid @RequestBody User user) {
+        return executor.supply(() -> new ResponseEntity<>(service.createUser(user), HttpStatus.CREATED));
     }
 
     @PutMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<User> updateUser(@Valid @RequestBody User user) {
-        return service.updateUser(user).map(updatedUser -> new ResponseEntity<>(updatedUser, HttpStatus.OK))
-                .orElseGet(() -> new ResponseEntity<>(null, HttpStatus.NOT_FOUND));
+    public CompletableFuture<ResponseEntity<User>> updateUser(@Valid @RequestBody User user) {
+        return executor.supply(() -> service.updateUser(user)
+                .map(updatedUser -> new ResponseEntity<>(updatedUser, HttpStatus.OK))
+                .orElseGet(() -> new ResponseEntity<>(null, HttpStatus.NOT_FOUND)));
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<User> findUserById(@PathVariable long id) {
-        return service.findUserById(id).map(user -> new ResponseEntity<>(user, HttpStatus.OK))
-                .orElseGet(() -> new ResponseEntity<>(null, HttpStatus.NOT_FOUND));
+    public CompletableFuture<ResponseEntity<User>> findUserById(@PathVariable long id, WebRequest request) {
+        return executor.supply(() -> {
+            Optional<Long> version = service.findUserVersion(id);
+            if (version.isPresent() && request.checkNotModified(ETags.of("user", id, version.get()))) {
+                return null;
+            }
+            return service.findUserById(id).map(user -> new ResponseEntity<>(user, HttpStatus.OK))
+                    .orElseGet(() -> new ResponseEntity<>(null, HttpStatus.NOT_FOUND));
+        });
     }
 
     @DeleteMapping("/{id}")
-    public ResponseEntity<User> deleteUserById(@PathVariable long id) {
-        return service.deleteUserById(id) ? new ResponseEntity<>(null, HttpStatus.OK)
-                : new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
+    public CompletableFuture<ResponseEntity<User>> deleteUserById(@PathVariable long id) {
+        return executor.supply(() -> service.deleteUserById(id) ? new ResponseEntity<>(null, HttpStatus.OK)
+                : new ResponseEntity<>(null, HttpStatus.NOT_FOUND));
     }
 
     @GetMapping("/{id}/friends")
-    public ResponseEntity<List<User>> findUserFriends(@PathVariable long id) {
-        return new ResponseEntity<>(service.getListOfFriends(id), HttpStatus.OK);
+    public CompletableFuture<ResponseEntity<List<User>>> findUserFriends(
+            @PathVariable long id,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer limit) {
+        return executor.supply(() -> {
+            if (after == null && limit == null) {
+                return new ResponseEntity<>(service.getListOfFriends(id), HttpStatus.OK);
+            }
+            return PageCursor.page(after, limit,
+                    (afterId, size) -> Optional.of(service.getListOfFriends(id, afterId, size)), User::getId);
+        });
     }
 
     @GetMapping("/{id}/friends/common/{otherId}")
-    public ResponseEntity<List<User>> findCommonFriends(@PathVariable long id, @PathVariable long otherId) {
-        return new ResponseEntity<>(service.getListOfCommonFriends(id, otherId), HttpStatus.OK);
+    public CompletableFuture<ResponseEntity<List<User>>> findCommonFriends(@PathVariable long id,
+                                                                           @PathVariable long otherId) {
+        return executor.supply(() -> new ResponseEntity<>(service.getListOfCommonFriends(id, otherId),
+                HttpStatus.OK));
     }
 
     @PutMapping("/{id}/friends/{friendId}")
-    public ResponseEntity<User> addToFriends(@PathVariable long id, @PathVariable long friendId) {
-        return service.addToFriends(id, friendId) ? new ResponseEntity<>(null, HttpStatus.OK)
-                : new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
+    public CompletableFuture<ResponseEntity<User>> addToFriends(@PathVariable long id, @PathVariable long friendId) {
+        return service.addToFriends(id, friendId).thenApply(isAdded -> isAdded
+                ? new ResponseEntity<>(null, HttpStatus.OK)
+                : new ResponseEntity<>(null, HttpStatus.NOT_FOUND));
     }
 
     @DeleteMapping("/{id}/friends/{friendId}")
-    public ResponseEntity<User> deleteFromFriends(@PathVariable long id, @PathVariable long friendId) {
-        return service.deleteFromFriends(id, friendId) ? new ResponseEntity<>(null, HttpStatus.OK)
-                : new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
+    public CompletableFuture<ResponseEntity<User>> deleteFromFriends(@PathVariable long id,
+                                                                     @PathVariable long friendId) {
+        return service.deleteFromFriends(id, friendId).thenApply(isDeleted -> isDeleted
+                ? new ResponseEntity<>(null, HttpStatus.OK)
+                : new ResponseEntity<>(null, HttpStatus.NOT_FOUND));
     }
 }
@@ -0,0 +1,35 @@
+package ru.yandex.practicum.filmorate.datasource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+
+import javax.sql.DataSource;
+
+/*
+ * Storages and transactions share one routing data source, so a transaction still finds its connection.
+ * Schema init and anything else that takes the DataSource bean talk to the primary directly.
+ */
+@Configuration
+public class DataSourceConfig {
+
+    private final DataSource routingDataSource;
+
+    public DataSourceConfig(DataSource dataSource, ReplicaDataSources replicas, MeterRegistry registry) {
+        this.routingDataSource = replicas.isEmpty()
+                ? dataSource
+                : new ReadRoutingDataSource(dataSource, replicas, registry);
+    }
+
+    @Bean
+    public JdbcTemplate jdbcTemplate() {
+        return new JdbcTemplate(routingDataSource);
+    }
+
+    @Bean
+    public DataSourceTransactionManager transactionManager() {
+        return new DataSourceTransactionManager(routingDataSource);
+    }
+}
@@ -0,0 +1,121 @@
+package ru.yandex.practicum.filmorate.datasource;
+
+import java.util.function.LongConsumer;
+
+/*
+ * Per-thread routing state. Storage reads open a read scope and may go to a replica, writes open a write scope
+ * that keeps everything under it on the primary. A session carries read-your-writes across a request: once it
+ * has written, or the client wrote a moment ago, its reads stay on the primary until replicas have caught up.
+ */
+public final class ReadRouting {
+
+    private static final ThreadLocal<Route> ROUTE = new ThreadLocal<>();
+    private static final ThreadLocal<Session> SESSION = new ThreadLocal<>();
+
+    private ReadRouting() {
+    }
+
+    public static Scope read() {
+        Route previous = ROUTE.get();
+        if (previous == null) {
+            ROUTE.set(Route.READ);
+        }
+        return () -> setOrRemove(ROUTE, previous);
+    }
+
+    public static Scope write() {
+        Scope scope = primary();
+        Session session = SESSION.get();
+        if (session != null) {
+            session.markWrite();
+        }
+        return scope;
+    }
+
+    // Keeps reads under it on the primary without making the session sticky, for data replicas may not have yet
+    public static Scope primary() {
+        Route previous = ROUTE.get();
+        ROUTE.set(Route.WRITE);
+        return () -> setOrRemove(ROUTE, previous);
+    }
+
+    // lastWriteAt is what the client reported, onFirstWrite is told the time of the first write in this session
+    public static Scope openSession(long lastWriteAt, long stickyMillis, LongConsumer onFirstWrite) {
+        Session previous = SESSION.get();
+        SESSION.set(new Session(lastWriteAt, stickyMillis, onFirstWrite));
+        return () -> setOrRemove(SESSION, previous);
+    }
+
+    static boolean prefersReplica() {
+        if (ROUTE.get() != Route.READ) {
+            return false;
+        }
+        Session session = SESSION.get();
+        return session == null || !session.isSticky();
+    }
+
+    // Storage calls handed to another thread keep the session and route of the thread that made them
+    public static Runnable propagate(Runnable task) {
+        Route route = ROUTE.get();
+        Session session = SESSION.get();
+        if (route == null && session == null) {
+            return task;
+        }
+        return () -> {
+            Route previousRoute = ROUTE.get();
+            Session previousSession = SESSION.get();
+            ROUTE.set(route);
+            SESSION.set(session);
+            try {
+                task.run();
+            } finally {
+                setOrRemove(ROUTE, previousRoute);
+                setOrRemove(SESSION, previousSession);
+            }
+        };
+    }
+
+    private static <T> void setOrRemove(ThreadLocal<T> holder, T value) {
+        if (value == null) {
+            holder.remove();
+        } else {
+            holder.set(value);
+        }
+    }
+
+    public interface Scope extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+
+    private enum Route {
+        READ, WRITE
+    }
+
+    private static class Session {
+
+        private final long stickyMillis;
+        private final LongConsumer onFirstWrite;
+        private volatile long lastWriteAt;
+        private boolean hasWritten;
+
+        private Session(long lastWriteAt, long stickyMillis, LongConsumer onFirstWrite) {
+            this.lastWriteAt = lastWriteAt;
+            this.stickyMillis = stickyMillis;
+            this.onFirstWrite = onFirstWrite;
+        }
+
+        private boolean isSticky() {
+            return System.currentTimeMillis() - lastWriteAt < stickyMillis;
+        }
+
+        private synchronized void markWrite() {
+            lastWriteAt = System.currentTimeMillis();
+            if (!hasWritten) {
+                hasWritten = true;
+                onFirstWrite.accept(lastWriteAt);
+            }
+        }
+    }
+}
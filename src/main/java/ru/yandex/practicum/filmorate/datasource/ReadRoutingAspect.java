@@ -0,0 +1,45 @@
+package ru.yandex.practicum.filmorate.datasource;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.springframework.stereotype.Component;
+
+@Aspect
+@Component
+public class ReadRoutingAspect {
+
+    @Pointcut("execution(public * ru.yandex.practicum.filmorate.storage..*DbStorage.findAll(..))"
+            + " || execution(public * ru.yandex.practicum.filmorate.storage..*DbStorage.findById(..))"
+            + " || execution(public * ru.yandex.practicum.filmorate.storage..*DbStorage.getListOfFriends(..))"
+            + " || execution(public * ru.yandex.practicum.filmorate.storage..*DbStorage.getUserFilms(..))"
+            + " || execution(public * ru.yandex.practicum.filmorate.storage..*DbStorage.forEach*(..))"
+            + " || execution(public * ru.yandex.practicum.filmorate.storage..*DbStorage.findDocument*(..))")
+    public void reads() {
+    }
+
+    @Pointcut("execution(public * ru.yandex.practicum.filmorate.storage..*DbStorage.create*(..))"
+            + " || execution(public * ru.yandex.practicum.filmorate.storage..*DbStorage.update*(..))"
+            + " || execution(public * ru.yandex.practicum.filmorate.storage..*DbStorage.delete*(..))"
+            + " || execution(public * ru.yandex.practicum.filmorate.storage..*DbStorage.add*(..))"
+            + " || execution(public * ru.yandex.practicum.filmorate.storage..*DbStorage.remove*(..))"
+            // Documents missing on a read are rebuilt and written back, that write must not go to a replica
+            + " || execution(public * ru.yandex.practicum.filmorate.storage..FilmDocuments.write(..))")
+    public void writes() {
+    }
+
+    @Around("reads()")
+    public Object routeRead(ProceedingJoinPoint joinPoint) throws Throwable {
+        try (ReadRouting.Scope scope = ReadRouting.read()) {
+            return joinPoint.proceed();
+        }
+    }
+
+    @Around("writes()")
+    public Object routeWrite(ProceedingJoinPoint joinPoint) throws Throwable {
+        try (ReadRouting.Scope scope = ReadRouting.write()) {
+            return joinPoint.proceed();
+        }
+    }
+}
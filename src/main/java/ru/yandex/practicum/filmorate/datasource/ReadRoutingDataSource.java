@@ -0,0 +1,47 @@
+package ru.yandex.practicum.filmorate.datasource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Optional;
+
+// The primary, except inside a storage read scope while some replica is within the lag limit
+class ReadRoutingDataSource extends DelegatingDataSource {
+
+    private final ReplicaDataSources replicas;
+    private final Counter primaryConnections;
+    private final Counter replicaConnections;
+
+    ReadRoutingDataSource(DataSource primary, ReplicaDataSources replicas, MeterRegistry registry) {
+        super(primary);
+        this.replicas = replicas;
+        this.primaryConnections = registry.counter("filmorate.datasource.connections", "target", "primary");
+        this.replicaConnections = registry.counter("filmorate.datasource.connections", "target", "replica");
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Optional<DataSource> replica = ReadRouting.prefersReplica() ? replicas.pick() : Optional.empty();
+        if (replica.isPresent()) {
+            try {
+                Connection connection = replica.get().getConnection();
+                replicaConnections.increment();
+                return connection;
+            } catch (SQLException e) {
+                // The heartbeat takes the replica out of rotation, until then its reads fall back to the primary
+            }
+        }
+        primaryConnections.increment();
+        return super.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        primaryConnections.increment();
+        return super.getConnection(username, password);
+    }
+}
@@ -0,0 +1,65 @@
+package ru.yandex.practicum.filmorate.datasource;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+// A client that wrote less than the replica lag limit ago gets a cookie that keeps its reads on the primary
+@Component
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    static final String LAST_WRITE_COOKIE = "filmorate-last-write";
+
+    private final boolean isEnabled;
+    private final long stickyMillis;
+
+    public ReadYourWritesFilter(ReplicaDataSources replicas) {
+        this.isEnabled = !replicas.isEmpty();
+        this.stickyMillis = replicas.getMaxLagMillis();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        if (!isEnabled) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        try (ReadRouting.Scope session = ReadRouting.openSession(lastWriteAt(request), stickyMillis,
+                writtenAt -> response.addCookie(lastWriteCookie(writtenAt)))) {
+            filterChain.doFilter(request, response);
+        }
+    }
+
+    private long lastWriteAt(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return 0;
+        }
+        for (Cookie cookie : cookies) {
+            if (cookie.getName().equals(LAST_WRITE_COOKIE)) {
+                try {
+                    return Long.parseLong(cookie.getValue());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private Cookie lastWriteCookie(long writtenAt) {
+        Cookie cookie = new Cookie(LAST_WRITE_COOKIE, Long.toString(writtenAt));
+        cookie.setPath("/");
+        cookie.setHttpOnly(true);
+        cookie.setMaxAge((int) Math.max(1, (stickyMillis + 999) / 1000));
+        return cookie;
+    }
+}
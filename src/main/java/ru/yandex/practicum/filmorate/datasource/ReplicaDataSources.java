@@ -0,0 +1,148 @@
+package ru.yandex.practicum.filmorate.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.metrics.InstrumentedDataSource;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Read replicas from filmorate.datasource.replicas. The primary writes its clock to replication_heartbeat, a
+ * replica's lag is how far behind the beat it sees is. Replicas over filmorate.datasource.replica-max-lag-ms
+ * or failing the check get no reads until they catch up.
+ */
+@Slf4j
+@Component
+public class ReplicaDataSources {
+
+    private static final String WRITE_HEARTBEAT = "MERGE INTO replication_heartbeat KEY (id) VALUES (1, ?)";
+    private static final String READ_HEARTBEAT = "SELECT beat_at FROM replication_heartbeat WHERE id = 1";
+    private static final long UNKNOWN_LAG = Long.MAX_VALUE;
+    private static final long CONNECTION_TIMEOUT_MS = 1000;
+
+    private final JdbcTemplate primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final long maxLagMillis;
+    private final long heartbeatIntervalMillis;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReplicaDataSources(DataSource dataSource,
+                              MeterRegistry registry,
+                              @Value("${filmorate.datasource.replicas:}") List<String> urls,
+                              @Value("${spring.datasource.username:sa}") String username,
+                              @Value("${spring.datasource.password:}") String password,
+                              @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize,
+                              @Value("${filmorate.datasource.replica-max-lag-ms:1000}") long maxLagMillis,
+                              @Value("${filmorate.datasource.heartbeat-interval-ms:200}") long heartbeatIntervalMillis) {
+        this.primary = new JdbcTemplate(dataSource);
+        this.maxLagMillis = maxLagMillis;
+        this.heartbeatIntervalMillis = heartbeatIntervalMillis;
+        for (String url : urls) {
+            if (url.isBlank()) {
+                continue;
+            }
+            String name = "replica-" + (replicas.size() + 1);
+            HikariDataSource pool = new HikariDataSource();
+            pool.setPoolName(name);
+            pool.setJdbcUrl(url.trim());
+            pool.setUsername(username);
+            pool.setPassword(password);
+            pool.setMaximumPoolSize(poolSize);
+            pool.setConnectionTimeout(CONNECTION_TIMEOUT_MS);
+            Replica replica = new Replica(name, pool);
+            replicas.add(replica);
+            Gauge.builder("filmorate.datasource.replica.lag", replica,
+                            r -> r.lagMillis == UNKNOWN_LAG ? Double.NaN : r.lagMillis)
+                    .tag("replica", name)
+                    .baseUnit("milliseconds")
+                    .register(registry);
+        }
+    }
+
+    public boolean isEmpty() {
+        return replicas.isEmpty();
+    }
+
+    public long getMaxLagMillis() {
+        return maxLagMillis;
+    }
+
+    // A replica's lag was checked up to a heartbeat ago, so a write is on every replica in rotation only after both
+    public boolean mayMiss(long writtenAt) {
+        return !replicas.isEmpty() && System.currentTimeMillis() - writtenAt < maxLagMillis + heartbeatIntervalMillis;
+    }
+
+    // Round robin over the replicas within the lag limit, empty when all of them are behind
+    public Optional<DataSource> pick() {
+        int size = replicas.size();
+        if (size == 0) {
+            return Optional.empty();
+        }
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.lagMillis <= maxLagMillis) {
+                return Optional.of(replica.dataSource);
+            }
+        }
+        return Optional.empty();
+    }
+
+    @Scheduled(fixedDelayString = "${filmorate.datasource.heartbeat-interval-ms:200}")
+    public void checkLag() {
+        if (replicas.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try {
+            primary.update(WRITE_HEARTBEAT, now);
+        } catch (DataAccessException e) {
+            log.warn("Heartbeat was not written to the primary. Message: {}", e.getMessage());
+        }
+        for (Replica replica : replicas) {
+            try {
+                Long beatAt = replica.jdbcTemplate.query(READ_HEARTBEAT,
+                        resultSet -> resultSet.next() ? resultSet.getLong("beat_at") : null);
+                replica.lagMillis = beatAt == null ? UNKNOWN_LAG : Math.max(0, now - beatAt);
+            } catch (DataAccessException e) {
+                if (replica.lagMillis != UNKNOWN_LAG) {
+                    log.warn("Replica {} is out of rotation. Message: {}", replica.name, e.getMessage());
+                }
+                replica.lagMillis = UNKNOWN_LAG;
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        replicas.forEach(replica -> replica.pool.close());
+    }
+
+    private static class Replica {
+
+        private final String name;
+        private final HikariDataSource pool;
+        private final DataSource dataSource;
+        private final JdbcTemplate jdbcTemplate;
+        private volatile long lagMillis = UNKNOWN_LAG;
+
+        private Replica(String name, HikariDataSource pool) {
+            this.name = name;
+            this.pool = pool;
+            this.dataSource = new InstrumentedDataSource(pool);
+            this.jdbcTemplate = new JdbcTemplate(pool);
+        }
+    }
+}
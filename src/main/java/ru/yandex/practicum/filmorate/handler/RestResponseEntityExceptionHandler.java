@@ -1,12 +1,14 @@
 package ru.yandex.practicum.filmorate.handler;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.FieldError;
 import org.springframework.validation.ObjectError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.context.request.WebRequest;
@@ -44,6 +46,13 @@ public class RestResponseEntityExceptionHandler extends ResponseEntityExceptionH
         return new ResponseEntity<>(body, headers, status);
     }
 
+    @ExceptionHandler(TaskRejectedException.class)
+    protected ResponseEntity<Object> handleTaskRejected(TaskRejectedException e, WebRequest request) {
+        log.warn("Storage executor is saturated. Message: {}", e.getMessage());
+        HttpStatus status = HttpStatus.SERVICE_UNAVAILABLE;
+        return new ResponseEntity<>(getGeneralErrorBody(status, request), status);
+    }
+
     private Map<String, Object> getGeneralErrorBody(HttpStatus status,
                                                     WebRequest request) {
         Map<String, Object> body = new LinkedHashMap<>();
@@ -0,0 +1,88 @@
+package ru.yandex.practicum.filmorate.logs;
+
+import org.springframework.http.ResponseEntity;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+// Short, size-bounded descriptions of controller arguments and results: sizes and ids, never whole payloads
+public final class LogSummary {
+
+    private static final int MAX_IDS = 5;
+    private static final int MAX_TEXT_LENGTH = 100;
+
+    private LogSummary() {
+    }
+
+    public static String of(Object value) {
+        if (value == null) {
+            return "null";
+        }
+        if (value instanceof ResponseEntity) {
+            ResponseEntity<?> response = (ResponseEntity<?>) value;
+            return "ResponseEntity[" + response.getStatusCodeValue() + ", " + of(response.getBody()) + "]";
+        }
+        if (value instanceof Optional) {
+            return ((Optional<?>) value).map(LogSummary::of).orElse("Optional.empty");
+        }
+        if (value instanceof Collection) {
+            return ofCollection((Collection<?>) value);
+        }
+        OptionalLong id = idOf(value);
+        if (id.isPresent()) {
+            return value.getClass().getSimpleName() + "[id=" + id.getAsLong() + "]";
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof CharSequence) {
+            return truncate(value.toString());
+        }
+        return value.getClass().getSimpleName();
+    }
+
+    public static String of(Object[] values) {
+        StringBuilder summary = new StringBuilder("[");
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                summary.append(", ");
+            }
+            summary.append(of(values[i]));
+        }
+        return summary.append(']').toString();
+    }
+
+    private static String ofCollection(Collection<?> values) {
+        StringBuilder summary = new StringBuilder(values.getClass().getSimpleName())
+                .append("[size=").append(values.size());
+        Iterator<?> iterator = values.iterator();
+        if (iterator.hasNext() && idOf(values.iterator().next()).isPresent()) {
+            summary.append(", ids=[");
+            for (int i = 0; i < MAX_IDS && iterator.hasNext(); i++) {
+                summary.append(i > 0 ? ", " : "").append(idOf(iterator.next()).orElse(-1));
+            }
+            summary.append(iterator.hasNext() ? ", ...]" : "]");
+        }
+        return summary.append(']').toString();
+    }
+
+    private static OptionalLong idOf(Object value) {
+        if (value instanceof Film) {
+            return OptionalLong.of(((Film) value).getId());
+        } else if (value instanceof User) {
+            return OptionalLong.of(((User) value).getId());
+        } else if (value instanceof Genre) {
+            return OptionalLong.of(((Genre) value).getId());
+        } else if (value instanceof MPA) {
+            return OptionalLong.of(((MPA) value).getId());
+        }
+        return OptionalLong.empty();
+    }
+
+    private static String truncate(String text) {
+        return text.length() <= MAX_TEXT_LENGTH ? text : text.substring(0, MAX_TEXT_LENGTH) + "...";
+    }
+}
@@ -1,19 +1,37 @@
 package ru.yandex.practicum.filmorate.logs;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
 import org.aspectj.lang.annotation.Pointcut;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.util.Arrays;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 @Aspect
 @Component
 @Slf4j
 public class Logger {
 
+    private final MeterRegistry registry;
+    private final boolean isSummaryMode;
+    private final double sampleRate;
+
+    // mode is "full" (every call with whole arguments and results) or "summary" (sampled sizes and ids only)
+    public Logger(MeterRegistry registry,
+                  @Value("${filmorate.logging.mode:full}") String mode,
+                  @Value("${filmorate.logging.sample-rate:1.0}") double sampleRate) {
+        this.registry = registry;
+        this.isSummaryMode = mode.equalsIgnoreCase("summary");
+        this.sampleRate = isSummaryMode ? sampleRate : 1.0;
+    }
+
     @Pointcut("(@annotation(org.springframework.web.bind.annotation.GetMapping) || " +
             "@annotation(org.springframework.web.bind.annotation.PostMapping) || " +
             "@annotation(org.springframework.web.bind.annotation.DeleteMapping) ||" +
@@ -23,18 +41,44 @@ public class Logger {
 
     @Around("controllers()")
     public Object invoke(ProceedingJoinPoint joinPoint) {
-        log.info("Enter: {}.{}(): argument[s] {}", joinPoint.getSignature().getDeclaringTypeName(),
-                    joinPoint.getSignature().getName(), Arrays.toString(joinPoint.getArgs()));
+        boolean isSampled = sampleRate >= 1.0 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+        if (isSampled) {
+            log.info("Enter: {}.{}(): argument[s] {}", joinPoint.getSignature().getDeclaringTypeName(),
+                    joinPoint.getSignature().getName(), isSummaryMode ? LogSummary.of(joinPoint.getArgs())
+                            : Arrays.toString(joinPoint.getArgs()));
+        }
 
+        long start = System.nanoTime();
         final Object result;
         try {
             result = joinPoint.proceed();
         } catch (Throwable e) {
+            recordTime(joinPoint, start, "error");
             throw new RuntimeException(e);
         }
 
-        log.info("Exit: {}.{}(): result {}", joinPoint.getSignature().getDeclaringTypeName(),
-                joinPoint.getSignature().getName(), result);
+        // Async handlers are timed and logged when their result is ready, not when the future is returned
+        if (result instanceof CompletionStage) {
+            ((CompletionStage<?>) result).whenComplete((value, e) -> exit(joinPoint, start, isSampled, value, e));
+        } else {
+            exit(joinPoint, start, isSampled, result, null);
+        }
         return result;
     }
+
+    private void exit(ProceedingJoinPoint joinPoint, long start, boolean isSampled, Object result, Throwable e) {
+        recordTime(joinPoint, start, e == null ? "success" : "error");
+        if (isSampled && e == null) {
+            log.info("Exit: {}.{}(): result {}", joinPoint.getSignature().getDeclaringTypeName(),
+                    joinPoint.getSignature().getName(), isSummaryMode ? LogSummary.of(result) : result);
+        }
+    }
+
+    // Timed on every call, sampling only thins out the log lines
+    private void recordTime(ProceedingJoinPoint joinPoint, long start, String outcome) {
+        registry.timer("filmorate.endpoint.time",
+                "endpoint", joinPoint.getSignature().getDeclaringType().getSimpleName() + "."
+                        + joinPoint.getSignature().getName(),
+                "outcome", outcome).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
 }
@@ -0,0 +1,171 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.*;
+import java.util.regex.Pattern;
+
+// Wraps connections, statements and result sets in proxies that report every round trip to QueryScope
+public class InstrumentedDataSource extends DelegatingDataSource {
+
+    private static final Pattern LITERALS = Pattern.compile("'[^']*'|\\b\\d+\\b");
+
+    public InstrumentedDataSource(DataSource target) {
+        super(target);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Connection connection = super.getConnection();
+        return wrap(Connection.class, new ConnectionHandler(connection));
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        Connection connection = super.getConnection(username, password);
+        return wrap(Connection.class, new ConnectionHandler(connection));
+    }
+
+    private static <T> T wrap(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(InstrumentedDataSource.class.getClassLoader(), new Class[]{type},
+                handler));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private abstract static class Handler implements InvocationHandler {
+
+        private final Object target;
+
+        private Handler(Object target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "unwrap":
+                    return ((Class<?>) args[0]).isInstance(proxy) ? proxy : InstrumentedDataSource.invoke(target,
+                            method, args);
+                default:
+                    return handle(target, method, args);
+            }
+        }
+
+        abstract Object handle(Object target, Method method, Object[] args) throws Throwable;
+    }
+
+    private static class ConnectionHandler extends Handler {
+
+        private ConnectionHandler(Connection connection) {
+            super(connection);
+        }
+
+        @Override
+        Object handle(Object target, Method method, Object[] args) throws Throwable {
+            Object result = InstrumentedDataSource.invoke(target, method, args);
+            if (result instanceof CallableStatement) {
+                return wrap(CallableStatement.class, new StatementHandler(result, (String) args[0], true));
+            } else if (result instanceof PreparedStatement) {
+                return wrap(PreparedStatement.class, new StatementHandler(result, (String) args[0], true));
+            } else if (result instanceof Statement) {
+                return wrap(Statement.class, new StatementHandler(result, null, false));
+            }
+            return result;
+        }
+    }
+
+    private static class StatementHandler extends Handler {
+
+        private final String sql;
+        private final boolean isPrepared;
+
+        private StatementHandler(Object statement, String sql, boolean isPrepared) {
+            super(statement);
+            this.sql = sql;
+            this.isPrepared = isPrepared;
+        }
+
+        @Override
+        Object handle(Object target, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (!name.startsWith("execute")) {
+                Object result = InstrumentedDataSource.invoke(target, method, args);
+                if (name.equals("getResultSet") && result != null) {
+                    return wrap(ResultSet.class, new ResultSetHandler(result));
+                }
+                return result;
+            }
+            long start = System.nanoTime();
+            Object result = InstrumentedDataSource.invoke(target, method, args);
+            long nanos = System.nanoTime() - start;
+            String statementSql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+            QueryScope.recordStatement(shapeOf(statementSql), updatedRows(result), nanos);
+            if (result instanceof ResultSet) {
+                return wrap(ResultSet.class, new ResultSetHandler(result));
+            }
+            return result;
+        }
+
+        // Prepared statements already have placeholders, plain ones get their literals replaced
+        private String shapeOf(String statementSql) {
+            if (statementSql == null) {
+                return "batch";
+            }
+            return isPrepared ? statementSql : LITERALS.matcher(statementSql).replaceAll("?");
+        }
+
+        private static long updatedRows(Object result) {
+            if (result instanceof Integer || result instanceof Long) {
+                return Math.max(0, ((Number) result).longValue());
+            }
+            long rows = 0;
+            if (result instanceof int[]) {
+                for (int count : (int[]) result) {
+                    rows += Math.max(0, count);
+                }
+            } else if (result instanceof long[]) {
+                for (long count : (long[]) result) {
+                    rows += Math.max(0, count);
+                }
+            }
+            return rows;
+        }
+    }
+
+    private static class ResultSetHandler extends Handler {
+
+        private long rows;
+
+        private ResultSetHandler(Object resultSet) {
+            super(resultSet);
+        }
+
+        @Override
+        Object handle(Object target, Method method, Object[] args) throws Throwable {
+            Object result = InstrumentedDataSource.invoke(target, method, args);
+            if (method.getName().equals("next") && Boolean.TRUE.equals(result)) {
+                rows++;
+            } else if (method.getName().equals("close") && rows > 0) {
+                QueryScope.recordRows(rows);
+                rows = 0;
+            }
+            return result;
+        }
+    }
+}
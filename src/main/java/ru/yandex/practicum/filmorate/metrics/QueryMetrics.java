@@ -0,0 +1,38 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+@Component
+public class QueryMetrics {
+
+    private final MeterRegistry registry;
+    private final int nPlusOneThreshold;
+
+    public QueryMetrics(MeterRegistry registry,
+                        @Value("${filmorate.jdbc.n-plus-one-threshold:5}") int nPlusOneThreshold) {
+        this.registry = registry;
+        this.nPlusOneThreshold = nPlusOneThreshold;
+    }
+
+    // scope is "request" or "storage", name is the endpoint or the storage method
+    public void record(String scope, String name, QueryStats stats) {
+        registry.summary("filmorate.jdbc.statements", "scope", scope, "name", name).record(stats.getStatements());
+        registry.summary("filmorate.jdbc.rows", "scope", scope, "name", name).record(stats.getRows());
+        registry.timer("filmorate.jdbc.time", "scope", scope, "name", name).record(stats.getNanos(),
+                TimeUnit.NANOSECONDS);
+        if (scope.equals("request")) {
+            Map<String, Integer> suspects = stats.suspectedNPlusOne(nPlusOneThreshold);
+            if (!suspects.isEmpty()) {
+                registry.counter("filmorate.jdbc.n_plus_one", "name", name).increment();
+                log.warn("Suspected N+1 in {}: {}", name, suspects);
+            }
+        }
+    }
+}
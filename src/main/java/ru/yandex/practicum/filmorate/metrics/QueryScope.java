@@ -0,0 +1,63 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/*
+ * Collects the statements run on the current thread between open() and close(). Scopes nest: a request scope
+ * and the storage method scopes inside it all see the same statement.
+ */
+public class QueryScope implements AutoCloseable {
+
+    private static final ThreadLocal<Deque<QueryScope>> SCOPES = ThreadLocal.withInitial(ArrayDeque::new);
+
+    private final QueryStats stats = new QueryStats();
+
+    private QueryScope() {
+    }
+
+    public static QueryScope open() {
+        QueryScope scope = new QueryScope();
+        SCOPES.get().push(scope);
+        return scope;
+    }
+
+    public QueryStats stats() {
+        return stats;
+    }
+
+    // Statements of a task handed to another thread still count towards the scopes open here
+    public static Runnable propagate(Runnable task) {
+        List<QueryScope> scopes = List.copyOf(SCOPES.get());
+        if (scopes.isEmpty()) {
+            return task;
+        }
+        return () -> {
+            Deque<QueryScope> previous = SCOPES.get();
+            SCOPES.set(new ArrayDeque<>(scopes));
+            try {
+                task.run();
+            } finally {
+                SCOPES.set(previous);
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        SCOPES.get().remove(this);
+    }
+
+    static void recordStatement(String shape, long rows, long nanos) {
+        for (QueryScope scope : SCOPES.get()) {
+            scope.stats.recordStatement(shape, rows, nanos);
+        }
+    }
+
+    static void recordRows(long rows) {
+        for (QueryScope scope : SCOPES.get()) {
+            scope.stats.recordRows(rows);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+@Getter
+public class QueryStats {
+
+    // A request scope can be fed from several pool threads at once in async mode
+    private volatile long statements;
+    private volatile long rows;
+    private volatile long nanos;
+    private final Map<String, Integer> shapes = new ConcurrentHashMap<>();
+
+    synchronized void recordStatement(String shape, long rows, long nanos) {
+        statements++;
+        this.rows += rows;
+        this.nanos += nanos;
+        shapes.merge(shape, 1, Integer::sum);
+    }
+
+    synchronized void recordRows(long rows) {
+        this.rows += rows;
+    }
+
+    public Map<String, Integer> getShapes() {
+        return Collections.unmodifiableMap(shapes);
+    }
+
+    // The same statement shape issued again and again in one scope usually means a query inside a loop
+    public Map<String, Integer> suspectedNPlusOne(int threshold) {
+        return shapes.entrySet().stream()
+                .filter(entry -> entry.getValue() >= threshold)
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    }
+
+    @Override
+    public String toString() {
+        return statements + " statements, " + rows + " rows, " + nanos / 1_000_000 + " ms";
+    }
+}
@@ -0,0 +1,32 @@
+package ru.yandex.practicum.filmorate.metrics;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Pointcut;
+import org.springframework.stereotype.Component;
+
+@Aspect
+@Component
+public class StorageQueryAspect {
+
+    private final QueryMetrics queryMetrics;
+
+    public StorageQueryAspect(QueryMetrics queryMetrics) {
+        this.queryMetrics = queryMetrics;
+    }
+
+    @Pointcut("execution(public * ru.yandex.practicum.filmorate.storage..*DbStorage.*(..))")
+    public void dbStorages() {
+    }
+
+    @Around("dbStorages()")
+    public Object measure(ProceedingJoinPoint joinPoint) throws Throwable {
+        try (QueryScope scope = QueryScope.open()) {
+            Object result = joinPoint.proceed();
+            queryMetrics.record("storage", joinPoint.getSignature().getDeclaringType().getSimpleName() + "."
+                    + joinPoint.getSignature().getName(), scope.stats());
+            return result;
+        }
+    }
+}
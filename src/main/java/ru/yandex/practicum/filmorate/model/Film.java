@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import lombok.Builder;
 import lombok.Data;
 
@@ -9,6 +10,7 @@ import java.util.Set;
 
 @Data
 @Builder
+@JsonIgnoreProperties("version")
 public class Film {
 
     private long id;
@@ -29,6 +31,8 @@ public class Film {
 
     private long likes_count;
 
+    private long version;
+
     @NotNull
     private LocalDate releaseDate;
 
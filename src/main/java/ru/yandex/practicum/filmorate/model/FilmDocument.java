@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+// A film already serialized to JSON, ready to be written to the response as it is
+@Data
+@Builder
+public class FilmDocument {
+
+    private long id;
+
+    private long version;
+
+    private byte[] json;
+}
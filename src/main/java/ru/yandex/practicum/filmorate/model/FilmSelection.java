@@ -0,0 +1,21 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+// Most liked films matching a genre and rating filter, with how many of all matches fall under each genre and rating
+@Data
+@Builder
+public class FilmSelection {
+
+    private long total;
+
+    private List<Film> films;
+
+    private Map<Integer, Long> genres;
+
+    private Map<Integer, Long> mpa;
+}
@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+import javax.validation.constraints.Positive;
+
+@Data
+@Builder
+public class Friendship {
+
+    @Positive(message = "User id must be positive")
+    private long userId;
+
+    @Positive(message = "Friend id must be positive")
+    private long friendId;
+}
@@ -0,0 +1,24 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class ImportResult {
+
+    private long imported;
+
+    private long failed;
+
+    private final List<LineError> errors = new ArrayList<>();
+
+    @Data
+    public static class LineError {
+
+        private final long line;
+
+        private final String message;
+    }
+}
@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import lombok.Builder;
 import lombok.Data;
 
@@ -11,6 +12,7 @@ import java.time.LocalDate;
 
 @Data
 @Builder
+@JsonIgnoreProperties("version")
 public class User {
 
     private long id;
@@ -29,4 +31,6 @@ public class User {
 
     @Past(message = "Date must be in the past")
     private LocalDate birthday;
+
+    private long version;
 }
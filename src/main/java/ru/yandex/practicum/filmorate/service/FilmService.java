@@ -3,25 +3,41 @@ package ru.yandex.practicum.filmorate.service;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.async.StorageExecutor;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmDocument;
+import ru.yandex.practicum.filmorate.model.FilmSelection;
+import ru.yandex.practicum.filmorate.model.Like;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.FacetIndex;
+import ru.yandex.practicum.filmorate.storage.film.FilmDocumentStorage;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
 
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 @Service
 public class FilmService {
 
     private final FilmStorage storage;
+    // The same storage when it keeps films as JSON, null for the in-memory one
+    private final FilmDocumentStorage documentStorage;
     private final UserService userService;
+    private final StorageExecutor executor;
 
     @Autowired
-    public FilmService(@Qualifier("filmDbStorage") FilmStorage filmStorage, UserService userService) { // inMemoryFilmStorage
+    public FilmService(@Qualifier("filmStorage") FilmStorage filmStorage, UserService userService,
+                       StorageExecutor executor) {
         this.storage = filmStorage;
+        this.documentStorage = filmStorage instanceof FilmDocumentStorage ? (FilmDocumentStorage) filmStorage : null;
         this.userService = userService;
+        this.executor = executor;
     }
 
     public Film createFilm(Film film) {
@@ -36,50 +52,120 @@ public class FilmService {
         return storage.findAll();
     }
 
+    public void forEachFilm(Consumer<Film> action) {
+        storage.forEach(action);
+    }
+
+    public List<Film> findAllFilms(long afterId, int limit) {
+        return storage.findAll(afterId, limit);
+    }
+
     public Optional<Film> findFilmById(long id) {
         return storage.findById(id);
     }
 
+    public boolean keepsFilmDocuments() {
+        return documentStorage != null;
+    }
+
+    public Optional<FilmDocument> findFilmDocument(long id) {
+        return documentStorage.findDocument(id);
+    }
+
+    public void forEachFilmDocument(Consumer<FilmDocument> action) {
+        documentStorage.forEachDocument(action);
+    }
+
+    public List<FilmDocument> findTopLikableFilmDocuments(long count) {
+        return documentStorage.findDocuments(storage.findPopularIds(count));
+    }
+
+    public List<FilmDocument> searchFilmDocuments(String query, int count, boolean isBoostedByLikes) {
+        return documentStorage.findDocuments(storage.search(query, count, isBoostedByLikes));
+    }
+
+    public Optional<Long> findFilmVersion(long id) {
+        return storage.findVersion(id);
+    }
+
     public boolean deleteFilmById(long id) {
         return storage.deleteById(id);
     }
 
-    public boolean likeFilm(long id, long userId) {
-        Optional<User> optUser = userService.findUserById(userId);
-        Optional<Film> optFilm = storage.findById(id);
+    public CompletableFuture<Boolean> likeFilm(long id, long userId) {
+        return findFilmOfExistingUser(id, userId).thenCompose(optFilm -> optFilm.isPresent()
+                ? executor.supply(() -> storage.addLikeToFilm(id, userId))
+                : CompletableFuture.completedFuture(false));
+    }
+
+    public CompletableFuture<Boolean> removeLikeFromFilm(long id, long userId) {
+        return findFilmOfExistingUser(id, userId).thenCompose(optFilm -> optFilm.isPresent()
+                && optFilm.get().getLikes_count() > 0
+                ? executor.supply(() -> storage.removeLikeFromFilm(id, userId))
+                : CompletableFuture.completedFuture(false));
+    }
 
-        if (optUser.isPresent() && optFilm.isPresent()) {
-            return storage.addLikeToFilm(id, userId);
-        }
-        return false;
+    // The user and the film are looked up side by side in async mode
+    private CompletableFuture<Optional<Film>> findFilmOfExistingUser(long id, long userId) {
+        CompletableFuture<Optional<User>> user = executor.supply(() -> userService.findUserById(userId));
+        CompletableFuture<Optional<Film>> film = executor.supply(() -> storage.findById(id));
+        return user.thenCombine(film, (optUser, optFilm) -> optUser.isPresent() ? optFilm : Optional.empty());
     }
 
-    public boolean removeLikeFromFilm(long id, long userId) {
-        Optional<User> optUser = userService.findUserById(userId);
-        Optional<Film> optFilm = storage.findById(id);
+    public Optional<List<Film>> getUserFilms(long userId) {
+        return userService.findUserById(userId).map(user -> storage.getUserFilms(userId));
+    }
 
-        if (optUser.isPresent() && optFilm.isPresent() && optFilm.get().getLikes_count() > 0) {
-            return storage.removeLikeFromFilm(id, userId);
-        }
-        return false;
+    public Optional<List<Film>> getUserFilms(long userId, long afterId, int limit) {
+        return userService.findUserById(userId).map(user -> storage.getUserFilms(userId, afterId, limit));
+    }
+
+    public void createFilms(List<Film> films) {
+        storage.createAll(films);
+    }
+
+    public void addLikes(List<Like> likes) {
+        storage.addLikes(likes);
     }
 
     public List<Film> findTopLikableFilms(long count) {
-        return storage.findAll()
-                .stream()
-                .sorted(Comparator.comparing(Film::getLikes_count).reversed())
-                .limit(count)
-                .collect(Collectors.toList());
-    }
-
-    public Optional<List<Film>> findTopCommonFilms(long userId, long friendId) {
-        if (userService.findUserById(userId).isPresent() &&
-                userService.findUserById(friendId).isPresent()) {
-            return Optional.of(storage.getUserFilms(userId)
-                    .stream()
-                    .filter(storage.getUserFilms(friendId)::contains)
-                    .collect(Collectors.toList()));
+        return storage.findPopular(count);
+    }
+
+    public List<Film> searchFilms(String query, int count, boolean isBoostedByLikes) {
+        return storage.findAllByIds(storage.search(query, count, isBoostedByLikes));
+    }
+
+    public FilmSelection filterFilms(Set<Integer> genreIds, boolean isAllGenres, Set<Integer> ratingIds, long count) {
+        FacetIndex.Selection selection = storage.select(genreIds, isAllGenres, ratingIds);
+        return FilmSelection.builder()
+                .total(selection.getFilmIds().length)
+                .films(storage.findAllByIds(storage.findPopularIds(count, selection.getFilmIds())))
+                .genres(selection.getGenreCounts())
+                .mpa(selection.getRatingCounts())
+                .build();
+    }
+
+    public Map<Long, Long> findTopLikableFilmsVersions(long count) {
+        long[] ids = storage.findPopularIds(count);
+        Map<Long, Long> versions = storage.findVersions(ids);
+        Map<Long, Long> rankedVersions = new LinkedHashMap<>();
+        for (long id : ids) {
+            Long version = versions.get(id);
+            if (version != null) {
+                rankedVersions.put(id, version);
+            }
         }
-        return Optional.empty();
+        return rankedVersions;
+    }
+
+    public CompletableFuture<Optional<List<Film>>> findTopCommonFilms(long userId, long friendId) {
+        return userService.bothUsersExist(userId, friendId).thenCompose(exist -> exist
+                ? executor.supply(() -> {
+                    List<Film> commonFilms = storage.findAllByIds(storage.getCommonFilmIds(userId, friendId));
+                    commonFilms.sort(Comparator.comparingLong(Film::getLikes_count).reversed());
+                    return Optional.of(commonFilms);
+                })
+                : CompletableFuture.completedFuture(Optional.empty()));
     }
 }
\ No newline at end of file
@@ -13,7 +13,7 @@ public class GenreService {
 
     private final GenreStorage storage;
 
-    public GenreService(@Qualifier("genreDbStorage") GenreStorage storage) {
+    public GenreService(@Qualifier("cachedGenreStorage") GenreStorage storage) {
         this.storage = storage;
     }
 
@@ -0,0 +1,170 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.model.*;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.ValidationException;
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Service
+public class ImportService {
+
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    private final UserService userService;
+    private final FilmService filmService;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+
+    public ImportService(UserService userService,
+                         FilmService filmService,
+                         ObjectMapper objectMapper,
+                         Validator validator,
+                         PlatformTransactionManager transactionManager,
+                         @Value("${filmorate.import.chunk-size:1000}") int chunkSize) {
+        this.userService = userService;
+        this.filmService = filmService;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+    }
+
+    public ImportResult importUsers(InputStream input) {
+        return importRecords(input, User.class, user -> null, userService::createUsers);
+    }
+
+    public ImportResult importFilms(InputStream input) {
+        return importRecords(input, Film.class, film -> film.getMpa() == null ? "mpa: Rating is required" : null,
+                filmService::createFilms);
+    }
+
+    public ImportResult importLikes(InputStream input) {
+        return importRecords(input, Like.class, like -> null, filmService::addLikes);
+    }
+
+    public ImportResult importFriendships(InputStream input) {
+        return importRecords(input, Friendship.class, friendship -> null, userService::addFriendships);
+    }
+
+    // The next line is read only after the previous chunk is committed, so a fast client is held back by TCP
+    private <T> ImportResult importRecords(InputStream input,
+                                           Class<T> type,
+                                           Function<T, String> check,
+                                           Consumer<List<T>> writer) {
+        ImportResult result = new ImportResult();
+        ObjectReader reader = objectMapper.readerFor(type);
+        List<T> chunk = new ArrayList<>(chunkSize);
+        List<Long> chunkLines = new ArrayList<>(chunkSize);
+        try (BufferedReader lines = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+            String line;
+            long lineNumber = 0;
+            while ((line = lines.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                T record;
+                try {
+                    record = reader.readValue(line);
+                } catch (JsonProcessingException e) {
+                    reject(result, lineNumber, "Malformed JSON: " + e.getOriginalMessage());
+                    continue;
+                }
+                String error = validate(record, check);
+                if (error != null) {
+                    reject(result, lineNumber, error);
+                    continue;
+                }
+                chunk.add(record);
+                chunkLines.add(lineNumber);
+                if (chunk.size() == chunkSize) {
+                    writeChunk(result, chunk, chunkLines, writer);
+                    chunk.clear();
+                    chunkLines.clear();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        writeChunk(result, chunk, chunkLines, writer);
+        result.getErrors().sort(Comparator.comparingLong(ImportResult.LineError::getLine));
+        log.info("Imported {} {} records, {} rejected", result.getImported(), type.getSimpleName(), result.getFailed());
+        return result;
+    }
+
+    private <T> String validate(T record, Function<T, String> check) {
+        try {
+            Set<ConstraintViolation<T>> violations = validator.validate(record);
+            if (!violations.isEmpty()) {
+                return violations.stream()
+                        .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                        .sorted()
+                        .collect(Collectors.joining(", "));
+            }
+        } catch (ValidationException e) {
+            return "Not valid: " + e.getMessage();
+        }
+        return check.apply(record);
+    }
+
+    private <T> void writeChunk(ImportResult result, List<T> chunk, List<Long> chunkLines, Consumer<List<T>> writer) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> writer.accept(chunk));
+            result.setImported(result.getImported() + chunk.size());
+        } catch (RuntimeException e) {
+            // A single bad record fails the whole batch, rows are retried one by one to find which
+            for (int i = 0; i < chunk.size(); i++) {
+                List<T> row = List.of(chunk.get(i));
+                try {
+                    transactionTemplate.executeWithoutResult(status -> writer.accept(row));
+                    result.setImported(result.getImported() + 1);
+                } catch (RuntimeException rowError) {
+                    reject(result, chunkLines.get(i), getMessage(rowError));
+                }
+            }
+        }
+    }
+
+    private void reject(ImportResult result, long line, String message) {
+        result.setFailed(result.getFailed() + 1);
+        if (result.getErrors().size() < MAX_REPORTED_ERRORS) {
+            result.getErrors().add(new ImportResult.LineError(line, message));
+        }
+    }
+
+    private String getMessage(RuntimeException e) {
+        if (e instanceof DataAccessException) {
+            return ((DataAccessException) e).getMostSpecificCause().getMessage();
+        }
+        return e.getMessage();
+    }
+}
@@ -13,7 +13,7 @@ public class MPAService {
 
     private final MPAStorage storage;
 
-    public MPAService(@Qualifier("MPADbStorage") MPAStorage storage) {
+    public MPAService(@Qualifier("cachedMPAStorage") MPAStorage storage) {
         this.storage = storage;
     }
 
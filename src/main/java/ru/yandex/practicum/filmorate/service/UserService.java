@@ -3,21 +3,27 @@ package ru.yandex.practicum.filmorate.service;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.async.StorageExecutor;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+import ru.yandex.practicum.filmorate.util.SortedIds;
 
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 @Service
 public class UserService {
 
     private final UserStorage storage;
+    private final StorageExecutor executor;
 
     @Autowired
-    public UserService(@Qualifier("userDbStorage") UserStorage storage) { // inMemoryUserStorage
+    public UserService(@Qualifier("userStorage") UserStorage storage, StorageExecutor executor) {
         this.storage = storage;
+        this.executor = executor;
     }
 
     public User createUser(User user) {
@@ -33,10 +39,22 @@ public class UserService {
         return storage.findAll();
     }
 
+    public void forEachUser(Consumer<User> action) {
+        storage.forEach(action);
+    }
+
+    public List<User> findAllUsers(long afterId, int limit) {
+        return storage.findAll(afterId, limit);
+    }
+
     public Optional<User> findUserById(long id) {
         return storage.findById(id);
     }
 
+    public Optional<Long> findUserVersion(long id) {
+        return storage.findVersion(id);
+    }
+
     public boolean deleteUserById(long id) {
         return storage.deleteById(id);
     }
@@ -45,30 +63,41 @@ public class UserService {
         return storage.getListOfFriends(id);
     }
 
+    public List<User> getListOfFriends(long id, long afterId, int limit) {
+        return storage.getListOfFriends(id, afterId, limit);
+    }
+
     public List<User> getListOfCommonFriends(long id, long otherId) {
-        return getListOfFriends(id).stream()
-                .filter(getListOfFriends(otherId)::contains)
-                .collect(Collectors.toList());
+        long[] commonFriendIds = SortedIds.intersect(storage.getFriendIds(id), storage.getFriendIds(otherId));
+        return storage.findAllByIds(commonFriendIds);
     }
 
-    public boolean addToFriends(long id, long friendId) {
-        Optional<User> optUser = storage.findById(id);
-        Optional<User> optFriend = storage.findById(friendId);
+    public CompletableFuture<Boolean> addToFriends(long id, long friendId) {
+        return bothUsersExist(id, friendId).thenCompose(exist -> exist
+                ? executor.supply(() -> storage.addToFriends(id, friendId))
+                : CompletableFuture.completedFuture(false));
+    }
 
-        if (optUser.isPresent() && optFriend.isPresent()) {
-            return storage.addToFriends(id, friendId);
-        }
-        return false;
+    public CompletableFuture<Boolean> deleteFromFriends(long id, long friendId) {
+        return bothUsersExist(id, friendId).thenCompose(exist -> exist
+                ? executor.supply(() -> storage.deleteFromFriends(id, friendId))
+                : CompletableFuture.completedFuture(false));
     }
 
-    public boolean deleteFromFriends(long id, long friendId) {
-        Optional<User> optUser = storage.findById(id);
-        Optional<User> optFriend = storage.findById(friendId);
+    // The two lookups are independent and run side by side in async mode
+    public CompletableFuture<Boolean> bothUsersExist(long id, long otherId) {
+        CompletableFuture<Optional<User>> user = executor.supply(() -> storage.findById(id));
+        CompletableFuture<Optional<User>> other = executor.supply(() -> storage.findById(otherId));
+        return user.thenCombine(other, (optUser, optOther) -> optUser.isPresent() && optOther.isPresent());
+    }
 
-        if (optUser.isPresent() && optFriend.isPresent()) {
-            return storage.deleteFromFriends(id, friendId);
-        }
-        return false;
+    public void createUsers(List<User> users) {
+        users.forEach(this::validateName);
+        storage.createAll(users);
+    }
+
+    public void addFriendships(List<Friendship> friendships) {
+        storage.addFriendships(friendships);
     }
 
     private User validateName(User user) {
@@ -0,0 +1,96 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.function.ToIntFunction;
+
+public abstract class CachedStorage<T> implements Storage<T> {
+
+    private final Storage<T> delegate;
+    private final ToIntFunction<T> idGetter;
+    private volatile Snapshot<T> snapshot = emptySnapshot();
+
+    protected CachedStorage(Storage<T> delegate, ToIntFunction<T> idGetter) {
+        this.delegate = delegate;
+        this.idGetter = idGetter;
+    }
+
+    @PostConstruct
+    public synchronized void reload() {
+        List<T> all = delegate.findAll();
+        int maxId = all.stream().mapToInt(idGetter).max().orElse(0);
+        @SuppressWarnings("unchecked")
+        Optional<T>[] byId = new Optional[maxId + 1];
+        Arrays.fill(byId, Optional.empty());
+        for (T t : all) {
+            byId[idGetter.applyAsInt(t)] = Optional.of(t);
+        }
+        snapshot = new Snapshot<>(byId, Collections.unmodifiableList(new ArrayList<>(all)));
+    }
+
+    @Override
+    public synchronized T create(T t) {
+        T created = delegate.create(t);
+        reload();
+        return created;
+    }
+
+    @Override
+    public synchronized Optional<T> update(T t) {
+        Optional<T> updated = delegate.update(t);
+        if (updated.isPresent()) {
+            reload();
+        }
+        return updated;
+    }
+
+    @Override
+    public List<T> findAll() {
+        return snapshot.all;
+    }
+
+    @Override
+    public List<T> findAll(long afterId, int limit) {
+        Optional<T>[] byId = snapshot.byId;
+        List<T> page = new ArrayList<>();
+        for (long id = Math.max(afterId + 1, 0); id < byId.length && page.size() < limit; id++) {
+            byId[(int) id].ifPresent(page::add);
+        }
+        return page;
+    }
+
+    @Override
+    public Optional<T> findById(long id) {
+        Optional<T>[] byId = snapshot.byId;
+        if (id < 0 || id >= byId.length) {
+            return Optional.empty();
+        }
+        return byId[(int) id];
+    }
+
+    @Override
+    public synchronized boolean deleteById(long id) {
+        boolean isDeleted = delegate.deleteById(id);
+        if (isDeleted) {
+            reload();
+        }
+        return isDeleted;
+    }
+
+    private static <T> Snapshot<T> emptySnapshot() {
+        @SuppressWarnings("unchecked")
+        Optional<T>[] byId = new Optional[0];
+        return new Snapshot<>(byId, List.of());
+    }
+
+    private static class Snapshot<T> {
+
+        private final Optional<T>[] byId;
+        private final List<T> all;
+
+        private Snapshot(Optional<T>[] byId, List<T> all) {
+            this.byId = byId;
+            this.all = all;
+        }
+    }
+}
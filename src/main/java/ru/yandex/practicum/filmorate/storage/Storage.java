@@ -2,6 +2,7 @@ package ru.yandex.practicum.filmorate.storage;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 public interface Storage<T> {
 
@@ -11,6 +12,13 @@ public interface Storage<T> {
 
     List<T> findAll();
 
+    List<T> findAll(long afterId, int limit);
+
+    // Visits every row in id order, storages backed by a database override it to stream instead of loading a list
+    default void forEach(Consumer<? super T> action) {
+        findAll().forEach(action);
+    }
+
     Optional<T> findById(long id);
 
     boolean deleteById(long id);
@@ -0,0 +1,56 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.film.ShardedFilmStorage;
+import ru.yandex.practicum.filmorate.storage.shard.Shards;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.user.ShardedUserStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+// filmorate.storage.type picks the backend the services work with: "db" (default), "memory" or "sharded"
+@Configuration
+public class StorageConfig {
+
+    private final String type;
+
+    public StorageConfig(@Value("${filmorate.storage.type:db}") String type, Shards shards) {
+        this.type = type.toLowerCase();
+        if (this.type.equals("sharded") && shards.isEmpty()) {
+            throw new IllegalStateException("filmorate.storage.type=sharded needs filmorate.sharding.shards");
+        }
+    }
+
+    @Bean
+    public FilmStorage filmStorage(FilmDbStorage filmDbStorage,
+                                   InMemoryFilmStorage inMemoryFilmStorage,
+                                   ShardedFilmStorage shardedFilmStorage) {
+        switch (type) {
+            case "memory":
+                return inMemoryFilmStorage;
+            case "sharded":
+                return shardedFilmStorage;
+            default:
+                return filmDbStorage;
+        }
+    }
+
+    @Bean
+    public UserStorage userStorage(UserDbStorage userDbStorage,
+                                   InMemoryUserStorage inMemoryUserStorage,
+                                   ShardedUserStorage shardedUserStorage) {
+        switch (type) {
+            case "memory":
+                return inMemoryUserStorage;
+            case "sharded":
+                return shardedUserStorage;
+            default:
+                return userDbStorage;
+        }
+    }
+}
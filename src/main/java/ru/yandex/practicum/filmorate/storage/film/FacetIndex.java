@@ -0,0 +1,179 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ * Roaring bitmaps of film ids per genre and per rating. A filter is a union or intersection of the genre bitmaps
+ * and the union of the rating ones, and each facet count is the cardinality of its bitmap and-ed with the result.
+ */
+public class FacetIndex {
+
+    private static final long MAX_ID = 0xFFFF_FFFFL;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final RoaringBitmap all = new RoaringBitmap();
+    private final Map<Integer, RoaringBitmap> genres = new TreeMap<>();
+    private final Map<Integer, RoaringBitmap> ratings = new TreeMap<>();
+    // What each film is filed under, so an update can take it out of its old bitmaps
+    private final Map<Integer, Entry> entries = new HashMap<>();
+
+    public void put(Film film) {
+        int filmId = toInt(film.getId());
+        Integer ratingId = film.getMpa() == null ? null : film.getMpa().getId();
+        int[] genreIds = film.getGenres() == null ? new int[0]
+                : film.getGenres().stream().mapToInt(Genre::getId).distinct().toArray();
+        lock.writeLock().lock();
+        try {
+            removeLocked(filmId);
+            all.add(filmId);
+            if (ratingId != null) {
+                ratings.computeIfAbsent(ratingId, key -> new RoaringBitmap()).add(filmId);
+            }
+            for (int genreId : genreIds) {
+                genres.computeIfAbsent(genreId, key -> new RoaringBitmap()).add(filmId);
+            }
+            entries.put(filmId, new Entry(ratingId, genreIds));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long filmId) {
+        if (filmId < 0 || filmId > MAX_ID) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            removeLocked((int) filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Empty genre or rating ids don't restrict the result; isAllGenres asks for films having every genre given
+    public Selection select(Set<Integer> genreIds, boolean isAllGenres, Set<Integer> ratingIds) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap matches = all.clone();
+            if (!genreIds.isEmpty()) {
+                matches.and(combine(genres, genreIds, isAllGenres));
+            }
+            if (!ratingIds.isEmpty()) {
+                matches.and(combine(ratings, ratingIds, false));
+            }
+            return new Selection(toLongs(matches), count(genres, matches), count(ratings, matches));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static RoaringBitmap combine(Map<Integer, RoaringBitmap> bitmaps, Set<Integer> ids, boolean isAnd) {
+        List<RoaringBitmap> found = new ArrayList<>();
+        for (int id : ids) {
+            RoaringBitmap bitmap = bitmaps.get(id);
+            if (bitmap == null && isAnd) {
+                return new RoaringBitmap();
+            }
+            if (bitmap != null) {
+                found.add(bitmap);
+            }
+        }
+        if (found.isEmpty()) {
+            return new RoaringBitmap();
+        }
+        return isAnd ? FastAggregation.and(found.iterator()) : FastAggregation.or(found.iterator());
+    }
+
+    private static Map<Integer, Long> count(Map<Integer, RoaringBitmap> bitmaps, RoaringBitmap matches) {
+        Map<Integer, Long> counts = new LinkedHashMap<>();
+        bitmaps.forEach((id, bitmap) -> {
+            long count = RoaringBitmap.andCardinality(bitmap, matches);
+            if (count > 0) {
+                counts.put(id, count);
+            }
+        });
+        return counts;
+    }
+
+    private void removeLocked(int filmId) {
+        Entry entry = entries.remove(filmId);
+        if (entry == null) {
+            return;
+        }
+        all.remove(filmId);
+        if (entry.ratingId != null) {
+            removeFrom(ratings, entry.ratingId, filmId);
+        }
+        for (int genreId : entry.genreIds) {
+            removeFrom(genres, genreId, filmId);
+        }
+    }
+
+    private static void removeFrom(Map<Integer, RoaringBitmap> bitmaps, int id, int filmId) {
+        RoaringBitmap bitmap = bitmaps.get(id);
+        bitmap.remove(filmId);
+        if (bitmap.isEmpty()) {
+            bitmaps.remove(id);
+        }
+    }
+
+    private static long[] toLongs(RoaringBitmap bitmap) {
+        long[] ids = new long[bitmap.getCardinality()];
+        int i = 0;
+        for (int id : bitmap) {
+            ids[i++] = Integer.toUnsignedLong(id);
+        }
+        return ids;
+    }
+
+    private static int toInt(long id) {
+        if (id < 0 || id > MAX_ID) {
+            throw new IllegalArgumentException("Id " + id + " doesn't fit into a bitmap");
+        }
+        return (int) id;
+    }
+
+    // Matching film ids in ascending order with the number of them under each genre and rating
+    public static class Selection {
+
+        private final long[] filmIds;
+        private final Map<Integer, Long> genreCounts;
+        private final Map<Integer, Long> ratingCounts;
+
+        private Selection(long[] filmIds, Map<Integer, Long> genreCounts, Map<Integer, Long> ratingCounts) {
+            this.filmIds = filmIds;
+            this.genreCounts = genreCounts;
+            this.ratingCounts = ratingCounts;
+        }
+
+        public long[] getFilmIds() {
+            return filmIds;
+        }
+
+        public Map<Integer, Long> getGenreCounts() {
+            return genreCounts;
+        }
+
+        public Map<Integer, Long> getRatingCounts() {
+            return ratingCounts;
+        }
+    }
+
+    private static class Entry {
+
+        private final Integer ratingId;
+        private final int[] genreIds;
+
+        private Entry(Integer ratingId, int[] genreIds) {
+            this.ratingId = ratingId;
+            this.genreIds = genreIds;
+        }
+    }
+}
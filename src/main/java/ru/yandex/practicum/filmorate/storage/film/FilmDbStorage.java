@@ -1,111 +1,203 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmDocument;
 import ru.yandex.practicum.filmorate.model.Genre;
-import ru.yandex.practicum.filmorate.model.User;
-import ru.yandex.practicum.filmorate.storage.genre.GenreStorage;
-import ru.yandex.practicum.filmorate.storage.mpa.MPAStorage;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.util.SortedIds;
 
+import javax.annotation.PostConstruct;
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.List;
-import java.util.Optional;
-import java.util.Set;
+import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Component
-public class FilmDbStorage implements FilmStorage {
+public class FilmDbStorage implements FilmStorage, FilmDocumentStorage {
 
+    private static final int STREAM_BATCH_SIZE = 500;
     private final JdbcTemplate jdbcTemplate;
-    private final GenreStorage genreStorage;
-    private final MPAStorage mpaStorage;
+    private final LikeCounter likeCounter;
+    private final FilmDocuments documents;
+    private final TransactionTemplate transactionTemplate;
+    private final PopularityIndex popularityIndex = new PopularityIndex();
+    private final FilmSearchIndex searchIndex = new FilmSearchIndex();
+    private final FacetIndex facetIndex = new FacetIndex();
     private static final String CREATE_FILM = "INSERT INTO films(name, description, duration, release_date, " +
             "rating_id) VALUES (?, ?, ?, ?, ?)";
+    private static final String CREATE_FILM_WITH_ID = "INSERT INTO films(name, description, duration, " +
+            "release_date, rating_id, film_id) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String GET_NEXT_FILM_ID = "SELECT COALESCE(MAX(film_id), 0) + 1 FROM films";
+    private static final String RESTART_FILM_ID = "ALTER TABLE films ALTER COLUMN film_id RESTART WITH ";
     private static final String UPDATE_FILM = "UPDATE films SET name = ?, description = ?, duration = ?, " +
-            "release_date = ?, rating_id = ? WHERE film_id = ?";
-    private static final String FIND_FILM = "SELECT * FROM films WHERE film_id = ?";
-    private static final String FIND_ALL_FILMS = "SELECT * FROM films";
+            "release_date = ?, rating_id = ?, version = version + 1 WHERE film_id = ?";
+    private static final String FIND_FILM_VERSION = "SELECT version FROM films WHERE film_id = ?";
+    private static final String FIND_FILMS_VERSIONS = "SELECT film_id, version FROM films WHERE film_id = ANY(?)";
+    private static final String SELECT_FILMS = "SELECT f.*, r.name AS rating_name FROM films f " +
+            "LEFT JOIN ratings r ON f.rating_id = r.rating_id";
+    private static final String FIND_FILM = SELECT_FILMS + " WHERE f.film_id = ?";
+    private static final String FIND_ALL_FILMS = SELECT_FILMS + " ORDER BY f.film_id";
+    private static final String FIND_FILMS_PAGE = SELECT_FILMS + " WHERE f.film_id > ? ORDER BY f.film_id LIMIT ?";
+    private static final String FIND_FILMS_BY_IDS = SELECT_FILMS + " WHERE f.film_id = ANY(?)";
+    private static final String GET_USER_FILM_IDS = "SELECT film_id FROM films_likes WHERE user_id = ? " +
+            "ORDER BY film_id";
+    private static final String GET_INDEXED_FIELDS = "SELECT film_id, likes_count, name, description, " +
+            "rating_id FROM films";
     private static final String DELETE_FILM = "DELETE FROM films WHERE film_id = ?";
     private static final String ADD_LIKE = "INSERT INTO films_likes(film_id, user_id) VALUES (?, ?)";
     private static final String DELETE_LIKE = "DELETE FROM films_likes WHERE film_id = ? AND user_id = ?";
-    private static final String GET_LIKES_COUNT = "UPDATE films SET likes_count = ? WHERE film_id = ?";
-    private static final String GET_FILM_GENRE = "SELECT genre_id FROM films_genres WHERE film_id = ?";
+    private static final String SELECT_FILMS_GENRES = "SELECT fg.film_id, g.genre_id, g.name FROM films_genres fg " +
+            "JOIN genres g ON fg.genre_id = g.genre_id";
+    private static final String GET_FILMS_GENRES = SELECT_FILMS_GENRES + " WHERE fg.film_id = ANY(?) " +
+            "ORDER BY fg.film_id, fg.genre_id";
+    private static final String GET_ALL_FILMS_GENRES = SELECT_FILMS_GENRES + " ORDER BY fg.film_id, fg.genre_id";
     private static final String ADD_FILM_GENRE = "INSERT INTO films_genres(film_id, genre_id) VALUES (?, ?)";
     private static final String DELETE_FILM_GENRE = "DELETE FROM films_genres WHERE film_id = ?";
-    private static final String FIND_FILMS_BY_USER = "SELECT * FROM films WHERE film_id IN " +
-            "(SELECT film_id FROM films_likes WHERE user_id = ?) ORDER BY likes_count DESC";
+    private static final String FIND_FILMS_BY_USER = SELECT_FILMS + " WHERE f.film_id IN " +
+            "(SELECT film_id FROM films_likes WHERE user_id = ?) ORDER BY f.likes_count DESC";
+    private static final String FIND_USER_FILMS_PAGE = "SELECT f.*, r.name AS rating_name FROM films_likes fl " +
+            "JOIN films f ON fl.film_id = f.film_id LEFT JOIN ratings r ON f.rating_id = r.rating_id " +
+            "WHERE fl.user_id = ? AND fl.film_id > ? ORDER BY fl.film_id LIMIT ?";
+    private static final String SELECT_DOCUMENTS = "SELECT f.film_id, f.likes_count, f.version, d.body FROM films f " +
+            "LEFT JOIN film_documents d ON f.film_id = d.film_id";
+    private static final String FIND_DOCUMENT = SELECT_DOCUMENTS + " WHERE f.film_id = ?";
+    private static final String FIND_DOCUMENTS_BY_IDS = SELECT_DOCUMENTS + " WHERE f.film_id = ANY(?)";
+    private static final String FIND_DOCUMENTS_PAGE = SELECT_DOCUMENTS + " WHERE f.film_id > ? " +
+            "ORDER BY f.film_id LIMIT ?";
 
     public FilmDbStorage(JdbcTemplate jdbcTemplate,
-                         @Qualifier("genreDbStorage") GenreStorage genreStorage,
-                         @Qualifier("MPADbStorage") MPAStorage mpaStorage) {
+                         LikeCounter likeCounter,
+                         FilmDocuments documents,
+                         PlatformTransactionManager transactionManager) {
         this.jdbcTemplate = jdbcTemplate;
-        this.genreStorage = genreStorage;
-        this.mpaStorage = mpaStorage;
+        this.likeCounter = likeCounter;
+        this.documents = documents;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
+    @PostConstruct
+    public void loadIndexes() {
+        Map<Long, Integer> ratingIds = new HashMap<>();
+        jdbcTemplate.query(GET_INDEXED_FIELDS, resultSet -> {
+            long filmId = resultSet.getLong("film_id");
+            popularityIndex.put(filmId, resultSet.getLong("likes_count"));
+            searchIndex.put(filmId, resultSet.getString("name"), resultSet.getString("description"));
+            ratingIds.put(filmId, resultSet.getObject("rating_id", Integer.class));
+        });
+        Map<Long, Set<Genre>> genres = new HashMap<>();
+        jdbcTemplate.query(GET_ALL_FILMS_GENRES, (RowCallbackHandler) resultSet -> genres
+                .computeIfAbsent(resultSet.getLong("film_id"), key -> new HashSet<>())
+                .add(Genre.builder().id(resultSet.getInt("genre_id")).build()));
+        ratingIds.forEach((filmId, ratingId) -> facetIndex.put(Film.builder()
+                .id(filmId)
+                .mpa(ratingId == null ? null : MPA.builder().id(ratingId).build())
+                .genres(genres.get(filmId))
+                .build()));
+    }
+
+    // The document is written in the transaction of the film rows, readers never see one without the other
     @Override
     public Film create(Film film) {
-        KeyHolder keyHolder = new GeneratedKeyHolder();
-        jdbcTemplate.update(connection -> {
-            PreparedStatement stmt = connection.prepareStatement(CREATE_FILM, new String[]{"film_id"});
-            stmt.setString(1, film.getName());
-            stmt.setString(2, film.getDescription());
-            stmt.setInt(3, film.getDuration());
-            stmt.setDate(4, Date.valueOf(film.getReleaseDate()));
-            stmt.setInt(5, film.getMpa().getId());
-            return stmt;
-        }, keyHolder);
-        long filmId = keyHolder.getKey().longValue();
-        film.setId(filmId);
-        addGenreIdsToDB(film);
-
-        setGenresFromDB(film);
-        setRatingFromDB(film);
-        return film;
+        Film created = transactionTemplate.execute(status -> {
+            KeyHolder keyHolder = new GeneratedKeyHolder();
+            jdbcTemplate.update(connection -> {
+                PreparedStatement stmt = connection.prepareStatement(CREATE_FILM, new String[]{"film_id"});
+                setFilmParameters(stmt, film);
+                return stmt;
+            }, keyHolder);
+            film.setId(keyHolder.getKey().longValue());
+            addGenreIdsToDB(film);
+            Film stored = findById(film.getId()).orElseThrow();
+            documents.write(List.of(stored));
+            return stored;
+        });
+        popularityIndex.put(created.getId(), 0);
+        searchIndex.put(created.getId(), created.getName(), created.getDescription());
+        facetIndex.put(created);
+        return created;
     }
 
     @Override
     public Optional<Film> update(Film film) {
-        boolean isUpdated = jdbcTemplate.update(UPDATE_FILM,
-                film.getName(),
-                film.getDescription(),
-                film.getDuration(),
-                film.getReleaseDate(),
-                film.getMpa().getId(),
-                film.getId()) > 0;
-        if (isUpdated) {
+        Optional<Film> updated = transactionTemplate.execute(status -> {
+            boolean isUpdated = jdbcTemplate.update(UPDATE_FILM,
+                    film.getName(),
+                    film.getDescription(),
+                    film.getDuration(),
+                    film.getReleaseDate(),
+                    film.getMpa().getId(),
+                    film.getId()) > 0;
+            if (!isUpdated) {
+                return Optional.empty();
+            }
             jdbcTemplate.update(DELETE_FILM_GENRE, film.getId());
             addGenreIdsToDB(film);
-        }
-        setGenresFromDB(film);
-        setRatingFromDB(film);
-        return isUpdated ? Optional.of(film) : Optional.empty();
+            Optional<Film> stored = findById(film.getId());
+            stored.ifPresent(value -> documents.write(List.of(value)));
+            return stored;
+        });
+        updated.ifPresent(value -> {
+            searchIndex.put(value.getId(), value.getName(), value.getDescription());
+            facetIndex.put(value);
+        });
+        return updated;
     }
 
     @Override
     public List<Film> findAll() {
-        List<Film> films = jdbcTemplate.query(FIND_ALL_FILMS, this::mapRowToFilm);
-        for (Film film : films) {
-            setGenresFromDB(film);
-        }
+        List<Film> films = likeCounter.consistentRead(() -> jdbcTemplate.query(FIND_ALL_FILMS, this::mapRowToFilm));
+        jdbcTemplate.query(GET_ALL_FILMS_GENRES, new GenreRowHandler(films));
+        return films;
+    }
+
+    // Page by page, each one read under the flush lock and handed out after it is released, so a slow client
+    // holds no lock that flushes and other reads wait for
+    @Override
+    public void forEach(Consumer<? super Film> action) {
+        long afterId = 0;
+        List<Film> batch;
+        do {
+            batch = findAll(afterId, STREAM_BATCH_SIZE);
+            batch.forEach(action);
+            if (!batch.isEmpty()) {
+                afterId = batch.get(batch.size() - 1).getId();
+            }
+        } while (batch.size() == STREAM_BATCH_SIZE);
+    }
+
+    @Override
+    public List<Film> findAll(long afterId, int limit) {
+        List<Film> films = likeCounter.consistentRead(() ->
+                jdbcTemplate.query(FIND_FILMS_PAGE, this::mapRowToFilm, afterId, limit));
+        setGenresFromDB(films);
         return films;
     }
 
     @Override
     public Optional<Film> findById(long id) {
         try {
-            Film film = jdbcTemplate.queryForObject(FIND_FILM, this::mapRowToFilm, id);
-            Optional<Film> optFilm = Optional.ofNullable(film);
-            optFilm.ifPresent(this::setGenresFromDB);
-            return optFilm;
+            Film film = likeCounter.consistentRead(() ->
+                    jdbcTemplate.queryForObject(FIND_FILM, this::mapRowToFilm, id));
+            if (film == null) {
+                return Optional.empty();
+            }
+            setGenresFromDB(List.of(film));
+            return Optional.of(film);
         } catch (EmptyResultDataAccessException e) {
             return Optional.empty();
         }
@@ -113,15 +205,21 @@ public class FilmDbStorage implements FilmStorage {
 
     @Override
     public boolean deleteById(long id) {
-        return jdbcTemplate.update(DELETE_FILM, id) > 0;
+        boolean isDeleted = jdbcTemplate.update(DELETE_FILM, id) > 0;
+        if (isDeleted) {
+            likeCounter.forget(id);
+            popularityIndex.remove(id);
+            searchIndex.remove(id);
+            facetIndex.remove(id);
+        }
+        return isDeleted;
     }
 
     @Override
     public boolean removeLikeFromFilm(long id, long userId) {
         boolean isRemoved = jdbcTemplate.update(DELETE_LIKE, id, userId) > 0;
         if (isRemoved) {
-            long likesAmount = findById(id).get().getLikes_count() - 1;
-            jdbcTemplate.update(GET_LIKES_COUNT, likesAmount, id);
+            countLike(id, false);
         }
         return isRemoved;
     }
@@ -130,51 +228,373 @@ public class FilmDbStorage implements FilmStorage {
     public boolean addLikeToFilm(long id, long userId) {
         boolean isAdded = jdbcTemplate.update(ADD_LIKE, id, userId) > 0;
         if (isAdded) {
-            long likesAmount = findById(id).get().getLikes_count() + 1;
-            jdbcTemplate.update(GET_LIKES_COUNT, likesAmount, id);
+            countLike(id, true);
         }
         return isAdded;
     }
 
-    private void setGenresFromDB(Film film) {
-        Set<Genre> genreSet = jdbcTemplate.queryForList(GET_FILM_GENRE, Long.class, film.getId())
-                .stream()
-                .map(genreId -> genreStorage.findById(genreId).get())
-                .collect(Collectors.toSet());
-        film.setGenres(genreSet);
+    // Likes stored elsewhere, like on user shards, still go through here to reach likes_count and the index
+    public void countLike(long id, boolean isAdded) {
+        if (isAdded) {
+            likeCounter.increment(id);
+            popularityIndex.add(id, 1);
+        } else {
+            likeCounter.decrement(id);
+            popularityIndex.add(id, -1);
+        }
+    }
+
+    @Override
+    public List<Film> findPopular(long count) {
+        return findAllByIds(popularityIndex.top(count));
+    }
+
+    @Override
+    public long[] findPopularIds(long count) {
+        return popularityIndex.top(count);
+    }
+
+    @Override
+    public long[] findPopularIds(long count, long[] filmIds) {
+        return popularityIndex.top(count, filmIds);
+    }
+
+    @Override
+    public FacetIndex.Selection select(Set<Integer> genreIds, boolean isAllGenres, Set<Integer> ratingIds) {
+        return facetIndex.select(genreIds, isAllGenres, ratingIds);
+    }
+
+    @Override
+    public long[] search(String query, int count, boolean isBoostedByLikes) {
+        return searchIndex.search(query, count, isBoostedByLikes ? popularityIndex::likes : null);
+    }
+
+    @Override
+    public Optional<Long> findVersion(long id) {
+        return likeCounter.consistentRead(() -> jdbcTemplate.queryForList(FIND_FILM_VERSION, Long.class, id).stream()
+                .findFirst()
+                .map(version -> version + likeCounter.unflushedOperations(id)));
+    }
+
+    @Override
+    public Map<Long, Long> findVersions(long[] ids) {
+        Map<Long, Long> versions = new HashMap<>();
+        if (ids.length == 0) {
+            return versions;
+        }
+        Long[] filmIds = Arrays.stream(ids).boxed().toArray(Long[]::new);
+        likeCounter.consistentRead(() -> {
+            jdbcTemplate.query(FIND_FILMS_VERSIONS, resultSet -> {
+                long filmId = resultSet.getLong("film_id");
+                versions.put(filmId, resultSet.getLong("version") + likeCounter.unflushedOperations(filmId));
+            }, (Object) filmIds);
+            return null;
+        });
+        return versions;
+    }
+
+    @Override
+    public long[] getUserFilmIds(long userId) {
+        SortedIds.LongArrayBuilder filmIds = new SortedIds.LongArrayBuilder();
+        jdbcTemplate.query(GET_USER_FILM_IDS, resultSet -> {
+            filmIds.add(resultSet.getLong("film_id"));
+        }, userId);
+        return filmIds.build();
+    }
+
+    @Override
+    public List<Film> findAllByIds(long[] ids) {
+        if (ids.length == 0) {
+            return new ArrayList<>();
+        }
+        Long[] filmIds = Arrays.stream(ids).boxed().toArray(Long[]::new);
+        Map<Long, Film> filmsById = new HashMap<>();
+        likeCounter.consistentRead(() -> jdbcTemplate.query(FIND_FILMS_BY_IDS, this::mapRowToFilm, (Object) filmIds))
+                .forEach(film -> filmsById.put(film.getId(), film));
+        List<Film> films = new ArrayList<>(filmsById.size());
+        for (long id : ids) {
+            Film film = filmsById.get(id);
+            if (film != null) {
+                films.add(film);
+            }
+        }
+        setGenresFromDB(films);
+        return films;
+    }
+
+    @Override
+    public Optional<FilmDocument> findDocument(long id) {
+        List<FilmDocument> found = new ArrayList<>();
+        List<Long> missing = new ArrayList<>();
+        likeCounter.consistentRead(() -> {
+            jdbcTemplate.query(FIND_DOCUMENT, new DocumentRowHandler(found::add, missing::add), id);
+            return null;
+        });
+        return found.isEmpty() ? rebuildDocuments(missing).stream().findFirst() : Optional.of(found.get(0));
+    }
+
+    @Override
+    public List<FilmDocument> findDocuments(long[] ids) {
+        if (ids.length == 0) {
+            return new ArrayList<>();
+        }
+        Long[] filmIds = Arrays.stream(ids).boxed().toArray(Long[]::new);
+        Map<Long, FilmDocument> documentsById = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        likeCounter.consistentRead(() -> {
+            jdbcTemplate.query(FIND_DOCUMENTS_BY_IDS, new DocumentRowHandler(
+                    document -> documentsById.put(document.getId(), document), missing::add), (Object) filmIds);
+            return null;
+        });
+        rebuildDocuments(missing).forEach(document -> documentsById.put(document.getId(), document));
+        List<FilmDocument> found = new ArrayList<>(documentsById.size());
+        for (long id : ids) {
+            FilmDocument document = documentsById.get(id);
+            if (document != null) {
+                found.add(document);
+            }
+        }
+        return found;
+    }
+
+    // Paged like forEach; films missing a document are rebuilt after the lock is released, as that is a write
+    @Override
+    public void forEachDocument(Consumer<? super FilmDocument> action) {
+        long afterId = 0;
+        List<Long> ids;
+        do {
+            ids = new ArrayList<>();
+            Map<Long, FilmDocument> documentsById = new HashMap<>();
+            List<Long> missing = new ArrayList<>();
+            List<Long> pageIds = ids;
+            long pageAfterId = afterId;
+            likeCounter.consistentRead(() -> {
+                jdbcTemplate.query(FIND_DOCUMENTS_PAGE, new DocumentRowHandler(document -> {
+                    pageIds.add(document.getId());
+                    documentsById.put(document.getId(), document);
+                }, id -> {
+                    pageIds.add(id);
+                    missing.add(id);
+                }), pageAfterId, STREAM_BATCH_SIZE);
+                return null;
+            });
+            rebuildDocuments(missing).forEach(document -> documentsById.put(document.getId(), document));
+            for (long id : ids) {
+                FilmDocument document = documentsById.get(id);
+                if (document != null) {
+                    action.accept(document);
+                }
+            }
+            if (!ids.isEmpty()) {
+                afterId = ids.get(ids.size() - 1);
+            }
+        } while (ids.size() == STREAM_BATCH_SIZE);
+    }
+
+    // Films written before their table had documents get them on first read
+    private List<FilmDocument> rebuildDocuments(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Film> films = findAllByIds(ids.stream().mapToLong(Long::longValue).toArray());
+        documents.write(films);
+        return films.stream().map(documents::toDocument).collect(Collectors.toList());
+    }
+
+    private void setGenresFromDB(List<Film> films) {
+        if (films.isEmpty()) {
+            return;
+        }
+        Long[] filmIds = films.stream().map(Film::getId).toArray(Long[]::new);
+        jdbcTemplate.query(GET_FILMS_GENRES, new GenreRowHandler(films), (Object) filmIds);
+    }
+
+    @Override
+    public void createAll(List<Film> films) {
+        List<Film> withIds = new ArrayList<>();
+        List<Film> withoutIds = new ArrayList<>();
+        for (Film film : films) {
+            (film.getId() > 0 ? withIds : withoutIds).add(film);
+        }
+        try {
+            if (!withoutIds.isEmpty()) {
+                jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                    try (PreparedStatement stmt = connection.prepareStatement(CREATE_FILM, new String[]{"film_id"})) {
+                        for (Film film : withoutIds) {
+                            setFilmParameters(stmt, film);
+                            stmt.addBatch();
+                        }
+                        stmt.executeBatch();
+                        try (ResultSet keys = stmt.getGeneratedKeys()) {
+                            for (Film film : withoutIds) {
+                                keys.next();
+                                film.setId(keys.getLong(1));
+                            }
+                        }
+                    }
+                    return null;
+                });
+            }
+            if (!withIds.isEmpty()) {
+                jdbcTemplate.batchUpdate(CREATE_FILM_WITH_ID, withIds, withIds.size(), (stmt, film) -> {
+                    setFilmParameters(stmt, film);
+                    stmt.setLong(6, film.getId());
+                });
+            }
+            addGenreIdsToDB(films);
+            // Rating and genre names come from their tables, so the documents are built from what was stored
+            documents.write(findAllByIds(films.stream().mapToLong(Film::getId).toArray()));
+            if (!withIds.isEmpty()) {
+                // Explicit ids don't move the identity, DDL commits the chunk in H2 so it goes last
+                Long nextId = jdbcTemplate.queryForObject(GET_NEXT_FILM_ID, Long.class);
+                jdbcTemplate.execute(RESTART_FILM_ID + nextId);
+            }
+        } catch (RuntimeException e) {
+            // The chunk is rolled back, so generated ids must not leak into a retry
+            withoutIds.forEach(film -> film.setId(0));
+            throw e;
+        }
+        afterCommit(() -> {
+            for (Film film : films) {
+                popularityIndex.put(film.getId(), 0);
+                searchIndex.put(film.getId(), film.getName(), film.getDescription());
+                facetIndex.put(film);
+            }
+        });
+    }
+
+    // The indexes live outside the database, so inside a transaction they are only told once it has committed
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
     }
 
-    private void setRatingFromDB(Film film) {
-        film.setMpa(mpaStorage.findById(film.getMpa().getId()).get());
+    @Override
+    public void addLikes(List<Like> likes) {
+        jdbcTemplate.batchUpdate(ADD_LIKE, likes, likes.size(), (stmt, like) -> {
+            stmt.setLong(1, like.getFilmId());
+            stmt.setLong(2, like.getUserId());
+        });
+        likes.forEach(like -> countLike(like.getFilmId(), true));
+    }
+
+    private void setFilmParameters(PreparedStatement stmt, Film film) throws SQLException {
+        stmt.setString(1, film.getName());
+        stmt.setString(2, film.getDescription());
+        stmt.setInt(3, film.getDuration());
+        stmt.setDate(4, Date.valueOf(film.getReleaseDate()));
+        stmt.setInt(5, film.getMpa().getId());
     }
 
     private void addGenreIdsToDB(Film film) {
-        if (film.getGenres() != null) {
-            for (Genre genre : film.getGenres()) {
-                jdbcTemplate.update(ADD_FILM_GENRE, film.getId(), genre.getId());
+        addGenreIdsToDB(List.of(film));
+    }
+
+    private void addGenreIdsToDB(List<Film> films) {
+        List<long[]> filmGenres = new ArrayList<>();
+        for (Film film : films) {
+            if (film.getGenres() != null) {
+                for (Genre genre : film.getGenres()) {
+                    filmGenres.add(new long[]{film.getId(), genre.getId()});
+                }
             }
         }
+        if (!filmGenres.isEmpty()) {
+            jdbcTemplate.batchUpdate(ADD_FILM_GENRE, filmGenres, filmGenres.size(), (stmt, filmGenre) -> {
+                stmt.setLong(1, filmGenre[0]);
+                stmt.setLong(2, filmGenre[1]);
+            });
+        }
     }
 
     public List<Film> getUserFilms(long userId) {
-        List<Film> userFilms = jdbcTemplate.query(FIND_FILMS_BY_USER, this::mapRowToFilm, userId);
-        for (Film film : userFilms) {
-            setGenresFromDB(film);
-            //setDirectorsFromDB(film);
-        }
+        List<Film> userFilms = likeCounter.consistentRead(() ->
+                jdbcTemplate.query(FIND_FILMS_BY_USER, this::mapRowToFilm, userId));
+        setGenresFromDB(userFilms);
         return userFilms;
     }
 
-    private Film mapRowToFilm(ResultSet resultSet, int rowNum) throws SQLException {
+    @Override
+    public List<Film> getUserFilms(long userId, long afterId, int limit) {
+        List<Film> userFilms = likeCounter.consistentRead(() ->
+                jdbcTemplate.query(FIND_USER_FILMS_PAGE, this::mapRowToFilm, userId, afterId, limit));
+        setGenresFromDB(userFilms);
+        return userFilms;
+    }
 
+    private Film mapRowToFilm(ResultSet resultSet, int rowNum) throws SQLException {
+        long filmId = resultSet.getLong("film_id");
         return Film.builder()
-                .id(resultSet.getLong("film_id"))
+                .id(filmId)
                 .name(resultSet.getString("name"))
                 .description(resultSet.getString("description"))
                 .duration(resultSet.getInt("duration"))
                 .releaseDate(resultSet.getDate("release_date").toLocalDate())
-                .mpa(mpaStorage.findById(resultSet.getInt("rating_id")).get())
-                .likes_count(resultSet.getLong("likes_count"))
+                .mpa(MPA.builder()
+                        .id(resultSet.getInt("rating_id"))
+                        .name(resultSet.getString("rating_name"))
+                        .build())
+                .likes_count(resultSet.getLong("likes_count") + likeCounter.unflushed(filmId))
+                .version(resultSet.getLong("version") + likeCounter.unflushedOperations(filmId))
+                .genres(new LinkedHashSet<>())
                 .build();
     }
+
+    private static Genre mapRowToGenre(ResultSet resultSet) throws SQLException {
+        return Genre.builder()
+                .id(resultSet.getInt("genre_id"))
+                .name(resultSet.getString("name"))
+                .build();
+    }
+
+    private class DocumentRowHandler implements RowCallbackHandler {
+
+        private final Consumer<? super FilmDocument> found;
+        private final Consumer<Long> missing;
+
+        private DocumentRowHandler(Consumer<? super FilmDocument> found, Consumer<Long> missing) {
+            this.found = found;
+            this.missing = missing;
+        }
+
+        @Override
+        public void processRow(ResultSet resultSet) throws SQLException {
+            long filmId = resultSet.getLong("film_id");
+            byte[] body = resultSet.getBytes("body");
+            if (body == null) {
+                missing.accept(filmId);
+                return;
+            }
+            found.accept(documents.toDocument(filmId, body,
+                    resultSet.getLong("likes_count") + likeCounter.unflushed(filmId),
+                    resultSet.getLong("version") + likeCounter.unflushedOperations(filmId)));
+        }
+    }
+
+    private static class GenreRowHandler implements RowCallbackHandler {
+
+        private final Map<Long, Film> filmsById = new HashMap<>();
+
+        private GenreRowHandler(List<Film> films) {
+            for (Film film : films) {
+                filmsById.put(film.getId(), film);
+            }
+        }
+
+        @Override
+        public void processRow(ResultSet resultSet) throws SQLException {
+            Film film = filmsById.get(resultSet.getLong("film_id"));
+            if (film != null) {
+                film.getGenres().add(mapRowToGenre(resultSet));
+            }
+        }
+    }
 }
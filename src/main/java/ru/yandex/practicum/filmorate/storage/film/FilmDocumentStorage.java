@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import ru.yandex.practicum.filmorate.model.FilmDocument;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+// Film storages that keep every film as ready JSON next to its rows
+public interface FilmDocumentStorage {
+
+    Optional<FilmDocument> findDocument(long id);
+
+    List<FilmDocument> findDocuments(long[] ids);
+
+    void forEachDocument(Consumer<? super FilmDocument> action);
+}
@@ -0,0 +1,72 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmDocument;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/*
+ * Serialized films of film_documents. likes_count changes with every like and is flushed in batches, so it stays
+ * out of the stored body and is appended from the films row on read; everything else is written with the film.
+ */
+@Component
+public class FilmDocuments {
+
+    private static final String WRITE_DOCUMENT = "MERGE INTO film_documents KEY (film_id) VALUES (?, ?)";
+    private static final String LIKES_COUNT = "likes_count";
+    private static final byte[] LIKES_COUNT_FIELD = (",\"" + LIKES_COUNT + "\":").getBytes(StandardCharsets.UTF_8);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    public FilmDocuments(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    public void write(List<Film> films) {
+        if (films.isEmpty()) {
+            return;
+        }
+        List<Object[]> batch = films.stream()
+                .map(film -> new Object[]{film.getId(), serialize(film)})
+                .collect(Collectors.toList());
+        jdbcTemplate.batchUpdate(WRITE_DOCUMENT, batch);
+    }
+
+    public FilmDocument toDocument(Film film) {
+        return toDocument(film.getId(), serialize(film), film.getLikes_count(), film.getVersion());
+    }
+
+    // The body is a JSON object, the count goes in before its closing brace
+    public FilmDocument toDocument(long id, byte[] body, long likesCount, long version) {
+        byte[] count = Long.toString(likesCount).getBytes(StandardCharsets.US_ASCII);
+        byte[] json = new byte[body.length + LIKES_COUNT_FIELD.length + count.length];
+        System.arraycopy(body, 0, json, 0, body.length - 1);
+        System.arraycopy(LIKES_COUNT_FIELD, 0, json, body.length - 1, LIKES_COUNT_FIELD.length);
+        System.arraycopy(count, 0, json, body.length - 1 + LIKES_COUNT_FIELD.length, count.length);
+        json[json.length - 1] = '}';
+        return FilmDocument.builder()
+                .id(id)
+                .version(version)
+                .json(json)
+                .build();
+    }
+
+    private byte[] serialize(Film film) {
+        ObjectNode node = objectMapper.valueToTree(film);
+        node.remove(LIKES_COUNT);
+        try {
+            return objectMapper.writeValueAsBytes(node);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Film " + film.getId() + " can't be serialized", e);
+        }
+    }
+}
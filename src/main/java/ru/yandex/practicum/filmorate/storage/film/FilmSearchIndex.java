@@ -0,0 +1,146 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import ru.yandex.practicum.filmorate.util.Tokenizer;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongUnaryOperator;
+
+/*
+ * Inverted index over film names and descriptions. Terms are kept sorted, so the last word of a query also
+ * matches every term it starts. Films are ranked by BM25 with name terms counted twice, and optionally boosted
+ * by the log of their likes.
+ */
+public class FilmSearchIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int NAME_WEIGHT = 2;
+    private static final int MIN_PREFIX = 2;
+    private static final double POPULARITY_WEIGHT = 0.2;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // term -> film id -> weighted term frequency
+    private final NavigableMap<String, Map<Long, Integer>> postings = new TreeMap<>();
+    private final Map<Long, Document> documents = new HashMap<>();
+    private long totalLength;
+
+    public void put(long filmId, String name, String description) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        Tokenizer.terms(name).forEach(term -> frequencies.merge(term, NAME_WEIGHT, Integer::sum));
+        Tokenizer.terms(description).forEach(term -> frequencies.merge(term, 1, Integer::sum));
+        int length = frequencies.values().stream().mapToInt(Integer::intValue).sum();
+        lock.writeLock().lock();
+        try {
+            removeLocked(filmId);
+            frequencies.forEach((term, frequency) ->
+                    postings.computeIfAbsent(term, key -> new HashMap<>()).put(filmId, frequency));
+            documents.put(filmId, new Document(frequencies.keySet().toArray(new String[0]), length));
+            totalLength += length;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long filmId) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(filmId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Best matches first, ties by id; likes is null when popularity should not count
+    public long[] search(String query, int count, LongUnaryOperator likes) {
+        List<String> terms = Tokenizer.terms(query);
+        if (terms.isEmpty() || count <= 0) {
+            return new long[0];
+        }
+        Map<Long, Double> scores = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            if (documents.isEmpty()) {
+                return new long[0];
+            }
+            double averageLength = (double) totalLength / documents.size();
+            for (int i = 0; i < terms.size(); i++) {
+                String term = terms.get(i);
+                boolean isPrefix = i == terms.size() - 1 && term.length() >= MIN_PREFIX;
+                Map<String, Map<Long, Integer>> matches = isPrefix
+                        ? postings.subMap(term, true, term + Character.MAX_VALUE, true)
+                        : postings.containsKey(term) ? Map.of(term, postings.get(term)) : Map.of();
+                // A film matching several expansions of a prefix counts its best one
+                Map<Long, Double> termScores = new HashMap<>();
+                for (Map<Long, Integer> films : matches.values()) {
+                    double idf = Math.log(1 + (documents.size() - films.size() + 0.5) / (films.size() + 0.5));
+                    films.forEach((filmId, frequency) -> {
+                        double norm = K1 * (1 - B + B * documents.get(filmId).length / averageLength);
+                        termScores.merge(filmId, idf * frequency * (K1 + 1) / (frequency + norm), Math::max);
+                    });
+                }
+                termScores.forEach((filmId, score) -> scores.merge(filmId, score, Double::sum));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return top(scores, count, likes);
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static long[] top(Map<Long, Double> scores, int count, LongUnaryOperator likes) {
+        Comparator<Map.Entry<Long, Double>> byRank = Map.Entry.<Long, Double>comparingByValue()
+                .thenComparing(Map.Entry.<Long, Double>comparingByKey().reversed());
+        PriorityQueue<Map.Entry<Long, Double>> best = new PriorityQueue<>(byRank);
+        for (Map.Entry<Long, Double> entry : scores.entrySet()) {
+            double score = entry.getValue();
+            if (likes != null) {
+                score *= 1 + POPULARITY_WEIGHT * Math.log1p(Math.max(0, likes.applyAsLong(entry.getKey())));
+            }
+            best.add(Map.entry(entry.getKey(), score));
+            if (best.size() > count) {
+                best.poll();
+            }
+        }
+        long[] filmIds = new long[best.size()];
+        for (int i = filmIds.length - 1; i >= 0; i--) {
+            filmIds[i] = best.poll().getKey();
+        }
+        return filmIds;
+    }
+
+    private void removeLocked(long filmId) {
+        Document document = documents.remove(filmId);
+        if (document == null) {
+            return;
+        }
+        totalLength -= document.length;
+        for (String term : document.terms) {
+            Map<Long, Integer> films = postings.get(term);
+            films.remove(filmId);
+            if (films.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+    }
+
+    private static class Document {
+
+        private final String[] terms;
+        private final int length;
+
+        private Document(String[] terms, int length) {
+            this.terms = terms;
+            this.length = length;
+        }
+    }
+}
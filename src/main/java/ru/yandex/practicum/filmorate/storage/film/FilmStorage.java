@@ -1,9 +1,14 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Like;
 import ru.yandex.practicum.filmorate.storage.Storage;
+import ru.yandex.practicum.filmorate.util.SortedIds;
 
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
 public interface FilmStorage extends Storage<Film> {
 
@@ -13,4 +18,35 @@ public interface FilmStorage extends Storage<Film> {
 
     List<Film> getUserFilms(long userId);
 
+    List<Film> getUserFilms(long userId, long afterId, int limit);
+
+    List<Film> findPopular(long count);
+
+    long[] findPopularIds(long count);
+
+    // The most liked of the given film ids, which are sorted
+    long[] findPopularIds(long count, long[] filmIds);
+
+    // Films with any or all of the genres and any of the ratings, empty ids match every film
+    FacetIndex.Selection select(Set<Integer> genreIds, boolean isAllGenres, Set<Integer> ratingIds);
+
+    // Ids of the films whose name or description match the query, best first
+    long[] search(String query, int count, boolean isBoostedByLikes);
+
+    Optional<Long> findVersion(long id);
+
+    Map<Long, Long> findVersions(long[] ids);
+
+    long[] getUserFilmIds(long userId);
+
+    default long[] getCommonFilmIds(long userId, long otherUserId) {
+        return SortedIds.intersect(getUserFilmIds(userId), getUserFilmIds(otherUserId));
+    }
+
+    List<Film> findAllByIds(long[] ids);
+
+    void createAll(List<Film> films);
+
+    void addLikes(List<Like> likes);
+
 }
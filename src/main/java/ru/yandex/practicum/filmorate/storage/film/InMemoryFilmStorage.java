@@ -3,32 +3,69 @@ package ru.yandex.practicum.filmorate.storage.film;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.MPA;
 import ru.yandex.practicum.filmorate.storage.genre.InMemoryGenreStorage;
+import ru.yandex.practicum.filmorate.storage.journal.Journal;
+import ru.yandex.practicum.filmorate.storage.journal.JournalRecord;
+import ru.yandex.practicum.filmorate.storage.journal.JournaledStorage;
 import ru.yandex.practicum.filmorate.storage.mpa.InMemoryMPAStorage;
+import ru.yandex.practicum.filmorate.util.IdBitmap;
+import ru.yandex.practicum.filmorate.util.SortedIds;
+import ru.yandex.practicum.filmorate.util.StripedLocks;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 @Component
-public class InMemoryFilmStorage implements FilmStorage {
+public class InMemoryFilmStorage implements FilmStorage, JournaledStorage {
+
+    private static final byte PUT_FILM = 1;
+    private static final byte DELETE_FILM = 2;
+    private static final byte ADD_LIKE = 3;
+    private static final byte REMOVE_LIKE = 4;
+    private static final byte PUT_LIKES = 5;
+    private static final byte LAST_ID = 6;
 
     private final InMemoryGenreStorage genreStorage;
     private final InMemoryMPAStorage mpaStorage;
 
-    private final Map<Long, Film> films;
-    private final Map<Long, Set<Long>> likes;
-    private static long filmId;
+    private final ConcurrentNavigableMap<Long, Film> films;
+    // Users who liked a film and the inverse, films a user liked
+    private final ConcurrentMap<Long, IdBitmap> likes;
+    private final ConcurrentMap<Long, IdBitmap> userLikes;
+    private final PopularityIndex popularityIndex;
+    private final FilmSearchIndex searchIndex;
+    private final FacetIndex facetIndex;
+    // Every change to a film, its likes included, happens under the film's stripe; reads take no locks
+    private final StripedLocks locks;
+    private final AtomicLong filmId;
+    // Records are appended under the film's stripe, so they reach the journal in the order they were applied
+    private volatile Journal journal = Journal.disabled();
 
     public InMemoryFilmStorage(InMemoryGenreStorage genreStorage,
                                InMemoryMPAStorage mpaStorage) {
         this.genreStorage = genreStorage;
         this.mpaStorage = mpaStorage;
-        films = new HashMap<>();
-        likes = new HashMap<>();
+        films = new ConcurrentSkipListMap<>();
+        likes = new ConcurrentHashMap<>();
+        userLikes = new ConcurrentHashMap<>();
+        popularityIndex = new PopularityIndex();
+        searchIndex = new FilmSearchIndex();
+        facetIndex = new FacetIndex();
+        locks = new StripedLocks();
+        filmId = new AtomicLong();
     }
 
     private long generateId() {
-        return ++filmId;
+        return filmId.incrementAndGet();
     }
 
     private void validateRating(Film film) {
@@ -57,20 +94,43 @@ public class InMemoryFilmStorage implements FilmStorage {
         validateGenres(film);
 
         film.setId(generateId());
-        films.put(film.getId(), film);
+        putNew(film);
+        journal.sync();
         return film;
     }
 
+    private void putNew(Film film) {
+        locks.withLock(film.getId(), () -> {
+            if (films.putIfAbsent(film.getId(), film) != null) {
+                throw new IllegalArgumentException("Film with id " + film.getId() + " already exists");
+            }
+            popularityIndex.put(film.getId(), 0);
+            searchIndex.put(film.getId(), film.getName(), film.getDescription());
+            facetIndex.put(film);
+            journal.append(() -> filmRecord(film));
+            return film;
+        });
+    }
+
     @Override
     public Optional<Film> update(Film film) {
-        if (films.containsKey(film.getId())) {
-            validateRating(film);
-            validateGenres(film);
-
+        validateRating(film);
+        validateGenres(film);
+        Optional<Film> updated = locks.withLock(film.getId(), () -> {
+            Film old = films.get(film.getId());
+            if (old == null) {
+                return Optional.<Film>empty();
+            }
+            film.setLikes_count(old.getLikes_count());
+            film.setVersion(old.getVersion() + 1);
             films.put(film.getId(), film);
+            searchIndex.put(film.getId(), film.getName(), film.getDescription());
+            facetIndex.put(film);
+            journal.append(() -> filmRecord(film));
             return Optional.of(film);
-        }
-        return Optional.empty();
+        });
+        updated.ifPresent(changed -> journal.sync());
+        return updated;
     }
 
     @Override
@@ -78,6 +138,13 @@ public class InMemoryFilmStorage implements FilmStorage {
         return new ArrayList<>(films.values());
     }
 
+    @Override
+    public List<Film> findAll(long afterId, int limit) {
+        return films.tailMap(afterId, false).values().stream()
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
     @Override
     public Optional<Film> findById(long id) {
         return Optional.ofNullable(films.get(id));
@@ -85,35 +152,339 @@ public class InMemoryFilmStorage implements FilmStorage {
 
     @Override
     public boolean deleteById(long id) {
+        boolean isDeleted = deleteAndLog(id);
+        if (isDeleted) {
+            journal.sync();
+        }
+        return isDeleted;
+    }
+
+    private boolean deleteAndLog(long id) {
+        return locks.withLock(id, () -> {
+            if (!removeFilm(id)) {
+                return false;
+            }
+            journal.append(() -> JournalRecord.of(DELETE_FILM).putLong(id).build());
+            return true;
+        });
+    }
+
+    private boolean removeFilm(long id) {
+        IdBitmap filmLikes = likes.remove(id);
+        if (filmLikes != null) {
+            for (long userId : filmLikes.toArray()) {
+                removeUserLike(userId, id);
+            }
+        }
+        popularityIndex.remove(id);
+        searchIndex.remove(id);
+        facetIndex.remove(id);
         return films.remove(id) != null;
     }
 
     @Override
     public boolean removeLikeFromFilm(long id, long userId) {
-        if (likes.containsKey(id)) {
-            likes.get(id).remove(userId);
-            films.get(id).setLikes_count(likes.get(id).size());
+        boolean isRemoved = locks.withLock(id, () -> {
+            Film film = films.get(id);
+            IdBitmap filmLikes = likes.get(id);
+            if (film == null || filmLikes == null || !filmLikes.remove(userId)) {
+                return false;
+            }
+            removeUserLike(userId, id);
+            Film updated = updateLikesCount(film, filmLikes.cardinality());
+            journal.append(() -> likeRecord(REMOVE_LIKE, updated, userId));
             return true;
+        });
+        if (isRemoved) {
+            journal.sync();
         }
-        return false;
+        return isRemoved;
     }
 
     @Override
     public boolean addLikeToFilm(long id, long userId) {
-        if (likes.containsKey(id)) {
-            likes.get(id).add(userId);
-        } else {
-            Set<Long> filmLikes = new HashSet<>();
-            filmLikes.add(userId);
-            likes.put(id, filmLikes);
+        boolean isAdded = addLike(id, userId);
+        if (isAdded) {
+            journal.sync();
         }
-        films.get(id).setLikes_count(likes.get(id).size());
-        return true;
+        return isAdded;
+    }
+
+    private boolean addLike(long id, long userId) {
+        return locks.withLock(id, () -> {
+            Film film = films.get(id);
+            if (film == null || !likes.computeIfAbsent(id, key -> new IdBitmap()).add(userId)) {
+                return false;
+            }
+            userLikes.computeIfAbsent(userId, key -> new IdBitmap()).add(id);
+            Film updated = updateLikesCount(film, likes.get(id).cardinality());
+            journal.append(() -> likeRecord(ADD_LIKE, updated, userId));
+            return true;
+        });
+    }
+
+    private void removeUserLike(long userId, long id) {
+        IdBitmap filmIds = userLikes.get(userId);
+        if (filmIds != null) {
+            filmIds.remove(id);
+        }
+    }
+
+    private Film updateLikesCount(Film film, long count) {
+        Film updated = withLikes(film, count, film.getVersion() + 1);
+        films.put(film.getId(), updated);
+        popularityIndex.put(film.getId(), count);
+        return updated;
+    }
+
+    // Stored films are replaced, never changed in place, so a lock-free reader can't see a count without its version
+    private static Film withLikes(Film film, long likesCount, long version) {
+        return Film.builder()
+                .id(film.getId())
+                .name(film.getName())
+                .description(film.getDescription())
+                .duration(film.getDuration())
+                .releaseDate(film.getReleaseDate())
+                .mpa(film.getMpa())
+                .genres(film.getGenres())
+                .likes_count(likesCount)
+                .version(version)
+                .build();
     }
 
     @Override
     public List<Film> getUserFilms(long userId) {
-        return null;
+        List<Film> userFilms = findAllByIds(getUserFilmIds(userId));
+        userFilms.sort(Comparator.comparingLong(Film::getLikes_count).reversed());
+        return userFilms;
+    }
+
+    @Override
+    public List<Film> getUserFilms(long userId, long afterId, int limit) {
+        return findAllByIds(SortedIds.page(getUserFilmIds(userId), afterId, limit));
+    }
+
+    @Override
+    public List<Film> findPopular(long count) {
+        return findAllByIds(popularityIndex.top(count));
+    }
+
+    @Override
+    public long[] findPopularIds(long count) {
+        return popularityIndex.top(count);
+    }
+
+    @Override
+    public long[] findPopularIds(long count, long[] filmIds) {
+        return popularityIndex.top(count, filmIds);
+    }
+
+    @Override
+    public FacetIndex.Selection select(Set<Integer> genreIds, boolean isAllGenres, Set<Integer> ratingIds) {
+        return facetIndex.select(genreIds, isAllGenres, ratingIds);
+    }
+
+    @Override
+    public long[] search(String query, int count, boolean isBoostedByLikes) {
+        return searchIndex.search(query, count, isBoostedByLikes ? popularityIndex::likes : null);
+    }
+
+    @Override
+    public Optional<Long> findVersion(long id) {
+        return findById(id).map(Film::getVersion);
+    }
+
+    @Override
+    public Map<Long, Long> findVersions(long[] ids) {
+        return findAllByIds(ids).stream().collect(Collectors.toMap(Film::getId, Film::getVersion));
+    }
+
+    @Override
+    public long[] getUserFilmIds(long userId) {
+        IdBitmap filmIds = userLikes.get(userId);
+        return filmIds == null ? new long[0] : filmIds.toArray();
+    }
+
+    @Override
+    public long[] getCommonFilmIds(long userId, long otherUserId) {
+        IdBitmap filmIds = userLikes.get(userId);
+        IdBitmap otherFilmIds = userLikes.get(otherUserId);
+        return filmIds == null || otherFilmIds == null ? new long[0] : IdBitmap.intersect(filmIds, otherFilmIds);
+    }
+
+    @Override
+    public List<Film> findAllByIds(long[] ids) {
+        return Arrays.stream(ids)
+                .mapToObj(films::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void createAll(List<Film> newFilms) {
+        // Fails fast on ids already taken; one taken concurrently after this check is caught by putNew
+        for (Film film : newFilms) {
+            if (films.containsKey(film.getId())) {
+                throw new IllegalArgumentException("Film with id " + film.getId() + " already exists");
+            }
+            validateRating(film);
+            validateGenres(film);
+        }
+        List<Film> stored = new ArrayList<>();
+        List<Film> withGeneratedIds = new ArrayList<>();
+        try {
+            for (Film film : newFilms) {
+                if (film.getId() > 0) {
+                    filmId.accumulateAndGet(film.getId(), Math::max);
+                } else {
+                    film.setId(generateId());
+                    withGeneratedIds.add(film);
+                }
+                putNew(film);
+                stored.add(film);
+            }
+        } catch (RuntimeException e) {
+            // The chunk is all or nothing, as in the database: the films already put are taken back and generated
+            // ids must not leak into a retry
+            stored.forEach(film -> deleteAndLog(film.getId()));
+            withGeneratedIds.forEach(film -> film.setId(0));
+            journal.sync();
+            throw e;
+        }
+        journal.sync();
+    }
+
+    @Override
+    public void addLikes(List<Like> newLikes) {
+        for (Like like : newLikes) {
+            if (!films.containsKey(like.getFilmId())) {
+                throw new IllegalArgumentException("Film with id " + like.getFilmId() + " doesn't exist");
+            }
+        }
+        newLikes.forEach(like -> addLike(like.getFilmId(), like.getUserId()));
+        journal.sync();
+    }
+
+    @Override
+    public String journalName() {
+        return "films";
+    }
+
+    @Override
+    public void replay(ByteBuffer record) {
+        byte type = record.get();
+        switch (type) {
+            case PUT_FILM:
+                Film film = readFilm(record);
+                IdBitmap filmLikes = likes.get(film.getId());
+                film.setLikes_count(filmLikes == null ? 0 : filmLikes.cardinality());
+                films.put(film.getId(), film);
+                searchIndex.put(film.getId(), film.getName(), film.getDescription());
+                facetIndex.put(film);
+                filmId.accumulateAndGet(film.getId(), Math::max);
+                break;
+            case DELETE_FILM:
+                removeFilm(record.getLong());
+                break;
+            case ADD_LIKE:
+            case REMOVE_LIKE:
+                replayLike(type == ADD_LIKE, record.getLong(), record.getLong(), record.getLong());
+                break;
+            case PUT_LIKES:
+                long id = record.getLong();
+                long version = record.getLong();
+                for (long userId : JournalRecord.getLongs(record)) {
+                    replayLike(true, id, userId, version);
+                }
+                break;
+            case LAST_ID:
+                filmId.accumulateAndGet(record.getLong(), Math::max);
+                break;
+            default:
+                throw new IllegalStateException("Unknown film journal record " + type);
+        }
+    }
+
+    // A like of a film deleted later in the journal is skipped, the film's version is the one logged with it
+    private void replayLike(boolean isAdded, long id, long userId, long version) {
+        Film film = films.get(id);
+        if (film == null) {
+            return;
+        }
+        IdBitmap filmLikes = likes.computeIfAbsent(id, key -> new IdBitmap());
+        if (isAdded && filmLikes.add(userId)) {
+            userLikes.computeIfAbsent(userId, key -> new IdBitmap()).add(id);
+        } else if (!isAdded && filmLikes.remove(userId)) {
+            removeUserLike(userId, id);
+        }
+        films.put(id, withLikes(film, filmLikes.cardinality(), version));
+    }
+
+    @Override
+    public void finishReplay() {
+        films.values().forEach(film -> popularityIndex.put(film.getId(), film.getLikes_count()));
+    }
+
+    @Override
+    public void writeSnapshot(Journal.Sink sink) throws IOException {
+        sink.add(JournalRecord.of(LAST_ID).putLong(filmId.get()).build());
+        for (Film film : films.values()) {
+            sink.add(filmRecord(film));
+            IdBitmap filmLikes = likes.get(film.getId());
+            if (filmLikes != null) {
+                sink.add(JournalRecord.of(PUT_LIKES).putLong(film.getId()).putLong(film.getVersion())
+                        .putLongs(filmLikes.toArray()).build());
+            }
+        }
+    }
+
+    @Override
+    public void attach(Journal journal) {
+        this.journal = journal;
+    }
+
+    private static byte[] likeRecord(byte type, Film film, long userId) {
+        return JournalRecord.of(type).putLong(film.getId()).putLong(userId).putLong(film.getVersion()).build();
+    }
+
+    // Rating and genres are logged with their names, a restored film doesn't depend on the reference storages
+    private static byte[] filmRecord(Film film) {
+        JournalRecord record = JournalRecord.of(PUT_FILM)
+                .putLong(film.getId())
+                .putLong(film.getVersion())
+                .putString(film.getName())
+                .putString(film.getDescription())
+                .putInt(film.getDuration())
+                .putDate(film.getReleaseDate())
+                .putInt(film.getMpa().getId())
+                .putString(film.getMpa().getName());
+        Set<Genre> genres = film.getGenres() == null ? Set.of() : film.getGenres();
+        record.putInt(film.getGenres() == null ? -1 : genres.size());
+        for (Genre genre : genres) {
+            record.putInt(genre.getId()).putString(genre.getName());
+        }
+        return record.build();
+    }
+
+    private static Film readFilm(ByteBuffer record) {
+        Film film = Film.builder()
+                .id(record.getLong())
+                .version(record.getLong())
+                .name(JournalRecord.getString(record))
+                .description(JournalRecord.getString(record))
+                .duration(record.getInt())
+                .releaseDate(JournalRecord.getDate(record))
+                .mpa(MPA.builder().id(record.getInt()).name(JournalRecord.getString(record)).build())
+                .build();
+        int genreCount = record.getInt();
+        if (genreCount >= 0) {
+            Set<Genre> genres = new TreeSet<>(Comparator.comparing(Genre::getId));
+            for (int i = 0; i < genreCount; i++) {
+                genres.add(Genre.builder().id(record.getInt()).name(JournalRecord.getString(record)).build());
+            }
+            film.setGenres(genres);
+        }
+        return film;
     }
 
 }
@@ -0,0 +1,136 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.datasource.ReadRouting;
+import ru.yandex.practicum.filmorate.datasource.ReplicaDataSources;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+@Slf4j
+@Component
+public class LikeCounter {
+
+    private static final String FLUSH_LIKES = "UPDATE films SET likes_count = likes_count + ?, version = version + ? " +
+            "WHERE film_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ReplicaDataSources replicas;
+    private final ConcurrentMap<Long, Pending> counters = new ConcurrentHashMap<>();
+    private final ReadWriteLock flushLock = new ReentrantReadWriteLock();
+    private volatile long flushedAt;
+
+    public LikeCounter(JdbcTemplate jdbcTemplate, ReplicaDataSources replicas) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.replicas = replicas;
+    }
+
+    public void increment(long filmId) {
+        add(filmId, 1, 1);
+    }
+
+    public void decrement(long filmId) {
+        add(filmId, -1, 1);
+    }
+
+    // Under the map's lock of the film, so a flush that takes its entry away gets both counts of a like or neither
+    private void add(long filmId, long likes, long operations) {
+        counters.compute(filmId, (id, pending) -> (pending == null ? new Pending() : pending).add(likes, operations));
+    }
+
+    public long unflushed(long filmId) {
+        Pending pending = counters.get(filmId);
+        return pending == null ? 0 : pending.likes.sum();
+    }
+
+    // Every like or unlike bumps films.version on flush, a like and an unlike still make two versions
+    public long unflushedOperations(long filmId) {
+        Pending pending = counters.get(filmId);
+        return pending == null ? 0 : pending.operations.sum();
+    }
+
+    /*
+     * Reads of likes_count combined with unflushed() must not interleave with a flush, or a like is counted twice.
+     * A replica may not have the last flush yet while its delta is already gone from here, so until the flush has
+     * reached the replicas these reads go to the primary, or counts would go backwards.
+     */
+    public <T> T consistentRead(Supplier<T> read) {
+        flushLock.readLock().lock();
+        try {
+            if (!replicas.mayMiss(flushedAt)) {
+                return read.get();
+            }
+            try (ReadRouting.Scope scope = ReadRouting.primary()) {
+                return read.get();
+            }
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    public void forget(long filmId) {
+        counters.remove(filmId);
+    }
+
+    @Scheduled(fixedDelayString = "${filmorate.likes.flush-interval-ms:1000}")
+    public void flush() {
+        flushLock.writeLock().lock();
+        try {
+            List<Object[]> batch = new ArrayList<>();
+            // Entries are taken out, so films that are no longer liked don't keep one, and later likes start a new one
+            for (Long filmId : counters.keySet()) {
+                Pending pending = counters.remove(filmId);
+                if (pending == null) {
+                    continue;
+                }
+                long delta = pending.likes.sum();
+                long operations = pending.operations.sum();
+                if (delta != 0 || operations != 0) {
+                    batch.add(new Object[]{delta, operations, filmId});
+                }
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                jdbcTemplate.batchUpdate(FLUSH_LIKES, batch);
+                flushedAt = System.currentTimeMillis();
+            } catch (DataAccessException e) {
+                log.error("Failed to flush likes of {} films, will retry. Message: {}", batch.size(), e.getMessage());
+                for (Object[] args : batch) {
+                    add((long) args[2], (long) args[0], (long) args[1]);
+                }
+            }
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+    }
+
+    @PreDestroy
+    public void drain() {
+        flush();
+    }
+
+    private static class Pending {
+
+        private final LongAdder likes = new LongAdder();
+        private final LongAdder operations = new LongAdder();
+
+        private Pending add(long likesDelta, long operationsDelta) {
+            likes.add(likesDelta);
+            operations.add(operationsDelta);
+            return this;
+        }
+    }
+}
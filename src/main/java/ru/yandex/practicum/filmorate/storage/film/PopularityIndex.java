@@ -0,0 +1,113 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+public class PopularityIndex {
+
+    private static final Comparator<Entry> MOST_LIKED_FIRST = Comparator.<Entry>comparingLong(entry -> -entry.likes)
+            .thenComparingLong(entry -> entry.filmId);
+    // Below one film in this many a sort of the candidates beats walking the whole ranking
+    private static final int SORT_SHARE = 8;
+
+    private final ConcurrentSkipListSet<Entry> ranking = new ConcurrentSkipListSet<>(MOST_LIKED_FIRST);
+    private final ConcurrentMap<Long, Entry> entries = new ConcurrentHashMap<>();
+
+    public void put(long filmId, long likes) {
+        entries.compute(filmId, (id, old) -> replace(old, new Entry(id, likes)));
+    }
+
+    public void add(long filmId, long delta) {
+        entries.computeIfPresent(filmId, (id, old) -> replace(old, new Entry(id, old.likes + delta)));
+    }
+
+    public void remove(long filmId) {
+        entries.computeIfPresent(filmId, (id, old) -> {
+            ranking.remove(old);
+            return null;
+        });
+    }
+
+    public long likes(long filmId) {
+        Entry entry = entries.get(filmId);
+        return entry == null ? 0 : entry.likes;
+    }
+
+    public long[] top(long count) {
+        int size = (int) Math.min(count, entries.size());
+        long[] filmIds = new long[Math.max(size, 0)];
+        int found = 0;
+        Set<Long> taken = new HashSet<>();
+        Iterator<Entry> iterator = ranking.iterator();
+        while (found < filmIds.length && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (take(entry, taken)) {
+                filmIds[found++] = entry.filmId;
+            }
+        }
+        return found == filmIds.length ? filmIds : Arrays.copyOf(filmIds, found);
+    }
+
+    // Most liked of the given sorted film ids: a walk down the ranking when they are a large share of it, a sort
+    // of just them otherwise
+    public long[] top(long count, long[] filmIds) {
+        if ((long) filmIds.length * SORT_SHARE < entries.size()) {
+            Entry[] candidates = Arrays.stream(filmIds).mapToObj(entries::get).filter(Objects::nonNull)
+                    .sorted(MOST_LIKED_FIRST).limit(Math.max(count, 0)).toArray(Entry[]::new);
+            return Arrays.stream(candidates).mapToLong(entry -> entry.filmId).toArray();
+        }
+        int size = (int) Math.min(count, filmIds.length);
+        long[] found = new long[Math.max(size, 0)];
+        int foundCount = 0;
+        Set<Long> taken = new HashSet<>();
+        Iterator<Entry> iterator = ranking.iterator();
+        while (foundCount < found.length && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (Arrays.binarySearch(filmIds, entry.filmId) >= 0 && take(entry, taken)) {
+                found[foundCount++] = entry.filmId;
+            }
+        }
+        return foundCount == found.length ? found : Arrays.copyOf(found, foundCount);
+    }
+
+    /*
+     * Each film is taken once, from the entry the map points at. While its likes go down the old entry can be taken
+     * before the map moves on and the new one, lower down, after it. The walk is not a snapshot though: a film moving
+     * up is missed by a read that passes its new place before the map points there, or is between the new and the
+     * old places when the old entry goes; the next read finds it.
+     */
+    private boolean take(Entry entry, Set<Long> taken) {
+        return entries.get(entry.filmId) == entry && taken.add(entry.filmId);
+    }
+
+    // The new entry is ranked before the old one is dropped, so a film is always in the ranking at least once
+    private Entry replace(Entry old, Entry entry) {
+        // An equal entry would not be added, and removing the old one would drop the film from the ranking
+        if (old != null && old.likes == entry.likes) {
+            return old;
+        }
+        ranking.add(entry);
+        if (old != null) {
+            ranking.remove(old);
+        }
+        return entry;
+    }
+
+    private static class Entry {
+
+        private final long filmId;
+        private final long likes;
+
+        private Entry(long filmId, long likes) {
+            this.filmId = filmId;
+            this.likes = likes;
+        }
+    }
+}
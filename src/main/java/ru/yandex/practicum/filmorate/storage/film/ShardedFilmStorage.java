@@ -0,0 +1,204 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmDocument;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.storage.shard.Shards;
+import ru.yandex.practicum.filmorate.util.SortedIds;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/*
+ * Films stay in the main database, their likes are stored with the user who gave them. likes_count and the
+ * popularity index are still fed by every like, so popular films need no trip to the shards.
+ */
+@Component
+public class ShardedFilmStorage implements FilmStorage, FilmDocumentStorage {
+
+    private static final String ADD_LIKE = "INSERT INTO likes(user_id, film_id) VALUES (?, ?)";
+    private static final String DELETE_LIKE = "DELETE FROM likes WHERE user_id = ? AND film_id = ?";
+    private static final String DELETE_FILM_LIKES = "DELETE FROM likes WHERE film_id = ?";
+    private static final String GET_USER_FILM_IDS = "SELECT film_id FROM likes WHERE user_id = ? ORDER BY film_id";
+
+    private final FilmDbStorage filmDbStorage;
+    private final Shards shards;
+
+    public ShardedFilmStorage(FilmDbStorage filmDbStorage, Shards shards) {
+        this.filmDbStorage = filmDbStorage;
+        this.shards = shards;
+    }
+
+    @Override
+    public Film create(Film film) {
+        return filmDbStorage.create(film);
+    }
+
+    @Override
+    public Optional<Film> update(Film film) {
+        return filmDbStorage.update(film);
+    }
+
+    @Override
+    public List<Film> findAll() {
+        return filmDbStorage.findAll();
+    }
+
+    @Override
+    public List<Film> findAll(long afterId, int limit) {
+        return filmDbStorage.findAll(afterId, limit);
+    }
+
+    @Override
+    public void forEach(Consumer<? super Film> action) {
+        filmDbStorage.forEach(action);
+    }
+
+    @Override
+    public Optional<Film> findById(long id) {
+        return filmDbStorage.findById(id);
+    }
+
+    @Override
+    public Optional<FilmDocument> findDocument(long id) {
+        return filmDbStorage.findDocument(id);
+    }
+
+    @Override
+    public List<FilmDocument> findDocuments(long[] ids) {
+        return filmDbStorage.findDocuments(ids);
+    }
+
+    @Override
+    public void forEachDocument(Consumer<? super FilmDocument> action) {
+        filmDbStorage.forEachDocument(action);
+    }
+
+    @Override
+    public boolean deleteById(long id) {
+        boolean isDeleted = filmDbStorage.deleteById(id);
+        if (isDeleted) {
+            shards.gather(shard -> shard.getJdbcTemplate().update(DELETE_FILM_LIKES, id));
+        }
+        return isDeleted;
+    }
+
+    @Override
+    public boolean removeLikeFromFilm(long id, long userId) {
+        boolean isRemoved = shards.forUser(userId).getJdbcTemplate().update(DELETE_LIKE, userId, id) > 0;
+        if (isRemoved) {
+            filmDbStorage.countLike(id, false);
+        }
+        return isRemoved;
+    }
+
+    @Override
+    public boolean addLikeToFilm(long id, long userId) {
+        boolean isAdded = shards.forUser(userId).getJdbcTemplate().update(ADD_LIKE, userId, id) > 0;
+        if (isAdded) {
+            filmDbStorage.countLike(id, true);
+        }
+        return isAdded;
+    }
+
+    @Override
+    public List<Film> getUserFilms(long userId) {
+        List<Film> userFilms = filmDbStorage.findAllByIds(getUserFilmIds(userId));
+        userFilms.sort(Comparator.comparingLong(Film::getLikes_count).reversed());
+        return userFilms;
+    }
+
+    @Override
+    public List<Film> getUserFilms(long userId, long afterId, int limit) {
+        return filmDbStorage.findAllByIds(SortedIds.page(getUserFilmIds(userId), afterId, limit));
+    }
+
+    @Override
+    public List<Film> findPopular(long count) {
+        return filmDbStorage.findPopular(count);
+    }
+
+    @Override
+    public long[] findPopularIds(long count) {
+        return filmDbStorage.findPopularIds(count);
+    }
+
+    @Override
+    public long[] findPopularIds(long count, long[] filmIds) {
+        return filmDbStorage.findPopularIds(count, filmIds);
+    }
+
+    @Override
+    public FacetIndex.Selection select(Set<Integer> genreIds, boolean isAllGenres, Set<Integer> ratingIds) {
+        return filmDbStorage.select(genreIds, isAllGenres, ratingIds);
+    }
+
+    @Override
+    public long[] search(String query, int count, boolean isBoostedByLikes) {
+        return filmDbStorage.search(query, count, isBoostedByLikes);
+    }
+
+    @Override
+    public Optional<Long> findVersion(long id) {
+        return filmDbStorage.findVersion(id);
+    }
+
+    @Override
+    public Map<Long, Long> findVersions(long[] ids) {
+        return filmDbStorage.findVersions(ids);
+    }
+
+    @Override
+    public long[] getUserFilmIds(long userId) {
+        SortedIds.LongArrayBuilder filmIds = new SortedIds.LongArrayBuilder();
+        shards.forUser(userId).getJdbcTemplate().query(GET_USER_FILM_IDS, resultSet -> {
+            filmIds.add(resultSet.getLong("film_id"));
+        }, userId);
+        return filmIds.build();
+    }
+
+    @Override
+    public List<Film> findAllByIds(long[] ids) {
+        return filmDbStorage.findAllByIds(ids);
+    }
+
+    @Override
+    public void createAll(List<Film> films) {
+        filmDbStorage.createAll(films);
+    }
+
+    // Likes are counted once every shard has committed, a failed shard takes the likes of the others back
+    @Override
+    public void addLikes(List<Like> likes) {
+        List<List<Like>> likesByShard = new ArrayList<>();
+        shards.all().forEach(shard -> likesByShard.add(new ArrayList<>()));
+        likes.forEach(like -> likesByShard.get(shards.indexOf(like.getUserId())).add(like));
+        List<Integer> written = new ArrayList<>();
+        try {
+            for (int i = 0; i < likesByShard.size(); i++) {
+                List<Like> shardLikes = likesByShard.get(i);
+                if (shardLikes.isEmpty()) {
+                    continue;
+                }
+                shards.all().get(i).inTransaction(jdbc -> jdbc.batchUpdate(ADD_LIKE, shardLikes, shardLikes.size(),
+                        (stmt, like) -> {
+                            stmt.setLong(1, like.getUserId());
+                            stmt.setLong(2, like.getFilmId());
+                        }));
+                written.add(i);
+            }
+        } catch (RuntimeException e) {
+            for (int i : written) {
+                List<Like> shardLikes = likesByShard.get(i);
+                shards.all().get(i).getJdbcTemplate().batchUpdate(DELETE_LIKE, shardLikes, shardLikes.size(),
+                        (stmt, like) -> {
+                            stmt.setLong(1, like.getUserId());
+                            stmt.setLong(2, like.getFilmId());
+                        });
+            }
+            throw e;
+        }
+        likes.forEach(like -> filmDbStorage.countLike(like.getFilmId(), true));
+    }
+}
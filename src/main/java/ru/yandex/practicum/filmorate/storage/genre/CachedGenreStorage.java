@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.storage.genre;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.CachedStorage;
+
+@Component
+public class CachedGenreStorage extends CachedStorage<Genre> implements GenreStorage {
+
+    public CachedGenreStorage(@Qualifier("genreDbStorage") GenreStorage storage) {
+        super(storage, Genre::getId);
+    }
+}
@@ -21,6 +21,7 @@ public class GenreDbStorage implements GenreStorage {
     private static final String UPDATE_GENRE = "UPDATE genres SET name = ? WHERE genre_id = ?";
     private static final String FIND_GENRE = "SELECT * FROM genres where genre_id = ?";
     private static final String FIND_ALL_GENRES = "SELECT * FROM genres ORDER BY genre_id";
+    private static final String FIND_GENRES_PAGE = "SELECT * FROM genres WHERE genre_id > ? ORDER BY genre_id LIMIT ?";
     private static final String DELETE_GENRE = "DELETE FROM genres where genre_id = ?";
 
     public GenreDbStorage(JdbcTemplate jdbcTemplate) {
@@ -50,6 +51,11 @@ public class GenreDbStorage implements GenreStorage {
         return jdbcTemplate.query(FIND_ALL_GENRES, this::mapRowToGenre);
     }
 
+    @Override
+    public List<Genre> findAll(long afterId, int limit) {
+        return jdbcTemplate.query(FIND_GENRES_PAGE, this::mapRowToGenre, afterId, limit);
+    }
+
     @Override
     public Optional<Genre> findById(long id) {
         try {
@@ -5,39 +5,41 @@ import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.model.Genre;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 @Component
 public class InMemoryGenreStorage implements GenreStorage {
 
     @Getter
-    private final Map<Integer, Genre> genres;
-    private static int genreId;
+    private final NavigableMap<Integer, Genre> genres;
+    private final AtomicInteger genreId = new AtomicInteger();
 
     public InMemoryGenreStorage() {
-        genres = new HashMap<>();
-        genres.put(generateId(), Genre.builder().id(genreId).name("Комедия").build());
-        genres.put(generateId(), Genre.builder().id(genreId).name("Драма").build());
-        genres.put(generateId(), Genre.builder().id(genreId).name("Мультфильм").build());
-        genres.put(generateId(), Genre.builder().id(genreId).name("Триллер").build());
-        genres.put(generateId(), Genre.builder().id(genreId).name("Документальный").build());
-        genres.put(generateId(), Genre.builder().id(genreId).name("Боевик").build());
+        genres = new ConcurrentSkipListMap<>();
+        genres.put(generateId(), Genre.builder().id(genreId.get()).name("Комедия").build());
+        genres.put(generateId(), Genre.builder().id(genreId.get()).name("Драма").build());
+        genres.put(generateId(), Genre.builder().id(genreId.get()).name("Мультфильм").build());
+        genres.put(generateId(), Genre.builder().id(genreId.get()).name("Триллер").build());
+        genres.put(generateId(), Genre.builder().id(genreId.get()).name("Документальный").build());
+        genres.put(generateId(), Genre.builder().id(genreId.get()).name("Боевик").build());
     }
 
     private int generateId() {
-        return ++genreId;
+        return genreId.incrementAndGet();
     }
 
     @Override
     public Genre create(Genre genre) {
         genre.setId(generateId());
-        genres.put(genreId, genre);
+        genres.put(genre.getId(), genre);
         return genre;
     }
 
     @Override
     public Optional<Genre> update(Genre genre) {
-        if (genres.containsKey(genre.getId())) {
-            genres.put(genre.getId(), genre);
+        if (genres.replace(genre.getId(), genre) != null) {
             return Optional.of(genre);
         }
         return Optional.empty();
@@ -48,13 +50,26 @@ public class InMemoryGenreStorage implements GenreStorage {
         return new ArrayList<>(genres.values());
     }
 
+    @Override
+    public List<Genre> findAll(long afterId, int limit) {
+        if (afterId >= Integer.MAX_VALUE) {
+            return new ArrayList<>();
+        }
+        return genres.tailMap((int) afterId, false).values().stream()
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
     @Override
     public Optional<Genre> findById(long id) {
-        return Optional.ofNullable(genres.get(id));
+        if (id > Integer.MAX_VALUE) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(genres.get((int) id));
     }
 
     @Override
     public boolean deleteById(long id) {
-        return genres.remove(id) != null;
+        return id <= Integer.MAX_VALUE && genres.remove((int) id) != null;
     }
 }
@@ -0,0 +1,388 @@
+package ru.yandex.practicum.filmorate.storage.journal;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/*
+ * Append-only log of storage mutations. Records are framed as [length][crc32][payload] and written by one thread
+ * that takes everything queued since its last write, writes it with a single gather call and forces it, so
+ * concurrent writers share one fsync. Every start writes a new segment, a torn tail can only end an old one.
+ * A checkpoint switches to a new segment, dumps the state into <name>.snapshot in the same record format and
+ * deletes the segments the snapshot covers. Records must be idempotent: the dump runs while writes go on, so
+ * the segment replayed after it may repeat changes the snapshot already holds.
+ */
+@Slf4j
+public final class Journal implements Closeable {
+
+    private static final Journal DISABLED = new Journal();
+    private static final int FRAME_HEADER = 8;
+    private static final long MAP_WINDOW = 1L << 30;
+
+    private final Path dir;
+    private final String name;
+    private final Pattern segmentName;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition queued = lock.newCondition();
+    private final Condition written = lock.newCondition();
+    private final Object checkpointLock = new Object();
+    private final Thread writer;
+    private List<ByteBuffer> pending = new ArrayList<>();
+    private long appended;
+    private long durable;
+    private long segment;
+    private boolean rotateRequested;
+    private boolean closed;
+    private IOException failure;
+    private FileChannel channel;
+
+    private Journal() {
+        dir = null;
+        name = null;
+        segmentName = null;
+        writer = null;
+    }
+
+    private Journal(Path dir, String name, long segment) throws IOException {
+        this.dir = dir;
+        this.name = name;
+        this.segmentName = segmentPattern(name);
+        this.segment = segment;
+        channel = openSegment(segment);
+        writer = new Thread(this::writeLoop, "journal-" + name);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Storages hold this one when journaling is off, appends and syncs do nothing
+    public static Journal disabled() {
+        return DISABLED;
+    }
+
+    // Replays the snapshot and the segments after it into the storage, then starts a fresh segment
+    public static Journal open(Path dir, String name, Consumer<ByteBuffer> replay) throws IOException {
+        Files.createDirectories(dir);
+        long firstSegment = 1;
+        Path snapshot = dir.resolve(name + ".snapshot");
+        if (Files.exists(snapshot)) {
+            // The first record of a snapshot is the number of the segment replayed after it
+            long[] header = {0};
+            readFrames(snapshot, record -> {
+                if (header[0] == 0) {
+                    header[0] = record.getLong();
+                } else {
+                    replay.accept(record);
+                }
+            });
+            firstSegment = Math.max(header[0], 1);
+        }
+        long lastSegment = firstSegment - 1;
+        for (Map.Entry<Long, Path> entry : listSegments(dir, segmentPattern(name)).entrySet()) {
+            if (entry.getKey() >= firstSegment) {
+                readFrames(entry.getValue(), replay);
+                lastSegment = entry.getKey();
+            }
+        }
+        return new Journal(dir, name, lastSegment + 1);
+    }
+
+    public boolean isEnabled() {
+        return writer != null;
+    }
+
+    // Queues a record, the supplier is not called when journaling is off
+    public void append(Supplier<byte[]> record) {
+        if (!isEnabled()) {
+            return;
+        }
+        byte[] payload = record.get();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER + payload.length);
+        frame.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        lock.lock();
+        try {
+            checkOpen();
+            pending.add(frame);
+            appended++;
+            queued.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Blocks until every record appended before the call is on disk
+    public void sync() {
+        if (!isEnabled()) {
+            return;
+        }
+        lock.lock();
+        try {
+            long target = appended;
+            while (durable < target && failure == null) {
+                written.awaitUninterruptibly();
+            }
+            if (durable < target) {
+                throw new UncheckedIOException("Journal " + name + " failed", failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Writes a snapshot of the state and drops the segments it replaces
+    public void checkpoint(SnapshotWriter state) throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+        synchronized (checkpointLock) {
+            long firstSegment = rotate();
+            Path snapshot = dir.resolve(name + ".snapshot");
+            Path tmp = dir.resolve(name + ".snapshot.tmp");
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                DataOutputStream stream = new DataOutputStream(
+                        new BufferedOutputStream(Channels.newOutputStream(out), 1 << 16));
+                Sink sink = payload -> writeFrame(stream, payload);
+                sink.add(JournalRecord.builder().putLong(firstSegment).build());
+                state.write(sink);
+                stream.flush();
+                out.force(true);
+            }
+            Files.move(tmp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            forceDirectory();
+            for (Map.Entry<Long, Path> entry : listSegments(dir, segmentName).entrySet()) {
+                if (entry.getKey() < firstSegment) {
+                    Files.deleteIfExists(entry.getValue());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!isEnabled()) {
+            return;
+        }
+        lock.lock();
+        try {
+            closed = true;
+            queued.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Ends the current segment after the records queued so far, returns the number of the next one
+    private long rotate() {
+        lock.lock();
+        try {
+            checkOpen();
+            long next = segment + 1;
+            rotateRequested = true;
+            queued.signal();
+            while (segment < next && failure == null) {
+                written.awaitUninterruptibly();
+            }
+            checkOpen();
+            return next;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            List<ByteBuffer> batch;
+            long batchEnd;
+            boolean rotate;
+            boolean stop;
+            lock.lock();
+            try {
+                while (pending.isEmpty() && !rotateRequested && !closed) {
+                    queued.awaitUninterruptibly();
+                }
+                batch = pending;
+                pending = new ArrayList<>();
+                batchEnd = appended;
+                rotate = rotateRequested;
+                stop = closed;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                if (!batch.isEmpty()) {
+                    ByteBuffer[] buffers = batch.toArray(new ByteBuffer[0]);
+                    long remaining = batch.stream().mapToLong(ByteBuffer::remaining).sum();
+                    while (remaining > 0) {
+                        remaining -= channel.write(buffers);
+                    }
+                    channel.force(false);
+                }
+                if (rotate) {
+                    channel.close();
+                    channel = openSegment(segment + 1);
+                }
+            } catch (IOException e) {
+                log.error("Journal {} stopped, writes will fail. Message: {}", name, e.getMessage());
+                finish(e);
+                return;
+            }
+            lock.lock();
+            try {
+                durable = batchEnd;
+                if (rotate) {
+                    segment++;
+                    rotateRequested = false;
+                }
+                written.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (stop && batch.isEmpty()) {
+                finish(null);
+                return;
+            }
+        }
+    }
+
+    private void finish(IOException e) {
+        try {
+            channel.close();
+        } catch (IOException closeFailure) {
+            log.warn("Journal {} was not closed cleanly. Message: {}", name, closeFailure.getMessage());
+        }
+        lock.lock();
+        try {
+            failure = e != null ? e : new IOException("Journal " + name + " is closed");
+            closed = true;
+            written.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkOpen() {
+        if (failure != null || closed) {
+            throw new UncheckedIOException("Journal " + name + " is not writable",
+                    failure != null ? failure : new IOException("closed"));
+        }
+    }
+
+    private FileChannel openSegment(long number) throws IOException {
+        Path path = dir.resolve(String.format("%s-%010d.journal", name, number));
+        FileChannel opened = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        forceDirectory();
+        return opened;
+    }
+
+    // Makes created, renamed and deleted files survive a crash, not every platform can open a directory
+    private void forceDirectory() {
+        try (FileChannel directory = FileChannel.open(dir, StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException e) {
+            log.debug("Directory {} was not forced. Message: {}", dir, e.getMessage());
+        }
+    }
+
+    private static void writeFrame(DataOutputStream stream, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        stream.writeInt(payload.length);
+        stream.writeInt((int) crc.getValue());
+        stream.write(payload);
+    }
+
+    // Memory-maps the file a window at a time, replay stops at the first torn or corrupt frame
+    private static void readFrames(Path path, Consumer<ByteBuffer> handler) throws IOException {
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                long windowSize = Math.min(size - position, MAP_WINDOW);
+                MappedByteBuffer window = in.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+                int consumed = 0;
+                while (window.limit() - consumed >= FRAME_HEADER) {
+                    int length = window.getInt(consumed);
+                    int checksum = window.getInt(consumed + 4);
+                    if (length < 0 || length > window.limit() - consumed - FRAME_HEADER) {
+                        break;
+                    }
+                    ByteBuffer payload = window.duplicate();
+                    payload.position(consumed + FRAME_HEADER).limit(consumed + FRAME_HEADER + length);
+                    payload = payload.slice();
+                    CRC32 crc = new CRC32();
+                    crc.update(payload.duplicate());
+                    if ((int) crc.getValue() != checksum) {
+                        log.warn("Journal file {} has a corrupt record at {}", path, position + consumed);
+                        return;
+                    }
+                    handler.accept(payload);
+                    consumed += FRAME_HEADER + length;
+                }
+                // A frame crossing the window is mapped again from its start, anything else left over is torn
+                if (consumed < window.limit() && (consumed == 0 || position + windowSize == size)) {
+                    log.warn("Journal file {} ends with a torn record at {}", path, position + consumed);
+                    return;
+                }
+                position += consumed;
+            }
+        }
+    }
+
+    private static Pattern segmentPattern(String name) {
+        return Pattern.compile(Pattern.quote(name) + "-(\\d+)\\.journal");
+    }
+
+    private static TreeMap<Long, Path> listSegments(Path dir, Pattern segmentName) throws IOException {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(file -> {
+                Matcher matcher = segmentName.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    segments.put(Long.parseLong(matcher.group(1)), file);
+                }
+            });
+        }
+        return segments;
+    }
+
+    public interface Sink {
+
+        void add(byte[] record) throws IOException;
+    }
+
+    public interface SnapshotWriter {
+
+        void write(Sink sink) throws IOException;
+    }
+}
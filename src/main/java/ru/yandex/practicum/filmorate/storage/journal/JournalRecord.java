@@ -0,0 +1,107 @@
+package ru.yandex.practicum.filmorate.storage.journal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+// Encodes the payload of a journal record and reads its fields back in the same order
+public final class JournalRecord {
+
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+    private final DataOutputStream out = new DataOutputStream(bytes);
+
+    private JournalRecord() {
+    }
+
+    public static JournalRecord builder() {
+        return new JournalRecord();
+    }
+
+    public static JournalRecord of(byte type) {
+        return builder().putByte(type);
+    }
+
+    public JournalRecord putByte(byte value) {
+        return write(() -> out.writeByte(value));
+    }
+
+    public JournalRecord putInt(int value) {
+        return write(() -> out.writeInt(value));
+    }
+
+    public JournalRecord putLong(long value) {
+        return write(() -> out.writeLong(value));
+    }
+
+    public JournalRecord putString(String value) {
+        return write(() -> {
+            if (value == null) {
+                out.writeInt(-1);
+                return;
+            }
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(encoded.length);
+            out.write(encoded);
+        });
+    }
+
+    public JournalRecord putDate(LocalDate value) {
+        return putLong(value == null ? NO_DATE : value.toEpochDay());
+    }
+
+    public JournalRecord putLongs(long[] values) {
+        return write(() -> {
+            out.writeInt(values.length);
+            for (long value : values) {
+                out.writeLong(value);
+            }
+        });
+    }
+
+    public byte[] build() {
+        return bytes.toByteArray();
+    }
+
+    public static String getString(ByteBuffer record) {
+        int length = record.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] encoded = new byte[length];
+        record.get(encoded);
+        return new String(encoded, StandardCharsets.UTF_8);
+    }
+
+    public static LocalDate getDate(ByteBuffer record) {
+        long epochDay = record.getLong();
+        return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    public static long[] getLongs(ByteBuffer record) {
+        long[] values = new long[record.getInt()];
+        record.asLongBuffer().get(values);
+        record.position(record.position() + values.length * Long.BYTES);
+        return values;
+    }
+
+    private JournalRecord write(Field field) {
+        try {
+            field.write();
+        } catch (IOException e) {
+            // A ByteArrayOutputStream never throws
+            throw new UncheckedIOException(e);
+        }
+        return this;
+    }
+
+    private interface Field {
+
+        void write() throws IOException;
+    }
+}
@@ -0,0 +1,19 @@
+package ru.yandex.practicum.filmorate.storage.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// An in-memory storage that logs its changes to a journal and rebuilds itself from one on start
+public interface JournaledStorage {
+
+    String journalName();
+
+    // Called for the snapshot records first and then for the journal ones, in the order they were written
+    void replay(ByteBuffer record);
+
+    void finishReplay();
+
+    void writeSnapshot(Journal.Sink sink) throws IOException;
+
+    void attach(Journal journal);
+}
@@ -0,0 +1,67 @@
+package ru.yandex.practicum.filmorate.storage.journal;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Journals of the in-memory storages, kept in filmorate.journal.dir when filmorate.storage.type=memory. Each
+ * storage is restored from its snapshot and journal on start, checkpointed every
+ * filmorate.journal.snapshot-interval-ms and once more on shutdown.
+ */
+@Slf4j
+@Component
+public class Journals {
+
+    private final Map<JournaledStorage, Journal> journals = new LinkedHashMap<>();
+
+    public Journals(@Value("${filmorate.storage.type:db}") String type,
+                    @Value("${filmorate.journal.dir:}") String dir,
+                    List<JournaledStorage> storages) throws IOException {
+        if (!type.equalsIgnoreCase("memory") || dir.isBlank()) {
+            return;
+        }
+        // The storage beans of StorageConfig are the same instances, each one is opened once
+        Set<JournaledStorage> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+        distinct.addAll(storages);
+        for (JournaledStorage storage : distinct) {
+            long start = System.nanoTime();
+            Journal journal = Journal.open(Path.of(dir.trim()), storage.journalName(), storage::replay);
+            storage.finishReplay();
+            storage.attach(journal);
+            journals.put(storage, journal);
+            log.info("Restored {} from {} in {} ms", storage.journalName(), dir,
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    @Scheduled(initialDelayString = "${filmorate.journal.snapshot-interval-ms:60000}",
+            fixedDelayString = "${filmorate.journal.snapshot-interval-ms:60000}")
+    public void checkpoint() {
+        journals.forEach((storage, journal) -> {
+            try {
+                journal.checkpoint(storage::writeSnapshot);
+            } catch (IOException e) {
+                log.error("Snapshot of {} failed, its journal is kept. Message: {}", storage.journalName(),
+                        e.getMessage());
+            }
+        });
+    }
+
+    @PreDestroy
+    public void close() {
+        checkpoint();
+        journals.values().forEach(Journal::close);
+    }
+}
@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.storage.mpa;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.storage.CachedStorage;
+
+@Component
+public class CachedMPAStorage extends CachedStorage<MPA> implements MPAStorage {
+
+    public CachedMPAStorage(@Qualifier("MPADbStorage") MPAStorage storage) {
+        super(storage, MPA::getId);
+    }
+}
@@ -5,39 +5,41 @@ import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.model.MPA;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 @Component
 public class InMemoryMPAStorage implements MPAStorage {
 
     @Getter
-    private final Map<Integer, MPA> ratings;
-    private static int mpaId;
+    private final NavigableMap<Integer, MPA> ratings;
+    private final AtomicInteger mpaId = new AtomicInteger();
 
     public InMemoryMPAStorage() {
-        ratings = new HashMap<>();
-        ratings.put(generateId(), MPA.builder().id(mpaId).name("G").build());
-        ratings.put(generateId(), MPA.builder().id(mpaId).name("PG").build());
-        ratings.put(generateId(), MPA.builder().id(mpaId).name("PG-13").build());
-        ratings.put(generateId(), MPA.builder().id(mpaId).name("R").build());
-        ratings.put(generateId(), MPA.builder().id(mpaId).name("NC-17").build());
+        ratings = new ConcurrentSkipListMap<>();
+        ratings.put(generateId(), MPA.builder().id(mpaId.get()).name("G").build());
+        ratings.put(generateId(), MPA.builder().id(mpaId.get()).name("PG").build());
+        ratings.put(generateId(), MPA.builder().id(mpaId.get()).name("PG-13").build());
+        ratings.put(generateId(), MPA.builder().id(mpaId.get()).name("R").build());
+        ratings.put(generateId(), MPA.builder().id(mpaId.get()).name("NC-17").build());
     }
 
     private int generateId() {
-        return ++mpaId;
+        return mpaId.incrementAndGet();
     }
 
 
     @Override
     public MPA create(MPA mpa) {
         mpa.setId(generateId());
-        ratings.put(mpaId, mpa);
+        ratings.put(mpa.getId(), mpa);
         return mpa;
     }
 
     @Override
     public Optional<MPA> update(MPA mpa) {
-        if (ratings.containsKey(mpa.getId())) {
-            ratings.put(mpa.getId(), mpa);
+        if (ratings.replace(mpa.getId(), mpa) != null) {
             return Optional.of(mpa);
         }
         return Optional.empty();
@@ -48,13 +50,26 @@ public class InMemoryMPAStorage implements MPAStorage {
         return new ArrayList<>(ratings.values());
     }
 
+    @Override
+    public List<MPA> findAll(long afterId, int limit) {
+        if (afterId >= Integer.MAX_VALUE) {
+            return new ArrayList<>();
+        }
+        return ratings.tailMap((int) afterId, false).values().stream()
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
     @Override
     public Optional<MPA> findById(long id) {
-        return Optional.ofNullable(ratings.get(id));
+        if (id > Integer.MAX_VALUE) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(ratings.get((int) id));
     }
 
     @Override
     public boolean deleteById(long id) {
-        return ratings.remove(id) != null;
+        return id <= Integer.MAX_VALUE && ratings.remove((int) id) != null;
     }
 }
@@ -21,6 +21,7 @@ public class MPADbStorage implements MPAStorage {
     private static final String UPDATE_MPA = "UPDATE ratings SET name = ? WHERE rating_id = ?";
     private static final String FIND_MPA = "SELECT * FROM ratings WHERE rating_id = ?";
     private static final String FIND_ALL_MPA = "SELECT * FROM ratings ORDER BY rating_id";
+    private static final String FIND_MPA_PAGE = "SELECT * FROM ratings WHERE rating_id > ? ORDER BY rating_id LIMIT ?";
     private static final String DELETE_MPA = "DELETE FROM ratings WHERE rating_id = ?";
 
     public MPADbStorage(JdbcTemplate jdbcTemplate) {
@@ -50,6 +51,11 @@ public class MPADbStorage implements MPAStorage {
         return jdbcTemplate.query(FIND_ALL_MPA, this::mapRowToMPA);
     }
 
+    @Override
+    public List<MPA> findAll(long afterId, int limit) {
+        return jdbcTemplate.query(FIND_MPA_PAGE, this::mapRowToMPA, afterId, limit);
+    }
+
     @Override
     public Optional<MPA> findById(long id) {
         try {
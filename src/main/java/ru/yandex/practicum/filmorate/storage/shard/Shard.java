@@ -0,0 +1,74 @@
+package ru.yandex.practicum.filmorate.storage.shard;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.metrics.InstrumentedDataSource;
+
+import javax.sql.DataSource;
+import java.util.function.Consumer;
+
+// One database of the sharded storages. Transactions are local to it, nothing spans shards
+public class Shard implements AutoCloseable {
+
+    private static final String SCHEMA = "shard-schema.sql";
+    private static final long CONNECTION_TIMEOUT_MS = 5000;
+
+    private final String url;
+    private final HikariDataSource pool;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    private Shard(String url, HikariDataSource pool) {
+        this.url = url;
+        this.pool = pool;
+        DataSource dataSource = new InstrumentedDataSource(pool);
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    public static Shard open(String name, String url, String username, String password, int poolSize) {
+        HikariDataSource pool = new HikariDataSource();
+        pool.setPoolName(name);
+        pool.setJdbcUrl(url);
+        pool.setUsername(username);
+        pool.setPassword(password);
+        pool.setMaximumPoolSize(poolSize);
+        pool.setConnectionTimeout(CONNECTION_TIMEOUT_MS);
+        return new Shard(url, pool);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public JdbcTemplate getJdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    public void inTransaction(Consumer<JdbcTemplate> work) {
+        transactionTemplate.executeWithoutResult(status -> work.accept(jdbcTemplate));
+    }
+
+    // Creates the missing tables, existing ones and their rows are kept
+    public void createSchema() {
+        new ResourceDatabasePopulator(new ClassPathResource(SCHEMA)).execute(jdbcTemplate.getDataSource());
+    }
+
+    public boolean isSameDatabase(Shard other) {
+        return url.equals(other.url);
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+
+    @Override
+    public String toString() {
+        return pool.getPoolName();
+    }
+}
@@ -0,0 +1,124 @@
+package ru.yandex.practicum.filmorate.storage.shard;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.WebApplicationContext;
+import ru.yandex.practicum.filmorate.storage.user.ShardedUserStorage;
+
+import java.util.*;
+
+/*
+ * Moves users, with their friends and likes, to the shard their id hashes to among the target shards. Meant to
+ * run with the service stopped, after changing filmorate.sharding.shards:
+ *   java -jar filmorate.jar --spring.main.web-application-type=none --spring.sql.init.mode=never
+ *       --filmorate.storage.type=sharded --filmorate.sharding.shards=<new list>
+ *       --filmorate.sharding.retired-shards=<dropped shards> --filmorate.sharding.rebalance=true
+ * Rows are copied with MERGE before they are deleted from the source, so an interrupted run can simply be repeated.
+ */
+@Slf4j
+@Component
+public class ShardRebalancer implements ApplicationRunner {
+
+    private static final int PAGE_SIZE = 1000;
+    private static final String FIND_USERS_PAGE = "SELECT * FROM users WHERE user_id > ? ORDER BY user_id LIMIT ?";
+    private static final String FIND_FRIENDS = "SELECT user_id, friend_id FROM friends WHERE user_id = ANY(?)";
+    private static final String FIND_LIKES = "SELECT user_id, film_id FROM likes WHERE user_id = ANY(?)";
+    private static final String COPY_USER = "MERGE INTO users(user_id, email, login, name, birthday, version) " +
+            "KEY (user_id) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String COPY_FRIEND = "MERGE INTO friends KEY (user_id, friend_id) VALUES (?, ?)";
+    private static final String COPY_LIKE = "MERGE INTO likes KEY (user_id, film_id) VALUES (?, ?)";
+    private static final String DELETE_USERS = "DELETE FROM users WHERE user_id = ANY(?)";
+
+    private final Shards shards;
+    private final ShardedUserStorage userStorage;
+    private final ConfigurableApplicationContext context;
+    private final boolean isEnabled;
+
+    public ShardRebalancer(Shards shards,
+                           ShardedUserStorage userStorage,
+                           ConfigurableApplicationContext context,
+                           @Value("${filmorate.sharding.rebalance:false}") boolean isEnabled) {
+        this.shards = shards;
+        this.userStorage = userStorage;
+        this.context = context;
+        this.isEnabled = isEnabled;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!isEnabled) {
+            return;
+        }
+        List<Shard> sources = new ArrayList<>(shards.all());
+        sources.addAll(shards.retired());
+        long moved = rebalance(sources, shards.all());
+        userStorage.loadFriendshipGraph();
+        log.info("Rebalanced {} shards into {}, {} users moved", sources.size(), shards.size(), moved);
+        // Without a web server the run is done, scheduled jobs would keep the JVM up otherwise
+        if (!(context instanceof WebApplicationContext)) {
+            SpringApplication.exit(context);
+        }
+    }
+
+    // A source that is also a target keeps the users hashing to it, every other user leaves
+    public long rebalance(List<Shard> sources, List<Shard> targets) {
+        targets.forEach(Shard::createSchema);
+        long moved = 0;
+        for (Shard source : sources) {
+            int sourceIndex = -1;
+            for (int i = 0; i < targets.size(); i++) {
+                if (targets.get(i).isSameDatabase(source)) {
+                    sourceIndex = i;
+                }
+            }
+            long afterId = 0;
+            while (true) {
+                List<Map<String, Object>> users = source.getJdbcTemplate().queryForList(FIND_USERS_PAGE, afterId,
+                        PAGE_SIZE);
+                Map<Integer, List<Map<String, Object>>> usersByTarget = new HashMap<>();
+                for (Map<String, Object> user : users) {
+                    int targetIndex = Shards.indexOf(((Number) user.get("user_id")).longValue(), targets.size());
+                    if (targetIndex != sourceIndex) {
+                        usersByTarget.computeIfAbsent(targetIndex, index -> new ArrayList<>()).add(user);
+                    }
+                }
+                for (Map.Entry<Integer, List<Map<String, Object>>> entry : usersByTarget.entrySet()) {
+                    move(source, targets.get(entry.getKey()), entry.getValue());
+                    moved += entry.getValue().size();
+                }
+                if (users.size() < PAGE_SIZE) {
+                    break;
+                }
+                afterId = ((Number) users.get(users.size() - 1).get("user_id")).longValue();
+            }
+            log.info("Shard {} drained of users that belong elsewhere", source);
+        }
+        return moved;
+    }
+
+    private void move(Shard source, Shard target, List<Map<String, Object>> users) {
+        Long[] userIds = users.stream().map(user -> ((Number) user.get("user_id")).longValue()).toArray(Long[]::new);
+        JdbcTemplate sourceJdbc = source.getJdbcTemplate();
+        List<Object[]> friends = sourceJdbc.query(FIND_FRIENDS, (resultSet, rowNum) -> new Object[]{
+                resultSet.getLong("user_id"), resultSet.getLong("friend_id")}, (Object) userIds);
+        List<Object[]> likes = sourceJdbc.query(FIND_LIKES, (resultSet, rowNum) -> new Object[]{
+                resultSet.getLong("user_id"), resultSet.getLong("film_id")}, (Object) userIds);
+        List<Object[]> rows = new ArrayList<>();
+        for (Map<String, Object> user : users) {
+            rows.add(new Object[]{user.get("user_id"), user.get("email"), user.get("login"), user.get("name"),
+                    user.get("birthday"), user.get("version")});
+        }
+        target.inTransaction(jdbc -> {
+            jdbc.batchUpdate(COPY_USER, rows);
+            jdbc.batchUpdate(COPY_FRIEND, friends);
+            jdbc.batchUpdate(COPY_LIKE, likes);
+        });
+        source.inTransaction(jdbc -> jdbc.update(DELETE_USERS, (Object) userIds));
+    }
+}
@@ -0,0 +1,127 @@
+package ru.yandex.practicum.filmorate.storage.shard;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.metrics.QueryScope;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/*
+ * The databases of filmorate.sharding.shards. A user, their friend list and their likes live on the shard picked
+ * by a hash of the user id, so the shard order must not change without a rebalance. Retired shards are only
+ * read by the rebalancer, which drains them.
+ */
+@Component
+public class Shards {
+
+    private static final String CLEAR_SHARD = "DELETE FROM users";
+
+    private final List<Shard> shards = new ArrayList<>();
+    private final List<Shard> retired = new ArrayList<>();
+    private final ExecutorService executor;
+
+    public Shards(@Value("${filmorate.sharding.shards:}") List<String> urls,
+                  @Value("${filmorate.sharding.retired-shards:}") List<String> retiredUrls,
+                  @Value("${spring.datasource.username:sa}") String username,
+                  @Value("${spring.datasource.password:}") String password,
+                  @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize,
+                  @Value("${spring.sql.init.mode:embedded}") String initMode) {
+        for (String url : urls) {
+            if (!url.isBlank()) {
+                shards.add(Shard.open("shard-" + (shards.size() + 1), url.trim(), username, password, poolSize));
+            }
+        }
+        for (String url : retiredUrls) {
+            if (!url.isBlank()) {
+                retired.add(Shard.open("retired-shard-" + (retired.size() + 1), url.trim(), username, password,
+                        poolSize));
+            }
+        }
+        for (Shard shard : shards) {
+            shard.createSchema();
+            // The main schema is recreated on every start in this mode, shards must not outlive its films
+            if (initMode.equalsIgnoreCase("always")) {
+                shard.getJdbcTemplate().update(CLEAR_SHARD);
+            }
+        }
+        executor = shards.size() > 1 ? Executors.newFixedThreadPool(shards.size(), task -> {
+            Thread thread = new Thread(task, "shard-gather");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    public boolean isEmpty() {
+        return shards.isEmpty();
+    }
+
+    public int size() {
+        return shards.size();
+    }
+
+    public List<Shard> all() {
+        return Collections.unmodifiableList(shards);
+    }
+
+    public List<Shard> retired() {
+        return Collections.unmodifiableList(retired);
+    }
+
+    public int indexOf(long userId) {
+        return indexOf(userId, shards.size());
+    }
+
+    public Shard forUser(long userId) {
+        return shards.get(indexOf(userId));
+    }
+
+    // Fibonacci hashing, so neighbouring ids don't land on neighbouring shards
+    public static int indexOf(long userId, int shardCount) {
+        return Math.floorMod((int) ((userId * 0x9E3779B97F4A7C15L) >>> 32), shardCount);
+    }
+
+    // Runs the query on every shard at once, results come back in shard order
+    public <T> List<T> gather(Function<Shard, T> query) {
+        if (executor == null) {
+            List<T> results = new ArrayList<>();
+            shards.forEach(shard -> results.add(query.apply(shard)));
+            return results;
+        }
+        List<CompletableFuture<T>> futures = new ArrayList<>();
+        for (Shard shard : shards) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            executor.execute(QueryScope.propagate(() -> {
+                try {
+                    future.complete(query.apply(shard));
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            }));
+            futures.add(future);
+        }
+        List<T> results = new ArrayList<>();
+        try {
+            futures.forEach(future -> results.add(future.join()));
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+        return results;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+        shards.forEach(Shard::close);
+        retired.forEach(Shard::close);
+    }
+}
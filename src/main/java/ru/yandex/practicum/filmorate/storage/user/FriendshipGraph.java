@@ -0,0 +1,402 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+ * Directed "user -> friend" graph. Compacted edges live in compressed sparse row form: sorted node ids,
+ * offsets into one byte array and every adjacency list encoded as varint gaps between sorted friend ids.
+ * Recent edits go to a small per-node overlay that is merged into a new CSR in the background.
+ */
+@Slf4j
+public class FriendshipGraph {
+
+    private static final int DEFAULT_COMPACTION_THRESHOLD = 4096;
+
+    private final int compactionThreshold;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicBoolean isCompacting = new AtomicBoolean();
+    private Csr base = Csr.EMPTY;
+    private final Map<Long, Delta> overlay = new HashMap<>();
+    private final Set<Long> removedNodes = new HashSet<>();
+    private volatile int overlayEdits;
+    private long editSequence;
+
+    public FriendshipGraph() {
+        this(DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    public FriendshipGraph(int compactionThreshold) {
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    // Rebuilds the whole graph, edges must be added sorted by (user, friend)
+    public Loader loader() {
+        return new Loader();
+    }
+
+    public boolean addEdge(long from, long to) {
+        lock.writeLock().lock();
+        try {
+            if (hasEdgeLocked(from, to)) {
+                return false;
+            }
+            overlay.computeIfAbsent(from, id -> new Delta()).add(to, ++editSequence);
+            overlayEdits++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        compactIfNeeded();
+        return true;
+    }
+
+    public boolean removeEdge(long from, long to) {
+        lock.writeLock().lock();
+        try {
+            if (!hasEdgeLocked(from, to)) {
+                return false;
+            }
+            overlay.computeIfAbsent(from, id -> new Delta()).remove(to, ++editSequence);
+            overlayEdits++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        compactIfNeeded();
+        return true;
+    }
+
+    // Outgoing edges go at once, edges pointing to the node are filtered on read until the next compaction
+    public void removeNode(long id) {
+        lock.writeLock().lock();
+        try {
+            removedNodes.add(id);
+            overlay.remove(id);
+            overlayEdits++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        compactIfNeeded();
+    }
+
+    public boolean hasEdge(long from, long to) {
+        lock.readLock().lock();
+        try {
+            return hasEdgeLocked(from, to);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long[] neighbours(long id) {
+        lock.readLock().lock();
+        try {
+            if (removedNodes.contains(id)) {
+                return new long[0];
+            }
+            long[] friends = base.neighbours(id);
+            Delta delta = overlay.get(id);
+            if (delta != null) {
+                friends = delta.applyTo(friends);
+            }
+            if (!removedNodes.isEmpty()) {
+                friends = Arrays.stream(friends).filter(friendId -> !removedNodes.contains(friendId)).toArray();
+            }
+            return friends;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long edgeCount() {
+        lock.readLock().lock();
+        try {
+            long count = base.edgeCount();
+            for (Map.Entry<Long, Delta> entry : overlay.entrySet()) {
+                long[] baseFriends = base.neighbours(entry.getKey());
+                count += entry.getValue().applyTo(baseFriends).length - baseFriends.length;
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public synchronized void compact() {
+        Csr frozenBase;
+        Map<Long, Delta> frozenOverlay = new HashMap<>();
+        Set<Long> frozenRemovedNodes;
+        lock.readLock().lock();
+        try {
+            frozenBase = base;
+            overlay.forEach((id, delta) -> frozenOverlay.put(id, delta.copy()));
+            frozenRemovedNodes = new HashSet<>(removedNodes);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        Csr compacted = merge(frozenBase, frozenOverlay, frozenRemovedNodes);
+
+        lock.writeLock().lock();
+        try {
+            base = compacted;
+            // Deltas edited after the freeze stay, reapplying them to the new base is idempotent
+            frozenOverlay.forEach((id, frozen) -> {
+                Delta live = overlay.get(id);
+                if (live != null && live.version == frozen.version) {
+                    overlay.remove(id);
+                }
+            });
+            removedNodes.removeAll(frozenRemovedNodes);
+            overlayEdits = overlay.size() + removedNodes.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void compactIfNeeded() {
+        if (overlayEdits >= compactionThreshold && isCompacting.compareAndSet(false, true)) {
+            CompletableFuture.runAsync(() -> {
+                try {
+                    compact();
+                } catch (RuntimeException e) {
+                    log.error("Friendship graph compaction failed. Message: {}", e.getMessage());
+                } finally {
+                    isCompacting.set(false);
+                }
+            });
+        }
+    }
+
+    private boolean hasEdgeLocked(long from, long to) {
+        if (removedNodes.contains(from) || removedNodes.contains(to)) {
+            return false;
+        }
+        Delta delta = overlay.get(from);
+        if (delta != null) {
+            if (delta.added.contains(to)) {
+                return true;
+            }
+            if (delta.removed.contains(to)) {
+                return false;
+            }
+        }
+        return base.hasEdge(from, to);
+    }
+
+    private static Csr merge(Csr base, Map<Long, Delta> overlay, Set<Long> removedNodes) {
+        long[] overlayNodes = overlay.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+        CsrBuilder builder = new CsrBuilder();
+        int i = 0;
+        int j = 0;
+        while (i < base.nodes.length || j < overlayNodes.length) {
+            long node;
+            if (j == overlayNodes.length || (i < base.nodes.length && base.nodes[i] < overlayNodes[j])) {
+                node = base.nodes[i++];
+            } else if (i == base.nodes.length || overlayNodes[j] < base.nodes[i]) {
+                node = overlayNodes[j++];
+            } else {
+                node = base.nodes[i++];
+                j++;
+            }
+            if (removedNodes.contains(node)) {
+                continue;
+            }
+            long[] friends = base.neighbours(node);
+            Delta delta = overlay.get(node);
+            if (delta != null) {
+                friends = delta.applyTo(friends);
+            }
+            for (long friend : friends) {
+                if (!removedNodes.contains(friend)) {
+                    builder.add(node, friend);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    public class Loader {
+
+        private final CsrBuilder builder = new CsrBuilder();
+
+        private Loader() {
+        }
+
+        public void add(long from, long to) {
+            builder.add(from, to);
+        }
+
+        public void finish() {
+            Csr loaded = builder.build();
+            lock.writeLock().lock();
+            try {
+                base = loaded;
+                overlay.clear();
+                removedNodes.clear();
+                overlayEdits = 0;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private static class Delta {
+
+        private final TreeSet<Long> added = new TreeSet<>();
+        private final Set<Long> removed = new HashSet<>();
+        private long version;
+
+        // Edits record the final state of an edge, not a change to the base, so they survive a compaction
+        private void add(long friendId, long sequence) {
+            removed.remove(friendId);
+            added.add(friendId);
+            version = sequence;
+        }
+
+        private void remove(long friendId, long sequence) {
+            added.remove(friendId);
+            removed.add(friendId);
+            version = sequence;
+        }
+
+        private Delta copy() {
+            Delta copy = new Delta();
+            copy.added.addAll(added);
+            copy.removed.addAll(removed);
+            copy.version = version;
+            return copy;
+        }
+
+        private long[] applyTo(long[] friends) {
+            long[] result = new long[friends.length + added.size()];
+            Iterator<Long> addedIterator = added.iterator();
+            long nextAdded = addedIterator.hasNext() ? addedIterator.next() : Long.MAX_VALUE;
+            int size = 0;
+            for (long friend : friends) {
+                while (nextAdded < friend) {
+                    result[size++] = nextAdded;
+                    nextAdded = addedIterator.hasNext() ? addedIterator.next() : Long.MAX_VALUE;
+                }
+                if (nextAdded == friend) {
+                    nextAdded = addedIterator.hasNext() ? addedIterator.next() : Long.MAX_VALUE;
+                }
+                if (!removed.contains(friend)) {
+                    result[size++] = friend;
+                }
+            }
+            while (nextAdded != Long.MAX_VALUE) {
+                result[size++] = nextAdded;
+                nextAdded = addedIterator.hasNext() ? addedIterator.next() : Long.MAX_VALUE;
+            }
+            return Arrays.copyOf(result, size);
+        }
+    }
+
+    private static class Csr {
+
+        private static final Csr EMPTY = new Csr(new long[0], new int[]{0}, new int[0], new byte[0]);
+
+        private final long[] nodes;
+        private final int[] offsets;
+        private final int[] degrees;
+        private final byte[] adjacency;
+
+        private Csr(long[] nodes, int[] offsets, int[] degrees, byte[] adjacency) {
+            this.nodes = nodes;
+            this.offsets = offsets;
+            this.degrees = degrees;
+            this.adjacency = adjacency;
+        }
+
+        private long[] neighbours(long id) {
+            int index = Arrays.binarySearch(nodes, id);
+            if (index < 0) {
+                return new long[0];
+            }
+            long[] friends = new long[degrees[index]];
+            int position = offsets[index];
+            long previous = 0;
+            for (int k = 0; k < friends.length; k++) {
+                long gap = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = adjacency[position++];
+                    gap |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                previous += gap;
+                friends[k] = previous;
+            }
+            return friends;
+        }
+
+        private boolean hasEdge(long from, long to) {
+            return Arrays.binarySearch(neighbours(from), to) >= 0;
+        }
+
+        private long edgeCount() {
+            long count = 0;
+            for (int degree : degrees) {
+                count += degree;
+            }
+            return count;
+        }
+    }
+
+    private static class CsrBuilder {
+
+        private long[] nodes = new long[16];
+        private int[] offsets = new int[17];
+        private int[] degrees = new int[16];
+        private byte[] adjacency = new byte[64];
+        private int nodeCount;
+        private int size;
+        private long previousFriend;
+
+        private void add(long from, long to) {
+            if (nodeCount == 0 || nodes[nodeCount - 1] != from) {
+                if (nodeCount > 0 && nodes[nodeCount - 1] > from) {
+                    throw new IllegalArgumentException("Edges should be sorted by user id");
+                }
+                if (nodeCount == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, nodeCount << 1);
+                    degrees = Arrays.copyOf(degrees, nodeCount << 1);
+                    offsets = Arrays.copyOf(offsets, (nodeCount << 1) + 1);
+                }
+                nodes[nodeCount] = from;
+                offsets[nodeCount] = size;
+                nodeCount++;
+                previousFriend = 0;
+            } else if (to <= previousFriend) {
+                throw new IllegalArgumentException("Friends should be sorted and unique");
+            }
+            long gap = to - previousFriend;
+            previousFriend = to;
+            degrees[nodeCount - 1]++;
+            while (true) {
+                if (size + 1 > adjacency.length) {
+                    adjacency = Arrays.copyOf(adjacency, adjacency.length << 1);
+                }
+                if ((gap & ~0x7FL) == 0) {
+                    adjacency[size++] = (byte) gap;
+                    return;
+                }
+                adjacency[size++] = (byte) ((gap & 0x7F) | 0x80);
+                gap >>>= 7;
+            }
+        }
+
+        private Csr build() {
+            int[] finalOffsets = Arrays.copyOf(offsets, nodeCount + 1);
+            finalOffsets[nodeCount] = size;
+            return new Csr(Arrays.copyOf(nodes, nodeCount), finalOffsets, Arrays.copyOf(degrees, nodeCount),
+                    Arrays.copyOf(adjacency, size));
+        }
+    }
+}
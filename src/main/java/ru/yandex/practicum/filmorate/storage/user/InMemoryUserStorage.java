@@ -1,41 +1,85 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.journal.Journal;
+import ru.yandex.practicum.filmorate.storage.journal.JournalRecord;
+import ru.yandex.practicum.filmorate.storage.journal.JournaledStorage;
+import ru.yandex.practicum.filmorate.util.SortedIds;
+import ru.yandex.practicum.filmorate.util.StripedLocks;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 @Component
-public class InMemoryUserStorage implements UserStorage {
+public class InMemoryUserStorage implements UserStorage, JournaledStorage {
 
-    private final Map<Long, User> users;
-    private final Map<Long, Set<Long>> friends;
-    private static long userId;
+    private static final byte PUT_USER = 1;
+    private static final byte DELETE_USER = 2;
+    private static final byte ADD_FRIEND = 3;
+    private static final byte REMOVE_FRIEND = 4;
+    private static final byte PUT_FRIENDS = 5;
+    private static final byte LAST_ID = 6;
+
+    private final ConcurrentNavigableMap<Long, User> users;
+    // The graph guards its own edges, the stripes serialize changes to one user record
+    private final FriendshipGraph friends;
+    private final StripedLocks locks;
+    private final AtomicLong userId;
+    // Records are appended under the stripe of the user or, for an edge, of the user it starts from
+    private volatile Journal journal = Journal.disabled();
+    // Snapshot edges come sorted and are bulk loaded, the loader is finished before the first journaled edit
+    private FriendshipGraph.Loader replayLoader;
 
     public InMemoryUserStorage() {
-        users = new HashMap<>();
-        friends = new HashMap<>();
+        users = new ConcurrentSkipListMap<>();
+        friends = new FriendshipGraph();
+        locks = new StripedLocks();
+        userId = new AtomicLong();
     }
 
     private long generateId() {
-        return ++userId;
+        return userId.incrementAndGet();
     }
 
     @Override
     public User create(User user) {
         user.setId(generateId());
-        users.put(userId, user);
+        putNew(user);
+        journal.sync();
         return user;
     }
 
+    private void putNew(User user) {
+        locks.withLock(user.getId(), () -> {
+            if (users.putIfAbsent(user.getId(), user) != null) {
+                throw new IllegalArgumentException("User with id " + user.getId() + " already exists");
+            }
+            journal.append(() -> userRecord(user));
+            return user;
+        });
+    }
+
     @Override
     public Optional<User> update(User user) {
-        if (users.containsKey(user.getId())) {
+        Optional<User> updated = locks.withLock(user.getId(), () -> {
+            User old = users.get(user.getId());
+            if (old == null) {
+                return Optional.<User>empty();
+            }
+            user.setVersion(old.getVersion() + 1);
             users.put(user.getId(), user);
+            journal.append(() -> userRecord(user));
             return Optional.of(user);
-        }
-        return Optional.empty();
+        });
+        updated.ifPresent(changed -> journal.sync());
+        return updated;
     }
 
     @Override
@@ -43,6 +87,13 @@ public class InMemoryUserStorage implements UserStorage {
         return new ArrayList<>(users.values());
     }
 
+    @Override
+    public List<User> findAll(long afterId, int limit) {
+        return users.tailMap(afterId, false).values().stream()
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
     @Override
     public Optional<User> findById(long id) {
         return Optional.ofNullable(users.get(id));
@@ -50,34 +101,203 @@ public class InMemoryUserStorage implements UserStorage {
 
     @Override
     public boolean deleteById(long id) {
-        return users.remove(id) != null;
+        boolean isDeleted = locks.withLock(id, () -> {
+            friends.removeNode(id);
+            if (users.remove(id) == null) {
+                return false;
+            }
+            journal.append(() -> JournalRecord.of(DELETE_USER).putLong(id).build());
+            return true;
+        });
+        if (isDeleted) {
+            journal.sync();
+        }
+        return isDeleted;
     }
 
 
     @Override
     public boolean addToFriends(long id, long friendId) {
-        if (friends.containsKey(id)) {
-            return friends.get(id).add(friendId);
+        boolean isAdded = addEdge(id, friendId);
+        if (isAdded) {
+            journal.sync();
         }
-        Set<Long> userFriends = new HashSet<>();
-        userFriends.add(friendId);
-        friends.put(id, userFriends);
-        return true;
+        return isAdded;
+    }
+
+    private boolean addEdge(long id, long friendId) {
+        return locks.withLock(id, () -> {
+            if (!friends.addEdge(id, friendId)) {
+                return false;
+            }
+            journal.append(() -> JournalRecord.of(ADD_FRIEND).putLong(id).putLong(friendId).build());
+            return true;
+        });
     }
 
     @Override
     public boolean deleteFromFriends(long id, long friendId) {
-        if (friends.containsKey(id)) {
-            return friends.get(id).remove(friendId);
+        boolean isDeleted = locks.withLock(id, () -> {
+            if (!friends.removeEdge(id, friendId)) {
+                return false;
+            }
+            journal.append(() -> JournalRecord.of(REMOVE_FRIEND).putLong(id).putLong(friendId).build());
+            return true;
+        });
+        if (isDeleted) {
+            journal.sync();
         }
-        return false;
+        return isDeleted;
     }
 
     @Override
     public List<User> getListOfFriends(long id) {
-        if (friends.containsKey(id)) {
-            return friends.get(id).stream().map(users::get).collect(Collectors.toList());
+        return findAllByIds(friends.neighbours(id));
+    }
+
+    @Override
+    public List<User> getListOfFriends(long id, long afterId, int limit) {
+        return findAllByIds(SortedIds.page(friends.neighbours(id), afterId, limit));
+    }
+
+    @Override
+    public Optional<Long> findVersion(long id) {
+        return findById(id).map(User::getVersion);
+    }
+
+    @Override
+    public long[] getFriendIds(long id) {
+        return friends.neighbours(id);
+    }
+
+    @Override
+    public List<User> findAllByIds(long[] ids) {
+        return Arrays.stream(ids)
+                .mapToObj(users::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void createAll(List<User> newUsers) {
+        for (User user : newUsers) {
+            if (users.containsKey(user.getId())) {
+                throw new IllegalArgumentException("User with id " + user.getId() + " already exists");
+            }
+        }
+        for (User user : newUsers) {
+            if (user.getId() > 0) {
+                userId.accumulateAndGet(user.getId(), Math::max);
+            } else {
+                user.setId(generateId());
+            }
+            putNew(user);
         }
-        return new ArrayList<>();
+        journal.sync();
+    }
+
+    @Override
+    public void addFriendships(List<Friendship> friendships) {
+        for (Friendship friendship : friendships) {
+            if (!users.containsKey(friendship.getUserId()) || !users.containsKey(friendship.getFriendId())) {
+                throw new IllegalArgumentException("Users " + friendship.getUserId() + " and "
+                        + friendship.getFriendId() + " should exist");
+            }
+        }
+        friendships.forEach(friendship -> addEdge(friendship.getUserId(), friendship.getFriendId()));
+        journal.sync();
+    }
+
+    @Override
+    public String journalName() {
+        return "users";
+    }
+
+    @Override
+    public void replay(ByteBuffer record) {
+        byte type = record.get();
+        switch (type) {
+            case PUT_USER:
+                User user = User.builder()
+                        .id(record.getLong())
+                        .version(record.getLong())
+                        .email(JournalRecord.getString(record))
+                        .login(JournalRecord.getString(record))
+                        .name(JournalRecord.getString(record))
+                        .birthday(JournalRecord.getDate(record))
+                        .build();
+                users.put(user.getId(), user);
+                userId.accumulateAndGet(user.getId(), Math::max);
+                break;
+            case DELETE_USER:
+                finishLoading();
+                long id = record.getLong();
+                friends.removeNode(id);
+                users.remove(id);
+                break;
+            case ADD_FRIEND:
+                finishLoading();
+                friends.addEdge(record.getLong(), record.getLong());
+                break;
+            case REMOVE_FRIEND:
+                finishLoading();
+                friends.removeEdge(record.getLong(), record.getLong());
+                break;
+            case PUT_FRIENDS:
+                if (replayLoader == null) {
+                    replayLoader = friends.loader();
+                }
+                long from = record.getLong();
+                for (long to : JournalRecord.getLongs(record)) {
+                    replayLoader.add(from, to);
+                }
+                break;
+            case LAST_ID:
+                userId.accumulateAndGet(record.getLong(), Math::max);
+                break;
+            default:
+                throw new IllegalStateException("Unknown user journal record " + type);
+        }
+    }
+
+    private void finishLoading() {
+        if (replayLoader != null) {
+            replayLoader.finish();
+            replayLoader = null;
+        }
+    }
+
+    @Override
+    public void finishReplay() {
+        finishLoading();
+    }
+
+    // Users are visited in id order and friend ids come sorted, so the edges can be bulk loaded back
+    @Override
+    public void writeSnapshot(Journal.Sink sink) throws IOException {
+        sink.add(JournalRecord.of(LAST_ID).putLong(userId.get()).build());
+        for (User user : users.values()) {
+            sink.add(userRecord(user));
+            long[] friendIds = friends.neighbours(user.getId());
+            if (friendIds.length > 0) {
+                sink.add(JournalRecord.of(PUT_FRIENDS).putLong(user.getId()).putLongs(friendIds).build());
+            }
+        }
+    }
+
+    @Override
+    public void attach(Journal journal) {
+        this.journal = journal;
+    }
+
+    private static byte[] userRecord(User user) {
+        return JournalRecord.of(PUT_USER)
+                .putLong(user.getId())
+                .putLong(user.getVersion())
+                .putString(user.getEmail())
+                .putString(user.getLogin())
+                .putString(user.getName())
+                .putDate(user.getBirthday())
+                .build();
     }
 }
@@ -0,0 +1,355 @@
+package ru.yandex.practicum.filmorate.storage.user;
+
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Friendship;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.shard.Shard;
+import ru.yandex.practicum.filmorate.storage.shard.Shards;
+import ru.yandex.practicum.filmorate.util.SortedIds;
+
+import javax.annotation.PostConstruct;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.function.Consumer;
+
+/*
+ * Users partitioned by id across the shards, each with the friends they added. Ids come from a sequence in the
+ * main database so they are unique across shards. Email and login are unique within a shard only.
+ */
+@Component
+public class ShardedUserStorage implements UserStorage {
+
+    private static final int STREAM_PAGE_SIZE = 500;
+    private static final String NEXT_USER_IDS = "SELECT NEXT VALUE FOR user_id_seq FROM SYSTEM_RANGE(1, ?)";
+    private static final String RESTART_USER_ID = "ALTER SEQUENCE user_id_seq RESTART WITH ";
+    private static final String GET_NEXT_USER_ID = "SELECT COALESCE(MAX(user_id), 0) + 1 FROM users";
+    private static final String CREATE_USER = "INSERT INTO users(email, login, name, birthday, user_id) " +
+            "VALUES (?, ?, ?, ?, ?)";
+    private static final String UPDATE_USER = "UPDATE users SET email = ?, login = ?, name = ?, birthday = ?, " +
+            "version = version + 1 WHERE user_id = ?";
+    private static final String FIND_USER_VERSION = "SELECT version FROM users WHERE user_id = ?";
+    private static final String FIND_USER = "SELECT * FROM users WHERE user_id = ?";
+    private static final String FIND_USERS_PAGE = "SELECT * FROM users WHERE user_id > ? ORDER BY user_id LIMIT ?";
+    private static final String FIND_USERS_BY_IDS = "SELECT * FROM users WHERE user_id = ANY(?)";
+    private static final String DELETE_USER = "DELETE FROM users WHERE user_id = ?";
+    private static final String DELETE_USERS = "DELETE FROM users WHERE user_id = ANY(?)";
+    private static final String GET_ALL_FRIENDS = "SELECT user_id, friend_id FROM friends ORDER BY user_id, friend_id";
+    private static final String ADD_FRIEND = "MERGE INTO friends KEY (user_id, friend_id) VALUES (?, ?)";
+    private static final String DELETE_FRIEND = "DELETE FROM friends WHERE user_id = ? AND friend_id = ?";
+    private static final String DELETE_FRIEND_EVERYWHERE = "DELETE FROM friends WHERE friend_id = ?";
+
+    private final Shards shards;
+    private final JdbcTemplate jdbcTemplate;
+    private final FriendshipGraph friendshipGraph = new FriendshipGraph();
+
+    public ShardedUserStorage(Shards shards, JdbcTemplate jdbcTemplate) {
+        this.shards = shards;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // Every user's edges are on one shard, so merging the sorted shard lists keeps the (user, friend) order
+    @PostConstruct
+    public void loadFriendshipGraph() {
+        List<long[]> edges = shards.gather(shard -> {
+            SortedIds.LongArrayBuilder pairs = new SortedIds.LongArrayBuilder();
+            shard.getJdbcTemplate().query(GET_ALL_FRIENDS, resultSet -> {
+                pairs.add(resultSet.getLong("user_id"));
+                pairs.add(resultSet.getLong("friend_id"));
+            });
+            return pairs.build();
+        });
+        int[] positions = new int[edges.size()];
+        FriendshipGraph.Loader loader = friendshipGraph.loader();
+        while (true) {
+            int next = -1;
+            for (int i = 0; i < edges.size(); i++) {
+                if (positions[i] < edges.get(i).length && (next < 0
+                        || edges.get(i)[positions[i]] < edges.get(next)[positions[next]])) {
+                    next = i;
+                }
+            }
+            if (next < 0) {
+                break;
+            }
+            long[] pairs = edges.get(next);
+            long userId = pairs[positions[next]];
+            while (positions[next] < pairs.length && pairs[positions[next]] == userId) {
+                loader.add(userId, pairs[positions[next] + 1]);
+                positions[next] += 2;
+            }
+        }
+        loader.finish();
+    }
+
+    @Override
+    public User create(User user) {
+        long userId = nextIds(1)[0];
+        shards.forUser(userId).getJdbcTemplate().update(connection -> {
+            PreparedStatement stmt = connection.prepareStatement(CREATE_USER);
+            setUserParameters(stmt, user);
+            stmt.setLong(5, userId);
+            return stmt;
+        });
+        user.setId(userId);
+        return user;
+    }
+
+    @Override
+    public Optional<User> update(User user) {
+        boolean isUpdated = shards.forUser(user.getId()).getJdbcTemplate().update(UPDATE_USER,
+                user.getEmail(),
+                user.getLogin(),
+                user.getName(),
+                user.getBirthday(),
+                user.getId()) > 0;
+        return isUpdated ? Optional.of(user) : Optional.empty();
+    }
+
+    // The user's own friends and likes go with the row, friend lists that point to them are on other shards
+    @Override
+    public boolean deleteById(long id) {
+        boolean isDeleted = shards.forUser(id).getJdbcTemplate().update(DELETE_USER, id) > 0;
+        if (isDeleted) {
+            shards.gather(shard -> shard.getJdbcTemplate().update(DELETE_FRIEND_EVERYWHERE, id));
+            friendshipGraph.removeNode(id);
+        }
+        return isDeleted;
+    }
+
+    @Override
+    public List<User> findAll() {
+        List<User> users = new ArrayList<>();
+        forEach(users::add);
+        return users;
+    }
+
+    @Override
+    public void forEach(Consumer<? super User> action) {
+        long afterId = 0;
+        while (true) {
+            List<User> page = findAll(afterId, STREAM_PAGE_SIZE);
+            page.forEach(action);
+            if (page.size() < STREAM_PAGE_SIZE) {
+                return;
+            }
+            afterId = page.get(page.size() - 1).getId();
+        }
+    }
+
+    // Every shard returns its own first page, the merged page is the smallest ids among them
+    @Override
+    public List<User> findAll(long afterId, int limit) {
+        List<List<User>> pages = shards.gather(shard ->
+                shard.getJdbcTemplate().query(FIND_USERS_PAGE, this::mapRowToUser, afterId, limit));
+        List<User> users = new ArrayList<>();
+        pages.forEach(users::addAll);
+        users.sort(Comparator.comparingLong(User::getId));
+        return users.size() > limit ? new ArrayList<>(users.subList(0, limit)) : users;
+    }
+
+    @Override
+    public Optional<User> findById(long id) {
+        try {
+            User user = shards.forUser(id).getJdbcTemplate().queryForObject(FIND_USER, this::mapRowToUser, id);
+            return Optional.ofNullable(user);
+        } catch (EmptyResultDataAccessException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Optional<Long> findVersion(long id) {
+        return shards.forUser(id).getJdbcTemplate().queryForList(FIND_USER_VERSION, Long.class, id).stream()
+                .findFirst();
+    }
+
+    @Override
+    public List<User> getListOfFriends(long id) {
+        return findAllByIds(friendshipGraph.neighbours(id));
+    }
+
+    @Override
+    public List<User> getListOfFriends(long id, long afterId, int limit) {
+        return findAllByIds(SortedIds.page(friendshipGraph.neighbours(id), afterId, limit));
+    }
+
+    @Override
+    public long[] getFriendIds(long id) {
+        return friendshipGraph.neighbours(id);
+    }
+
+    @Override
+    public List<User> findAllByIds(long[] ids) {
+        if (ids.length == 0) {
+            return new ArrayList<>();
+        }
+        Map<Long, User> usersById = new HashMap<>();
+        List<List<Long>> idsByShard = groupByShard(ids);
+        List<List<User>> found = shards.gather(shard -> {
+            List<Long> shardIds = idsByShard.get(shards.all().indexOf(shard));
+            if (shardIds.isEmpty()) {
+                return List.of();
+            }
+            return shard.getJdbcTemplate().query(FIND_USERS_BY_IDS, this::mapRowToUser,
+                    (Object) shardIds.toArray(Long[]::new));
+        });
+        found.forEach(users -> users.forEach(user -> usersById.put(user.getId(), user)));
+        List<User> users = new ArrayList<>(usersById.size());
+        for (long id : ids) {
+            User user = usersById.get(id);
+            if (user != null) {
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
+    // Shards commit one by one, if one fails the users already written to the others are deleted again
+    @Override
+    public void createAll(List<User> users) {
+        List<User> withoutIds = new ArrayList<>();
+        boolean hasExplicitIds = false;
+        for (User user : users) {
+            if (user.getId() > 0) {
+                hasExplicitIds = true;
+            } else {
+                withoutIds.add(user);
+            }
+        }
+        long[] ids = nextIds(withoutIds.size());
+        for (int i = 0; i < ids.length; i++) {
+            withoutIds.get(i).setId(ids[i]);
+        }
+        List<List<User>> usersByShard = new ArrayList<>();
+        shards.all().forEach(shard -> usersByShard.add(new ArrayList<>()));
+        users.forEach(user -> usersByShard.get(shards.indexOf(user.getId())).add(user));
+        List<Integer> written = new ArrayList<>();
+        try {
+            for (int i = 0; i < usersByShard.size(); i++) {
+                List<User> shardUsers = usersByShard.get(i);
+                if (shardUsers.isEmpty()) {
+                    continue;
+                }
+                shards.all().get(i).inTransaction(jdbc -> jdbc.batchUpdate(CREATE_USER, shardUsers,
+                        shardUsers.size(), (stmt, user) -> {
+                            setUserParameters(stmt, user);
+                            stmt.setLong(5, user.getId());
+                        }));
+                written.add(i);
+            }
+        } catch (RuntimeException e) {
+            for (int i : written) {
+                Long[] writtenIds = usersByShard.get(i).stream().map(User::getId).toArray(Long[]::new);
+                shards.all().get(i).getJdbcTemplate().update(DELETE_USERS, (Object) writtenIds);
+            }
+            // Generated ids must not leak into a retry
+            withoutIds.forEach(user -> user.setId(0));
+            throw e;
+        }
+        if (hasExplicitIds) {
+            long nextId = shards.gather(shard -> shard.getJdbcTemplate().queryForObject(GET_NEXT_USER_ID, Long.class))
+                    .stream()
+                    .mapToLong(Long::longValue)
+                    .max()
+                    .orElse(1);
+            jdbcTemplate.execute(RESTART_USER_ID + nextId);
+        }
+    }
+
+    // MERGE makes a retried chunk harmless, so the graph is only updated once every shard has taken its edges
+    @Override
+    public void addFriendships(List<Friendship> friendships) {
+        Set<List<Long>> chunkEdges = new HashSet<>();
+        List<List<Friendship>> edgesByShard = new ArrayList<>();
+        shards.all().forEach(shard -> edgesByShard.add(new ArrayList<>()));
+        for (Friendship friendship : friendships) {
+            long id = friendship.getUserId();
+            long friendId = friendship.getFriendId();
+            if (id == friendId) {
+                throw new IllegalArgumentException("User " + id + " can't be a friend of themselves");
+            }
+            if (friendshipGraph.hasEdge(id, friendId) || !chunkEdges.add(List.of(id, friendId))) {
+                throw new IllegalArgumentException("User " + id + " is already a friend of user " + friendId);
+            }
+            edgesByShard.get(shards.indexOf(id)).add(friendship);
+        }
+        for (int i = 0; i < edgesByShard.size(); i++) {
+            List<Friendship> shardEdges = edgesByShard.get(i);
+            if (!shardEdges.isEmpty()) {
+                shards.all().get(i).inTransaction(jdbc -> jdbc.batchUpdate(ADD_FRIEND, shardEdges,
+                        shardEdges.size(), (stmt, friendship) -> {
+                            stmt.setLong(1, friendship.getUserId());
+                            stmt.setLong(2, friendship.getFriendId());
+                        }));
+            }
+        }
+        friendships.forEach(friendship -> friendshipGraph.addEdge(friendship.getUserId(), friendship.getFriendId()));
+    }
+
+    @Override
+    public boolean addToFriends(long id, long friendId) {
+        boolean isAdded = shards.forUser(id).getJdbcTemplate().update(ADD_FRIEND, id, friendId) > 0;
+        if (isAdded) {
+            friendshipGraph.addEdge(id, friendId);
+        }
+        return isAdded;
+    }
+
+    // Same rules as the single database: a mutual friend keeps their side, a pending request is dropped too
+    @Override
+    public boolean deleteFromFriends(long id, long friendId) {
+        boolean isMutual = friendshipGraph.hasEdge(id, friendId) && friendshipGraph.hasEdge(friendId, id);
+        boolean isDeleted = shards.forUser(id).getJdbcTemplate().update(DELETE_FRIEND, id, friendId) > 0;
+        if (!isMutual) {
+            isDeleted |= shards.forUser(friendId).getJdbcTemplate().update(DELETE_FRIEND, friendId, id) > 0;
+        }
+        if (isDeleted) {
+            friendshipGraph.removeEdge(id, friendId);
+            if (!isMutual) {
+                friendshipGraph.removeEdge(friendId, id);
+            }
+        }
+        return isDeleted;
+    }
+
+    private long[] nextIds(int count) {
+        if (count == 0) {
+            return new long[0];
+        }
+        return jdbcTemplate.queryForList(NEXT_USER_IDS, Long.class, count).stream()
+                .mapToLong(Long::longValue)
+                .toArray();
+    }
+
+    private List<List<Long>> groupByShard(long[] ids) {
+        List<List<Long>> idsByShard = new ArrayList<>();
+        shards.all().forEach(shard -> idsByShard.add(new ArrayList<>()));
+        for (long id : ids) {
+            idsByShard.get(shards.indexOf(id)).add(id);
+        }
+        return idsByShard;
+    }
+
+    private void setUserParameters(PreparedStatement stmt, User user) throws SQLException {
+        stmt.setString(1, user.getEmail());
+        stmt.setString(2, user.getLogin());
+        stmt.setString(3, user.getName());
+        stmt.setDate(4, Date.valueOf(user.getBirthday()));
+    }
+
+    private User mapRowToUser(ResultSet resultSet, int rowNum) throws SQLException {
+        return User.builder()
+                .id(resultSet.getLong("user_id"))
+                .email(resultSet.getString("email"))
+                .login(resultSet.getString("login"))
+                .name(resultSet.getString("name"))
+                .birthday(resultSet.getDate("birthday").toLocalDate())
+                .version(resultSet.getLong("version"))
+                .build();
+    }
+}
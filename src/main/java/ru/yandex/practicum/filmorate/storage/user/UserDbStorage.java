@@ -1,57 +1,72 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
-import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.util.SortedIds;
 
+import javax.annotation.PostConstruct;
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.function.Consumer;
 
 @Component
 public class UserDbStorage implements UserStorage {
+    private static final int STREAM_FETCH_SIZE = 500;
     private final JdbcTemplate jdbcTemplate;
+    private final FriendshipGraph friendshipGraph = new FriendshipGraph();
     private static final String CREATE_USER = "INSERT INTO users(email, login, name, birthday) VALUES (?, ?, ?, ?)";
-    private static final String UPDATE_USER = "UPDATE users SET email = ?, login = ?, name = ?, birthday = ? " +
-            "WHERE user_id = ?";
+    private static final String CREATE_USER_WITH_ID = "INSERT INTO users(email, login, name, birthday, user_id) " +
+            "VALUES (?, ?, ?, ?, ?)";
+    private static final String GET_NEXT_USER_ID = "SELECT COALESCE(MAX(user_id), 0) + 1 FROM users";
+    private static final String RESTART_USER_ID = "ALTER TABLE users ALTER COLUMN user_id RESTART WITH ";
+    private static final String UPDATE_USER = "UPDATE users SET email = ?, login = ?, name = ?, birthday = ?, " +
+            "version = version + 1 WHERE user_id = ?";
+    private static final String FIND_USER_VERSION = "SELECT version FROM users WHERE user_id = ?";
     private static final String FIND_USER = "SELECT * FROM users WHERE user_id = ?";
-    private static final String FIND_ALL_USERS = "SELECT * FROM users";
+    private static final String FIND_ALL_USERS = "SELECT * FROM users ORDER BY user_id";
+    private static final String FIND_USERS_PAGE = "SELECT * FROM users WHERE user_id > ? ORDER BY user_id LIMIT ?";
     private static final String DELETE_USER = "DELETE FROM users WHERE user_id = ?";
-    private static final String GET_FRIENDS = "SELECT * FROM friendship f LEFT JOIN users u " +
-            "ON f.to_user_id = u.user_id WHERE from_user_id = ? UNION SELECT * FROM friendship f " +
-            "LEFT JOIN users u ON f.from_user_id = u.user_id WHERE to_user_id = ? AND accepted = ?";
-    private static final String UPDATE_FRIENDS = "UPDATE friendship SET accepted = ? WHERE (to_user_id = ? " +
-            "AND from_user_id = ?) OR (to_user_id = ? AND from_user_id = ?)";
-    private static final String DELETE_FRIEND = "DELETE FROM friendship WHERE (from_user_id = ? AND to_user_id = ?) " +
-            "OR (from_user_id = ? AND to_user_id = ?)";
+    private static final String GET_ALL_FRIENDS = "SELECT from_user_id AS user_id, to_user_id AS friend_id " +
+            "FROM friendship UNION SELECT to_user_id, from_user_id FROM friendship WHERE accepted = ? " +
+            "ORDER BY user_id, friend_id";
+    private static final String FIND_USERS_BY_IDS = "SELECT * FROM users WHERE user_id = ANY(?)";
+    // Both directions of a pair; an OR of the two would make H2 walk the whole index instead of seeking into it
+    private static final String UPDATE_FRIENDS = "UPDATE friendship SET accepted = ? WHERE to_user_id IN (?, ?) " +
+            "AND from_user_id IN (?, ?) AND to_user_id <> from_user_id";
+    private static final String DELETE_FRIEND = "DELETE FROM friendship WHERE from_user_id IN (?, ?) " +
+            "AND to_user_id IN (?, ?) AND from_user_id <> to_user_id";
     private static final String ADD_FRIEND = "INSERT INTO friendship(to_user_id, from_user_id, accepted) " +
             "VALUES (?, ?, ?)";
-    private static final String HAS_CONNECTION = "SELECT * FROM friendship WHERE (from_user_id = ? " +
-            "AND to_user_id = ?) OR (from_user_id = ? AND to_user_id = ?)";
-    private static final String HAS_MUTUAL_CONNECTION = "SELECT * FROM friendship WHERE (from_user_id = ? " +
-            "AND to_user_id = ? AND accepted = ?) OR (from_user_id = ? AND to_user_id = ? AND accepted = ?)";
 
 
     public UserDbStorage(JdbcTemplate jdbcTemplate) {
         this.jdbcTemplate = jdbcTemplate;
     }
 
+    @PostConstruct
+    public void loadFriendshipGraph() {
+        FriendshipGraph.Loader loader = friendshipGraph.loader();
+        jdbcTemplate.query(GET_ALL_FRIENDS, resultSet -> {
+            loader.add(resultSet.getLong("user_id"), resultSet.getLong("friend_id"));
+        }, true);
+        loader.finish();
+    }
+
     @Override
     public User create(User user) {
         KeyHolder keyHolder = new GeneratedKeyHolder();
         jdbcTemplate.update(connection -> {
             PreparedStatement stmt = connection.prepareStatement(CREATE_USER, new String[]{"user_id"});
-            stmt.setString(1, user.getEmail());
-            stmt.setString(2, user.getLogin());
-            stmt.setString(3, user.getName());
-            stmt.setDate(4, Date.valueOf(user.getBirthday()));
+            setUserParameters(stmt, user);
             return stmt;
         }, keyHolder);
         long userId = keyHolder.getKey().longValue();
@@ -78,7 +93,11 @@ public class UserDbStorage implements UserStorage {
 
     @Override
     public boolean deleteById(long id) {
-        return jdbcTemplate.update(DELETE_USER, id) > 0;
+        boolean isDeleted = jdbcTemplate.update(DELETE_USER, id) > 0;
+        if (isDeleted) {
+            friendshipGraph.removeNode(id);
+        }
+        return isDeleted;
     }
 
     @Override
@@ -86,6 +105,22 @@ public class UserDbStorage implements UserStorage {
         return jdbcTemplate.query(FIND_ALL_USERS, this::mapRowToUser);
     }
 
+    @Override
+    public void forEach(Consumer<? super User> action) {
+        jdbcTemplate.query(connection -> {
+            PreparedStatement stmt = connection.prepareStatement(FIND_ALL_USERS);
+            stmt.setFetchSize(STREAM_FETCH_SIZE);
+            return stmt;
+        }, resultSet -> {
+            action.accept(mapRowToUser(resultSet, resultSet.getRow()));
+        });
+    }
+
+    @Override
+    public List<User> findAll(long afterId, int limit) {
+        return jdbcTemplate.query(FIND_USERS_PAGE, this::mapRowToUser, afterId, limit);
+    }
+
     @Override
     public Optional<User> findById(long id) {
         try {
@@ -96,20 +131,133 @@ public class UserDbStorage implements UserStorage {
         }
     }
 
+    @Override
+    public Optional<Long> findVersion(long id) {
+        return jdbcTemplate.queryForList(FIND_USER_VERSION, Long.class, id).stream().findFirst();
+    }
+
     @Override
     public List<User> getListOfFriends(long id) {
-        return jdbcTemplate.query(GET_FRIENDS, this::mapRowToUser, id, id, true);
+        return findAllByIds(friendshipGraph.neighbours(id));
+    }
+
+    @Override
+    public List<User> getListOfFriends(long id, long afterId, int limit) {
+        return findAllByIds(SortedIds.page(friendshipGraph.neighbours(id), afterId, limit));
+    }
+
+    @Override
+    public long[] getFriendIds(long id) {
+        return friendshipGraph.neighbours(id);
+    }
+
+    @Override
+    public List<User> findAllByIds(long[] ids) {
+        if (ids.length == 0) {
+            return new ArrayList<>();
+        }
+        Long[] userIds = Arrays.stream(ids).boxed().toArray(Long[]::new);
+        Map<Long, User> usersById = new HashMap<>();
+        jdbcTemplate.query(FIND_USERS_BY_IDS, this::mapRowToUser, (Object) userIds)
+                .forEach(user -> usersById.put(user.getId(), user));
+        List<User> users = new ArrayList<>(usersById.size());
+        for (long id : ids) {
+            User user = usersById.get(id);
+            if (user != null) {
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
+    @Override
+    public void createAll(List<User> users) {
+        List<User> withIds = new ArrayList<>();
+        List<User> withoutIds = new ArrayList<>();
+        for (User user : users) {
+            (user.getId() > 0 ? withIds : withoutIds).add(user);
+        }
+        try {
+            if (!withoutIds.isEmpty()) {
+                jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                    try (PreparedStatement stmt = connection.prepareStatement(CREATE_USER, new String[]{"user_id"})) {
+                        for (User user : withoutIds) {
+                            setUserParameters(stmt, user);
+                            stmt.addBatch();
+                        }
+                        stmt.executeBatch();
+                        try (ResultSet keys = stmt.getGeneratedKeys()) {
+                            for (User user : withoutIds) {
+                                keys.next();
+                                user.setId(keys.getLong(1));
+                            }
+                        }
+                    }
+                    return null;
+                });
+            }
+            if (!withIds.isEmpty()) {
+                jdbcTemplate.batchUpdate(CREATE_USER_WITH_ID, withIds, withIds.size(), (stmt, user) -> {
+                    setUserParameters(stmt, user);
+                    stmt.setLong(5, user.getId());
+                });
+                // Explicit ids don't move the identity, DDL commits the chunk in H2 so it goes last
+                Long nextId = jdbcTemplate.queryForObject(GET_NEXT_USER_ID, Long.class);
+                jdbcTemplate.execute(RESTART_USER_ID + nextId);
+            }
+        } catch (RuntimeException e) {
+            // The chunk is rolled back, so generated ids must not leak into a retry
+            withoutIds.forEach(user -> user.setId(0));
+            throw e;
+        }
+    }
+
+    @Override
+    public void addFriendships(List<Friendship> friendships) {
+        Set<List<Long>> chunkEdges = new HashSet<>();
+        List<Friendship> requests = new ArrayList<>();
+        List<Friendship> acceptances = new ArrayList<>();
+        for (Friendship friendship : friendships) {
+            long id = friendship.getUserId();
+            long friendId = friendship.getFriendId();
+            if (id == friendId) {
+                throw new IllegalArgumentException("User " + id + " can't be a friend of themselves");
+            }
+            if (friendshipGraph.hasEdge(id, friendId) || !chunkEdges.add(List.of(id, friendId))) {
+                throw new IllegalArgumentException("User " + id + " is already a friend of user " + friendId);
+            }
+            // A request the other user already sent, in the database or earlier in this chunk, becomes mutual
+            boolean isAcceptance = friendshipGraph.hasEdge(friendId, id) || chunkEdges.contains(List.of(friendId, id));
+            (isAcceptance ? acceptances : requests).add(friendship);
+        }
+        jdbcTemplate.batchUpdate(ADD_FRIEND, requests, requests.size(), (stmt, friendship) -> {
+            stmt.setLong(1, friendship.getFriendId());
+            stmt.setLong(2, friendship.getUserId());
+            stmt.setBoolean(3, false);
+        });
+        jdbcTemplate.batchUpdate(UPDATE_FRIENDS, acceptances, acceptances.size(), (stmt, friendship) -> {
+            stmt.setBoolean(1, true);
+            stmt.setLong(2, friendship.getUserId());
+            stmt.setLong(3, friendship.getFriendId());
+            stmt.setLong(4, friendship.getFriendId());
+            stmt.setLong(5, friendship.getUserId());
+        });
+        friendships.forEach(friendship -> friendshipGraph.addEdge(friendship.getUserId(), friendship.getFriendId()));
+    }
+
+    private void setUserParameters(PreparedStatement stmt, User user) throws SQLException {
+        stmt.setString(1, user.getEmail());
+        stmt.setString(2, user.getLogin());
+        stmt.setString(3, user.getName());
+        stmt.setDate(4, Date.valueOf(user.getBirthday()));
     }
 
     private boolean hasMutualConnection(long id, long friendId) {
-        SqlRowSet sqlRowSet = jdbcTemplate.queryForRowSet(HAS_MUTUAL_CONNECTION, id, friendId, true,
-                friendId, id, true);
-        return sqlRowSet.next();
+        return friendshipGraph.hasEdge(id, friendId) && friendshipGraph.hasEdge(friendId, id);
     }
 
     private boolean hasConnection(long id, long friendId) {
-        SqlRowSet sqlRowSet = jdbcTemplate.queryForRowSet(HAS_CONNECTION, id, friendId, friendId, id);
-        return sqlRowSet.next();
+        return friendshipGraph.hasEdge(id, friendId) || friendshipGraph.hasEdge(friendId, id);
     }
 
     private boolean addConnection(long id, long friendId) {
@@ -122,11 +270,18 @@ public class UserDbStorage implements UserStorage {
 
     @Override
     public boolean addToFriends(long id, long friendId) {
-        if (hasConnection(id, friendId)) {
-            return jdbcTemplate.update(UPDATE_FRIENDS, true, id, friendId, friendId, id) > 0;
-        } else {
-            return addConnection(id, friendId);
+        boolean isAcceptance = hasConnection(id, friendId);
+        boolean isAdded = isAcceptance
+                ? jdbcTemplate.update(UPDATE_FRIENDS, true, id, friendId, friendId, id) > 0
+                : addConnection(id, friendId);
+        if (isAdded) {
+            friendshipGraph.addEdge(id, friendId);
+            // An accepted row stands for both directions, even when it was this user's own pending request
+            if (isAcceptance) {
+                friendshipGraph.addEdge(friendId, id);
+            }
         }
+        return isAdded;
     }
 
     @Override
@@ -136,6 +291,13 @@ public class UserDbStorage implements UserStorage {
         if (isMutual) {
             addConnection(friendId, id);
         }
+        if (isDeleted) {
+            friendshipGraph.removeEdge(id, friendId);
+            // A pending request from the other user is deleted together with the connection
+            if (!isMutual) {
+                friendshipGraph.removeEdge(friendId, id);
+            }
+        }
         return isDeleted;
     }
 
@@ -147,6 +309,7 @@ public class UserDbStorage implements UserStorage {
                 .login(resultSet.getString("login"))
                 .name(resultSet.getString("name"))
                 .birthday(resultSet.getDate("birthday").toLocalDate())
+                .version(resultSet.getLong("version"))
                 .build();
     }
 }
\ No newline at end of file
@@ -1,9 +1,11 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
+import ru.yandex.practicum.filmorate.model.Friendship;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.Storage;
 
 import java.util.List;
+import java.util.Optional;
 
 public interface UserStorage extends Storage<User> {
 
@@ -13,4 +15,16 @@ public interface UserStorage extends Storage<User> {
 
     List<User> getListOfFriends(long id);
 
+    List<User> getListOfFriends(long id, long afterId, int limit);
+
+    long[] getFriendIds(long id);
+
+    List<User> findAllByIds(long[] ids);
+
+    Optional<Long> findVersion(long id);
+
+    void createAll(List<User> users);
+
+    void addFriendships(List<Friendship> friendships);
+
 }
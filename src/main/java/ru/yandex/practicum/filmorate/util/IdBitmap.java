@@ -0,0 +1,57 @@
+package ru.yandex.practicum.filmorate.util;
+
+import org.roaringbitmap.RoaringBitmap;
+
+// Thread-safe set of ids backed by a Roaring bitmap, ids are stored as unsigned 32-bit values
+public final class IdBitmap {
+
+    private static final long MAX_ID = 0xFFFF_FFFFL;
+
+    private final RoaringBitmap bitmap = new RoaringBitmap();
+
+    public synchronized boolean add(long id) {
+        return bitmap.checkedAdd(toInt(id));
+    }
+
+    public synchronized boolean remove(long id) {
+        return bitmap.checkedRemove(toInt(id));
+    }
+
+    public synchronized boolean contains(long id) {
+        return id >= 0 && id <= MAX_ID && bitmap.contains((int) id);
+    }
+
+    public synchronized long cardinality() {
+        return bitmap.getLongCardinality();
+    }
+
+    // Sorted, Roaring iterates in unsigned order
+    public long[] toArray() {
+        return toLongs(snapshot());
+    }
+
+    public static long[] intersect(IdBitmap a, IdBitmap b) {
+        return toLongs(RoaringBitmap.and(a.snapshot(), b.snapshot()));
+    }
+
+    // Copies under the lock, so two bitmaps are never locked at once
+    private synchronized RoaringBitmap snapshot() {
+        return bitmap.clone();
+    }
+
+    private static long[] toLongs(RoaringBitmap bitmap) {
+        long[] ids = new long[bitmap.getCardinality()];
+        int i = 0;
+        for (int id : bitmap) {
+            ids[i++] = Integer.toUnsignedLong(id);
+        }
+        return ids;
+    }
+
+    private static int toInt(long id) {
+        if (id < 0 || id > MAX_ID) {
+            throw new IllegalArgumentException("Id " + id + " doesn't fit into a bitmap");
+        }
+        return (int) id;
+    }
+}
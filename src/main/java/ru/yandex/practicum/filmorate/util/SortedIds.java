@@ -0,0 +1,95 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.Arrays;
+
+public final class SortedIds {
+
+    // Below this size ratio a plain merge beats galloping through the larger array
+    private static final int GALLOP_RATIO = 8;
+
+    private SortedIds() {
+    }
+
+    public static long[] intersect(long[] a, long[] b) {
+        long[] small = a.length <= b.length ? a : b;
+        long[] large = a.length <= b.length ? b : a;
+        if (small.length == 0) {
+            return new long[0];
+        }
+        return large.length / small.length < GALLOP_RATIO ? merge(small, large) : gallop(small, large);
+    }
+
+    private static long[] merge(long[] small, long[] large) {
+        long[] result = new long[small.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < small.length && j < large.length) {
+            if (small[i] < large[j]) {
+                i++;
+            } else if (small[i] > large[j]) {
+                j++;
+            } else {
+                result[size++] = small[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private static long[] gallop(long[] small, long[] large) {
+        long[] result = new long[small.length];
+        int size = 0;
+        int from = 0;
+        for (long id : small) {
+            int bound = 1;
+            while (from + bound < large.length && large[from + bound] < id) {
+                bound <<= 1;
+            }
+            int index = Arrays.binarySearch(large, from + (bound >> 1), Math.min(from + bound + 1, large.length), id);
+            if (index >= 0) {
+                result[size++] = id;
+                from = index + 1;
+            } else {
+                from = -index - 1;
+            }
+            if (from >= large.length) {
+                break;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    // Keyset page over a sorted array: up to limit ids strictly greater than afterId
+    public static long[] page(long[] ids, long afterId, int limit) {
+        int from = Arrays.binarySearch(ids, afterId);
+        from = from >= 0 ? from + 1 : -from - 1;
+        return Arrays.copyOfRange(ids, from, (int) Math.min(ids.length, (long) from + limit));
+    }
+
+    public static long[] of(Iterable<Long> ids) {
+        LongArrayBuilder builder = new LongArrayBuilder();
+        ids.forEach(builder::add);
+        long[] result = builder.build();
+        Arrays.sort(result);
+        return result;
+    }
+
+    public static class LongArrayBuilder {
+
+        private long[] values = new long[16];
+        private int size;
+
+        public void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size << 1);
+            }
+            values[size++] = value;
+        }
+
+        public long[] build() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+// Fixed pool of locks shared by entity id, writes to one entity are serialized without a lock object per entity
+public final class StripedLocks {
+
+    private final ReentrantLock[] locks;
+
+    public StripedLocks() {
+        this(Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    public StripedLocks(int minStripes) {
+        int stripes = Math.max(16, Integer.highestOneBit(minStripes - 1) << 1);
+        locks = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    public <T> T withLock(long id, Supplier<T> action) {
+        ReentrantLock lock = locks[index(id)];
+        lock.lock();
+        try {
+            return action.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int index(long id) {
+        return (int) (id ^ (id >>> 32)) & (locks.length - 1);
+    }
+}
@@ -0,0 +1,80 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/*
+ * Splits Russian and English text into search terms: runs of letters and digits, lower-cased, "ё" folded into
+ * "е" and stripped of the most common inflection endings. It is a light stemmer, prefix queries cover the rest.
+ */
+public final class Tokenizer {
+
+    private static final int MIN_TOKEN = 2;
+    private static final int MIN_STEM = 3;
+    // Longest first, so "ами" is stripped before "и"
+    private static final String[] RUSSIAN_ENDINGS = {
+            "иями", "ями", "ами", "ого", "его", "ому", "ему", "ыми", "ими", "иях", "ией",
+            "ах", "ях", "ам", "ям", "ом", "ем", "ов", "ев", "ой", "ей", "ий", "ый", "ая", "яя",
+            "ое", "ее", "ые", "ие", "ую", "юю", "ых", "их", "ия", "ью",
+            "а", "я", "о", "е", "ы", "и", "у", "ю", "ь", "й"};
+
+    private Tokenizer() {
+    }
+
+    public static List<String> terms(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        String normalized = text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean isWordChar = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (isWordChar && start < 0) {
+                start = i;
+            } else if (!isWordChar && start >= 0) {
+                if (i - start >= MIN_TOKEN) {
+                    terms.add(stem(normalized.substring(start, i)));
+                }
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    static String stem(String token) {
+        if (Character.UnicodeBlock.of(token.charAt(0)) == Character.UnicodeBlock.CYRILLIC) {
+            for (String ending : RUSSIAN_ENDINGS) {
+                if (token.endsWith(ending) && token.length() - ending.length() >= MIN_STEM) {
+                    return token.substring(0, token.length() - ending.length());
+                }
+            }
+            return token;
+        }
+        return stemEnglish(token);
+    }
+
+    private static String stemEnglish(String token) {
+        if (token.endsWith("ies") && token.length() > 4) {
+            return token.substring(0, token.length() - 3) + "y";
+        }
+        if (token.endsWith("sses")) {
+            return token.substring(0, token.length() - 2);
+        }
+        if (token.endsWith("ing") && token.length() - 3 >= MIN_STEM) {
+            return token.substring(0, token.length() - 3);
+        }
+        if (token.endsWith("ed") && token.length() - 2 >= MIN_STEM) {
+            return token.substring(0, token.length() - 2);
+        }
+        if (token.endsWith("es") && token.length() > 4 && (token.endsWith("xes") || token.endsWith("ches")
+                || token.endsWith("shes") || token.endsWith("zes"))) {
+            return token.substring(0, token.length() - 2);
+        }
+        if (token.endsWith("s") && !token.endsWith("ss") && !token.endsWith("us") && token.length() > MIN_STEM) {
+            return token.substring(0, token.length() - 1);
+        }
+        return token;
+    }
+}
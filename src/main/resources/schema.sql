@@ -5,6 +5,9 @@ DROP TABLE IF EXISTS films_genres CASCADE;
 DROP TABLE IF EXISTS users CASCADE;
 DROP TABLE IF EXISTS friendship CASCADE;
 DROP TABLE IF EXISTS films_likes CASCADE;
+DROP TABLE IF EXISTS film_documents CASCADE;
+DROP TABLE IF EXISTS replication_heartbeat CASCADE;
+DROP SEQUENCE IF EXISTS user_id_seq;
 
 CREATE TABLE ratings (
     rating_id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
@@ -18,7 +21,8 @@ CREATE TABLE films (
     duration INTEGER NOT NULL,
     release_date DATE,
     rating_id INTEGER REFERENCES ratings (rating_id) ON DELETE RESTRICT,
-    likes_count BIGINT,
+    likes_count BIGINT DEFAULT 0 NOT NULL,
+    version BIGINT DEFAULT 0 NOT NULL,
     CHECK (name <> '' AND duration > 0)
 );
 
@@ -39,18 +43,41 @@ CREATE TABLE users (
     login VARCHAR(50) NOT NULL UNIQUE,
     name VARCHAR(50),
     birthday DATE,
+    version BIGINT DEFAULT 0 NOT NULL,
     CHECK (email <> '' AND login <> '')
 );
 
 CREATE TABLE friendship (
     to_user_id BIGINT REFERENCES users (user_id) ON DELETE CASCADE,
-    from_user_id BIGINT REFERENCES users (user_id) ON DELETE CASCADE,
+    from_user_id BIGINT,
     accepted BOOLEAN,
     PRIMARY KEY (to_user_id, from_user_id)
 );
 
+-- Foreign keys declared after their index reuse it, H2 would otherwise add an unnamed one of its own
+CREATE INDEX friendship_from_user_id ON friendship (from_user_id);
+ALTER TABLE friendship ADD FOREIGN KEY (from_user_id) REFERENCES users (user_id) ON DELETE CASCADE;
+
 CREATE TABLE films_likes (
     film_id BIGINT REFERENCES films (film_id) ON DELETE CASCADE,
-    user_id BIGINT REFERENCES users (user_id) ON DELETE CASCADE,
+    user_id BIGINT,
     PRIMARY KEY (film_id, user_id)
-);
\ No newline at end of file
+);
+
+-- Films a user liked, already in film_id order for the liked films and their pages
+CREATE INDEX films_likes_user_id ON films_likes (user_id, film_id);
+ALTER TABLE films_likes ADD FOREIGN KEY (user_id) REFERENCES users (user_id) ON DELETE CASCADE;
+
+-- A film serialized to JSON without likes_count, written with the film so a fetch reads a single row
+CREATE TABLE film_documents (
+    film_id BIGINT PRIMARY KEY REFERENCES films (film_id) ON DELETE CASCADE,
+    body VARBINARY NOT NULL
+);
+
+CREATE TABLE replication_heartbeat (
+    id INTEGER PRIMARY KEY,
+    beat_at BIGINT NOT NULL
+);
+
+-- User ids of the sharded storage, the users table above is not used then
+CREATE SEQUENCE user_id_seq;
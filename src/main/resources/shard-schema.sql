@@ -0,0 +1,25 @@
+CREATE TABLE IF NOT EXISTS users (
+    user_id BIGINT PRIMARY KEY,
+    email VARCHAR(255) NOT NULL UNIQUE,
+    login VARCHAR(50) NOT NULL UNIQUE,
+    name VARCHAR(50),
+    birthday DATE,
+    version BIGINT DEFAULT 0 NOT NULL,
+    CHECK (email <> '' AND login <> '')
+);
+
+CREATE TABLE IF NOT EXISTS friends (
+    user_id BIGINT REFERENCES users (user_id) ON DELETE CASCADE,
+    friend_id BIGINT NOT NULL,
+    PRIMARY KEY (user_id, friend_id)
+);
+
+CREATE INDEX IF NOT EXISTS friends_friend_id ON friends (friend_id);
+
+CREATE TABLE IF NOT EXISTS likes (
+    user_id BIGINT REFERENCES users (user_id) ON DELETE CASCADE,
+    film_id BIGINT NOT NULL,
+    PRIMARY KEY (user_id, film_id)
+);
+
+CREATE INDEX IF NOT EXISTS likes_film_id ON likes (film_id);
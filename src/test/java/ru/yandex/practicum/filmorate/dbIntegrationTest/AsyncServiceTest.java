@@ -0,0 +1,81 @@
+package ru.yandex.practicum.filmorate.dbIntegrationTest;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.async.StorageExecutor;
+import ru.yandex.practicum.filmorate.metrics.QueryStats;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "filmorate.async.enabled=true")
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+// One context for the class: a context closed between methods would also shut down the injected pool
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class AsyncServiceTest {
+
+    private final FilmService filmService;
+    private final UserService userService;
+    private final StorageExecutor executor;
+
+    @Test
+    public void testStorageCallsRunOnStoragePool() throws Exception {
+        // When
+        String threadName = executor.supply(() -> Thread.currentThread().getName()).get(10, TimeUnit.SECONDS);
+        // Then
+        assertTrue(threadName.startsWith("storage-"));
+    }
+
+    @Test
+    public void testLikeAndCommonFilmsCompleteAsynchronously() throws Exception {
+        // Given
+        long first = userService.createUser(User.builder().email("first@mail.ru").login("first")
+                .birthday(LocalDate.of(1990, 1, 1)).build()).getId();
+        long second = userService.createUser(User.builder().email("second@mail.ru").login("second")
+                .birthday(LocalDate.of(1990, 1, 1)).build()).getId();
+        long filmId = filmService.createFilm(Film.builder().name("Film").description("Description").duration(100)
+                .releaseDate(LocalDate.of(2000, 1, 1)).mpa(MPA.builder().id(1).build()).build()).getId();
+        // When
+        boolean isLiked = filmService.likeFilm(filmId, first).get(10, TimeUnit.SECONDS)
+                && filmService.likeFilm(filmId, second).get(10, TimeUnit.SECONDS);
+        boolean isLikedByMissingUser = filmService.likeFilm(filmId, 9999).get(10, TimeUnit.SECONDS);
+        Optional<List<Film>> commonFilms = filmService.findTopCommonFilms(first, second).get(10, TimeUnit.SECONDS);
+        // Then
+        assertTrue(isLiked);
+        assertFalse(isLikedByMissingUser);
+        assertTrue(commonFilms.isPresent());
+        assertEquals(1, commonFilms.get().size());
+        assertEquals(filmId, commonFilms.get().get(0).getId());
+    }
+
+    @Test
+    public void testStatementsOnPoolThreadsCountTowardsCallerScope() {
+        // Given
+        long first = userService.createUser(User.builder().email("third@mail.ru").login("third")
+                .birthday(LocalDate.of(1990, 1, 1)).build()).getId();
+        long second = userService.createUser(User.builder().email("fourth@mail.ru").login("fourth")
+                .birthday(LocalDate.of(1990, 1, 1)).build()).getId();
+        // When
+        QueryStats stats = QueryBudget.measure(() -> {
+            CompletableFuture<Boolean> isAdded = userService.addToFriends(first, second);
+            assertTrue(isAdded.join());
+        });
+        // Then
+        assertTrue(stats.getStatements() >= 3, () -> "Expected the lookups and the insert, got " + stats);
+    }
+}
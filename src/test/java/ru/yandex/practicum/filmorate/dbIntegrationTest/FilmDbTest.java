@@ -1,23 +1,41 @@
 package ru.yandex.practicum.filmorate.dbIntegrationTest;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.metrics.QueryStats;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmDocument;
+import ru.yandex.practicum.filmorate.model.FilmSelection;
 import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.MPA;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.LikeCounter;
 import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
@@ -30,6 +48,10 @@ public class FilmDbTest {
 
     private final FilmDbStorage storage;
     private final UserDbStorage userStorage;
+    private final LikeCounter likeCounter;
+    private final JdbcTemplate jdbcTemplate;
+    private final FilmService filmService;
+    private final ObjectMapper objectMapper;
 
     @Test
     public void testFindFilmById() {
@@ -100,6 +122,63 @@ public class FilmDbTest {
                 .hasFieldOrPropertyWithValue("name", "Harry Potter and the Philosopher's Stone");
     }
 
+    @Test
+    public void testFindAllFilmsWithGenres() {
+        // Given
+        storage.create(Film.builder()
+                .name("Pirates of the Caribbean: The Curse of the Black Pearl")
+                .description("American fantasy swashbuckler film")
+                .duration(152)
+                .mpa(MPA.builder().id(2).build())
+                .releaseDate(LocalDate.of(2003, 7, 9))
+                .genres(Set.of(Genre.builder().id(6).build(), Genre.builder().id(1).build()))
+                .build());
+        storage.create(Film.builder()
+                .name("Harry Potter and the Philosopher's Stone")
+                .description("Fantasy film based on J. K. Rowling's 1997 novel of the same name.")
+                .duration(143)
+                .mpa(MPA.builder().id(1).build())
+                .releaseDate(LocalDate.of(2001, 11, 11))
+                .build());
+        // When
+        List<Film> films = storage.findAll();
+        // Then
+        assertEquals("PG", films.get(0).getMpa().getName());
+        assertEquals(List.of(Genre.builder().id(1).name("Комедия").build(),
+                        Genre.builder().id(6).name("Боевик").build()),
+                List.copyOf(films.get(0).getGenres()));
+        assertEquals("G", films.get(1).getMpa().getName());
+        assertTrue(films.get(1).getGenres().isEmpty());
+    }
+
+    @Test
+    public void testForEachStreamsFilmsWithGenres() {
+        // Given
+        testFindAllFilmsWithGenres();
+        storage.create(Film.builder()
+                .name("Shrek")
+                .description("Animated comedy film")
+                .duration(90)
+                .mpa(MPA.builder().id(1).build())
+                .releaseDate(LocalDate.of(2001, 4, 22))
+                .genres(Set.of(Genre.builder().id(3).build()))
+                .build());
+        List<Film> films = new ArrayList<>();
+        // When
+        storage.forEach(films::add);
+        // Then
+        assertEquals(storage.findAll(), films);
+        assertEquals(List.of(Genre.builder().id(3).name("Мультфильм").build()), List.copyOf(films.get(2).getGenres()));
+    }
+
+    @Test
+    public void testSlowFilmStreamBlocksNeitherFlushNorReads() throws Exception {
+        // Given
+        testAddLikeToFilm();
+        // Then
+        assertFlushAndReadsFinishWhileConsumerBlocks(block -> storage.forEach(film -> block.run()));
+    }
+
     @Test
     public void testDeleteById() {
         // Given
@@ -207,4 +286,340 @@ public class FilmDbTest {
         assertTrue(isLikeRemoved);
         assertEquals(0, storage.findById(1).get().getLikes_count());
     }
+
+    @Test
+    public void testLikesFlushedToDatabase() {
+        // Given
+        testAddLikeToFilm();
+        userStorage.create(User.builder()
+                .email("tom@mail.ru")
+                .login("Tom")
+                .name("Tom")
+                .birthday(LocalDate.of(1994, 1, 7))
+                .build());
+        storage.addLikeToFilm(1, 2);
+        // When
+        likeCounter.flush();
+        // Then
+        assertEquals(2, jdbcTemplate.queryForObject("SELECT likes_count FROM films WHERE film_id = 1", Long.class));
+        assertEquals(0, likeCounter.unflushed(1));
+        assertEquals(2, storage.findById(1).get().getLikes_count());
+    }
+
+    @Test
+    public void testLikesNotLostWhenFlushedConcurrently() throws InterruptedException {
+        // Given
+        storage.create(Film.builder()
+                .name("Film")
+                .description("Description")
+                .duration(100)
+                .mpa(MPA.builder().id(1).build())
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .build());
+        long version = jdbcTemplate.queryForObject("SELECT version FROM films WHERE film_id = 1", Long.class);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < 100_000; j++) {
+                    likeCounter.increment(1);
+                }
+            }));
+        }
+        // When
+        threads.forEach(Thread::start);
+        while (threads.stream().anyMatch(Thread::isAlive)) {
+            likeCounter.flush();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        likeCounter.flush();
+        likeCounter.flush();
+        // Then
+        assertEquals(400_000, jdbcTemplate.queryForObject("SELECT likes_count FROM films WHERE film_id = 1",
+                Long.class));
+        assertEquals(version + 400_000, jdbcTemplate.queryForObject("SELECT version FROM films WHERE film_id = 1",
+                Long.class));
+        assertEquals(0, likeCounter.unflushedOperations(1));
+    }
+
+    @Test
+    public void testFilterFilms() {
+        // Given
+        int[][] films = {{1, 1, 2}, {2, 1}, {1, 2}};
+        for (int[] film : films) {
+            storage.create(Film.builder()
+                    .name("Film")
+                    .description("Description")
+                    .duration(100)
+                    .mpa(MPA.builder().id(film[0]).build())
+                    .genres(Arrays.stream(film, 1, film.length)
+                            .mapToObj(id -> Genre.builder().id(id).build())
+                            .collect(Collectors.toSet()))
+                    .releaseDate(LocalDate.of(2000, 1, 1))
+                    .build());
+        }
+        for (int i = 1; i <= 2; i++) {
+            userStorage.create(User.builder()
+                    .email("user" + i + "@mail.ru")
+                    .login("user" + i)
+                    .name("User")
+                    .birthday(LocalDate.of(2000, 4, 1))
+                    .build());
+            storage.addLikeToFilm(3, i);
+        }
+        // When
+        FilmSelection anyGenre = filmService.filterFilms(Set.of(2), false, Set.of(), 10);
+        storage.loadIndexes();
+        FilmSelection allGenres = filmService.filterFilms(Set.of(1, 2), true, Set.of(1), 10);
+        storage.update(Film.builder()
+                .id(1)
+                .name("Film")
+                .description("Description")
+                .duration(100)
+                .mpa(MPA.builder().id(2).build())
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .build());
+        FilmSelection updated = filmService.filterFilms(Set.of(), false, Set.of(1), 1);
+        // Then
+        assertEquals(2, anyGenre.getTotal());
+        assertEquals(List.of(3L, 1L), anyGenre.getFilms().stream().map(Film::getId).collect(Collectors.toList()));
+        assertEquals(Map.of(1, 1L, 2, 2L), anyGenre.getGenres());
+        assertEquals(Map.of(1, 2L), anyGenre.getMpa());
+        assertEquals(1, allGenres.getTotal());
+        assertEquals(1, allGenres.getFilms().get(0).getId());
+        assertEquals(1, updated.getTotal());
+        assertEquals(3, updated.getFilms().get(0).getId());
+    }
+
+    @Test
+    public void testSearch() {
+        // Given
+        String[][] films = {{"Пираты Карибского моря", "Приключения капитана"},
+                {"Остров сокровищ", "Пираты ищут клад"}, {"Матрица", "Фантастика"}};
+        for (String[] film : films) {
+            storage.create(Film.builder()
+                    .name(film[0])
+                    .description(film[1])
+                    .duration(100)
+                    .mpa(MPA.builder().id(1).build())
+                    .releaseDate(LocalDate.of(2000, 1, 1))
+                    .build());
+        }
+        userStorage.create(User.builder()
+                .email("user@mail.ru")
+                .login("user")
+                .name("User")
+                .birthday(LocalDate.of(2000, 4, 1))
+                .build());
+        storage.addLikeToFilm(2, 1);
+        // When
+        List<Film> found = filmService.searchFilms("пират", 10, false);
+        storage.update(Film.builder()
+                .id(1)
+                .name("Капитан Блад")
+                .description("Приключения капитана")
+                .duration(100)
+                .mpa(MPA.builder().id(1).build())
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .build());
+        storage.deleteById(3);
+        // Then
+        assertEquals(List.of(1L, 2L), List.of(found.get(0).getId(), found.get(1).getId()));
+        assertArrayEquals(new long[]{2}, storage.search("пираты", 10, false));
+        assertArrayEquals(new long[]{1}, storage.search("капит", 10, true));
+        assertArrayEquals(new long[0], storage.search("матрица", 10, false));
+    }
+
+    @Test
+    public void testFindPopular() {
+        // Given
+        for (int i = 1; i <= 3; i++) {
+            userStorage.create(User.builder()
+                    .email("user" + i + "@mail.ru")
+                    .login("user" + i)
+                    .name("User " + i)
+                    .birthday(LocalDate.of(2000, 4, i))
+                    .build());
+            storage.create(Film.builder()
+                    .name("Film " + i)
+                    .description("Description " + i)
+                    .duration(100 + i)
+                    .mpa(MPA.builder().id(1).build())
+                    .releaseDate(LocalDate.of(2000 + i, 1, 1))
+                    .build());
+        }
+        storage.addLikeToFilm(3, 1);
+        storage.addLikeToFilm(3, 2);
+        storage.addLikeToFilm(2, 1);
+        storage.addLikeToFilm(1, 1);
+        storage.removeLikeFromFilm(1, 1);
+        // When
+        List<Film> popular = storage.findPopular(2);
+        // Then
+        assertEquals(2, popular.size());
+        assertThat(popular.get(0)).hasFieldOrPropertyWithValue("id", 3L)
+                .hasFieldOrPropertyWithValue("likes_count", 2L);
+        assertThat(popular.get(1)).hasFieldOrPropertyWithValue("id", 2L)
+                .hasFieldOrPropertyWithValue("likes_count", 1L);
+        storage.deleteById(3);
+        assertEquals(List.of(2L, 1L), List.of(storage.findPopular(10).get(0).getId(),
+                storage.findPopular(10).get(1).getId()));
+    }
+
+    @Test
+    public void testFindUserFilmIdsAndFilmsByIds() {
+        // Given
+        testFindPopular();
+        storage.addLikeToFilm(2, 2);
+        // When
+        long[] filmIds = storage.getUserFilmIds(1);
+        List<Film> films = storage.findAllByIds(new long[]{2, 100, 1});
+        // Then
+        assertArrayEquals(new long[]{2}, filmIds);
+        assertArrayEquals(new long[]{2}, storage.getUserFilmIds(2));
+        assertEquals(2, films.size());
+        assertThat(films.get(0)).hasFieldOrPropertyWithValue("id", 2L)
+                .hasFieldOrPropertyWithValue("likes_count", 2L);
+        assertThat(films.get(1)).hasFieldOrPropertyWithValue("id", 1L);
+    }
+
+    @Test
+    public void testFindFilmsPageAndUserFilmsPage() {
+        // Given
+        testFindPopular();
+        storage.addLikeToFilm(1, 1);
+        // When
+        List<Film> firstPage = storage.findAll(0, 1);
+        List<Film> lastPage = storage.findAll(firstPage.get(0).getId(), 10);
+        List<Film> userFilms = storage.getUserFilms(1, 1, 10);
+        // Then
+        assertEquals(1, firstPage.size());
+        assertThat(firstPage.get(0)).hasFieldOrPropertyWithValue("id", 1L);
+        assertEquals(1, lastPage.size());
+        assertThat(lastPage.get(0)).hasFieldOrPropertyWithValue("id", 2L);
+        assertEquals(1, userFilms.size());
+        assertThat(userFilms.get(0)).hasFieldOrPropertyWithValue("id", 2L)
+                .hasFieldOrPropertyWithValue("likes_count", 1L);
+        assertTrue(storage.findAll(2, 10).isEmpty());
+    }
+
+    @Test
+    public void testUpdateAndLikesBumpVersion() {
+        // Given
+        testFindPopular();
+        long versionBeforeFlush = storage.findVersion(1).get();
+        // When
+        likeCounter.flush();
+        Film film = storage.findById(1).get();
+        film.setName("New name");
+        storage.update(film);
+        // Then
+        assertEquals(2, versionBeforeFlush);
+        assertEquals(Optional.of(3L), storage.findVersion(1));
+        assertEquals(3, storage.findById(1).get().getVersion());
+        assertEquals(Map.of(1L, 3L, 2L, 1L), storage.findVersions(new long[]{1, 2, 100}));
+        assertTrue(storage.findVersion(100).isEmpty());
+    }
+
+    @Test
+    public void testQueryBudgets() {
+        // Given
+        testFindPopular();
+        // Then
+        QueryBudget.assertAtMost(2, () -> storage.findById(1));
+        QueryBudget.assertAtMost(2, () -> storage.findAll());
+        QueryBudget.assertAtMost(2, () -> storage.findAll(0, 10));
+        QueryBudget.assertAtMost(2, () -> storage.findPopular(10));
+        QueryBudget.assertAtMost(2, () -> storage.getUserFilms(1, 0, 10));
+        QueryBudget.assertAtMost(4, () -> filmService.likeFilm(1, 2));
+        QueryStats stats = QueryBudget.measure(() -> storage.findById(1));
+        assertEquals(1, stats.getRows());
+        assertTrue(stats.suspectedNPlusOne(2).isEmpty());
+    }
+
+    @Test
+    public void testDocumentIsTheSerializedFilm() {
+        // Given
+        testAddLikeToFilm();
+        Film film = storage.findById(1).get();
+        film.setGenres(Set.of(Genre.builder().id(2).build()));
+        storage.update(film);
+        // When
+        FilmDocument document = QueryBudget.assertAtMost(1, () -> storage.findDocument(1)).orElseThrow();
+        Film stored = storage.findById(1).get();
+        // Then
+        JsonNode json = toJson(document);
+        assertEquals(toJson(stored), json);
+        assertEquals("Драма", json.get("genres").get(0).get("name").asText());
+        assertEquals(1, json.get("likes_count").asLong());
+        assertEquals(stored.getVersion(), document.getVersion());
+        assertTrue(storage.findDocument(100).isEmpty());
+    }
+
+    @Test
+    public void testMissingDocumentsAreRebuilt() {
+        // Given
+        testFindAllFilms();
+        jdbcTemplate.update("DELETE FROM film_documents WHERE film_id = 2");
+        // When
+        List<FilmDocument> documents = storage.findDocuments(new long[]{2, 100, 1});
+        jdbcTemplate.update("DELETE FROM film_documents WHERE film_id = 1");
+        List<JsonNode> streamed = new ArrayList<>();
+        storage.forEachDocument(document -> streamed.add(toJson(document)));
+        // Then
+        assertEquals(List.of(2L, 1L), List.of(documents.get(0).getId(), documents.get(1).getId()));
+        assertEquals(toJson(storage.findById(2).get()), toJson(documents.get(0)));
+        assertEquals(2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM film_documents", Long.class));
+        assertEquals(List.of(toJson(storage.findById(1).get()), toJson(storage.findById(2).get())), streamed);
+    }
+
+    @Test
+    public void testSlowDocumentStreamBlocksNeitherFlushNorReads() throws Exception {
+        // Given
+        testAddLikeToFilm();
+        jdbcTemplate.update("DELETE FROM film_documents WHERE film_id = 1");
+        // Then
+        assertFlushAndReadsFinishWhileConsumerBlocks(block -> storage.forEachDocument(document -> block.run()));
+    }
+
+    private JsonNode toJson(FilmDocument document) {
+        try {
+            return objectMapper.readTree(document.getJson());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Parsed back from bytes, so numbers are compared as the same node types
+    private JsonNode toJson(Film film) {
+        try {
+            return objectMapper.readTree(objectMapper.writeValueAsBytes(film));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // The stream is parked in its consumer while a flush and a read of the same film must still complete
+    private void assertFlushAndReadsFinishWhileConsumerBlocks(Consumer<Runnable> stream) throws Exception {
+        CountDownLatch consuming = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> streaming = CompletableFuture.runAsync(() -> stream.accept(() -> {
+            consuming.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertTrue(consuming.await(10, TimeUnit.SECONDS));
+        try {
+            CompletableFuture.runAsync(likeCounter::flush).get(10, TimeUnit.SECONDS);
+            assertTrue(CompletableFuture.supplyAsync(() -> storage.findById(1)).get(10, TimeUnit.SECONDS)
+                    .isPresent());
+        } finally {
+            release.countDown();
+            streaming.get(10, TimeUnit.SECONDS);
+        }
+    }
 }
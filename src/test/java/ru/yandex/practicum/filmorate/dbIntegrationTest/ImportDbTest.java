@@ -0,0 +1,146 @@
+package ru.yandex.practicum.filmorate.dbIntegrationTest;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.ImportResult;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.ImportService;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "filmorate.import.chunk-size=2")
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+public class ImportDbTest {
+
+    private final ImportService importService;
+    private final UserDbStorage userStorage;
+    private final FilmDbStorage filmStorage;
+    private final PlatformTransactionManager transactionManager;
+
+    @Test
+    public void testImportUsersReportsBadLines() {
+        // Given
+        InputStream input = ndjson(
+                "{\"id\":10,\"email\":\"mike@mail.ru\",\"login\":\"mike\",\"birthday\":\"2000-04-05\"}",
+                "{\"email\":\"anna@mail.ru\",\"login\":\"anna\",\"name\":\"Anna\",\"birthday\":\"2001-04-05\"}",
+                "",
+                "{\"email\":\"not an email\",\"login\":\"bob\",\"birthday\":\"2001-04-05\"}",
+                "{\"email\":\"kate@mail.ru\",\"login\":\"mike\",\"birthday\":\"2002-04-05\"}",
+                "{broken");
+        // When
+        ImportResult result = importService.importUsers(input);
+        // Then
+        assertEquals(2, result.getImported());
+        assertEquals(3, result.getFailed());
+        assertEquals(List.of(4L, 5L, 6L), List.of(result.getErrors().get(0).getLine(),
+                result.getErrors().get(1).getLine(), result.getErrors().get(2).getLine()));
+        assertEquals("email: Email should be valid", result.getErrors().get(0).getMessage());
+        assertThat(userStorage.findById(10).get()).hasFieldOrPropertyWithValue("name", "mike");
+        assertEquals(2, userStorage.findAll().size());
+        User created = userStorage.create(User.builder()
+                .email("new@mail.ru")
+                .login("newUser")
+                .birthday(LocalDate.of(2000, 1, 1))
+                .build());
+        assertTrue(created.getId() > 10);
+    }
+
+    @Test
+    public void testImportFilmsLikesAndFriendships() {
+        // Given
+        importService.importUsers(ndjson(
+                "{\"id\":1,\"email\":\"mike@mail.ru\",\"login\":\"mike\",\"birthday\":\"2000-04-05\"}",
+                "{\"id\":2,\"email\":\"anna@mail.ru\",\"login\":\"anna\",\"birthday\":\"2001-04-05\"}",
+                "{\"id\":3,\"email\":\"kate@mail.ru\",\"login\":\"kate\",\"birthday\":\"2002-04-05\"}"));
+        // When
+        ImportResult films = importService.importFilms(ndjson(
+                "{\"name\":\"Shrek\",\"description\":\"Comedy\",\"duration\":90,\"releaseDate\":\"2001-04-22\"," +
+                        "\"mpa\":{\"id\":1},\"genres\":[{\"id\":1},{\"id\":3}]}",
+                "{\"name\":\"Alien\",\"description\":\"Horror\",\"duration\":117,\"releaseDate\":\"1979-05-25\"}",
+                "{\"name\":\"Heat\",\"description\":\"Crime\",\"duration\":170,\"releaseDate\":\"1995-12-15\"," +
+                        "\"mpa\":{\"id\":4}}"));
+        ImportResult likes = importService.importLikes(ndjson(
+                "{\"filmId\":1,\"userId\":1}",
+                "{\"filmId\":1,\"userId\":2}",
+                "{\"filmId\":2,\"userId\":3}",
+                "{\"filmId\":1,\"userId\":1}",
+                "{\"filmId\":1,\"userId\":100}"));
+        ImportResult friendships = importService.importFriendships(ndjson(
+                "{\"userId\":1,\"friendId\":2}",
+                "{\"userId\":2,\"friendId\":1}",
+                "{\"userId\":1,\"friendId\":1}",
+                "{\"userId\":3,\"friendId\":1}"));
+        // Then
+        assertEquals(2, films.getImported());
+        assertEquals("mpa: Rating is required", films.getErrors().get(0).getMessage());
+        Film shrek = filmStorage.findById(1).get();
+        assertEquals(2, shrek.getGenres().size());
+        assertEquals(MPA.builder().id(4).name("R").build(), filmStorage.findById(2).get().getMpa());
+        assertEquals(3, likes.getImported());
+        assertEquals(List.of(4L, 5L), List.of(likes.getErrors().get(0).getLine(), likes.getErrors().get(1).getLine()));
+        assertEquals(2, filmStorage.findPopular(1).get(0).getLikes_count());
+        assertEquals(3, friendships.getImported());
+        assertEquals(3L, friendships.getErrors().get(0).getLine());
+        assertArrayEquals(new long[]{2}, userStorage.getFriendIds(1));
+        assertArrayEquals(new long[]{1}, userStorage.getFriendIds(2));
+        assertArrayEquals(new long[]{1}, userStorage.getFriendIds(3));
+        userStorage.loadFriendshipGraph();
+        assertArrayEquals(new long[]{2}, userStorage.getFriendIds(1));
+        assertArrayEquals(new long[]{1}, userStorage.getFriendIds(2));
+        assertArrayEquals(new long[]{1}, userStorage.getFriendIds(3));
+    }
+
+    @Test
+    public void testRolledBackFilmsStayOutOfIndexes() {
+        // Given
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        Film rolledBack = film("Shrek");
+        Film committed = film("Alien");
+        // When
+        transactionTemplate.executeWithoutResult(status -> {
+            filmStorage.createAll(List.of(rolledBack));
+            status.setRollbackOnly();
+        });
+        transactionTemplate.executeWithoutResult(status -> filmStorage.createAll(List.of(committed)));
+        // Then
+        assertTrue(filmStorage.findById(rolledBack.getId()).isEmpty());
+        assertArrayEquals(new long[]{committed.getId()}, filmStorage.findPopularIds(10));
+        assertArrayEquals(new long[0], filmStorage.search("shrek", 10, false));
+        assertArrayEquals(new long[]{committed.getId()}, filmStorage.search("alien", 10, false));
+        assertArrayEquals(new long[]{committed.getId()}, filmStorage.select(Set.of(), false, Set.of(1)).getFilmIds());
+    }
+
+    private static Film film(String name) {
+        return Film.builder()
+                .name(name)
+                .description("Description")
+                .duration(100)
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .mpa(MPA.builder().id(1).build())
+                .build();
+    }
+
+    private static InputStream ndjson(String... lines) {
+        return new ByteArrayInputStream(String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+    }
+}
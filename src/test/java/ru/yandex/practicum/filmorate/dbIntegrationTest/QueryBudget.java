@@ -0,0 +1,32 @@
+package ru.yandex.practicum.filmorate.dbIntegrationTest;
+
+import ru.yandex.practicum.filmorate.metrics.QueryScope;
+import ru.yandex.practicum.filmorate.metrics.QueryStats;
+
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Fails a test when an operation needs more database round trips than it is allowed to
+public final class QueryBudget {
+
+    private QueryBudget() {
+    }
+
+    public static QueryStats measure(Runnable operation) {
+        try (QueryScope scope = QueryScope.open()) {
+            operation.run();
+            return scope.stats();
+        }
+    }
+
+    public static <T> T assertAtMost(long statements, Supplier<T> operation) {
+        try (QueryScope scope = QueryScope.open()) {
+            T result = operation.get();
+            QueryStats stats = scope.stats();
+            assertTrue(stats.getStatements() <= statements, () -> "Expected at most " + statements
+                    + " statements, but got " + stats.getStatements() + ": " + stats.getShapes());
+            return result;
+        }
+    }
+}
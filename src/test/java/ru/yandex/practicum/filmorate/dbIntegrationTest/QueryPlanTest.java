@@ -0,0 +1,110 @@
+package ru.yandex.practicum.filmorate.dbIntegrationTest;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmDocuments;
+import ru.yandex.practicum.filmorate.storage.film.LikeCounter;
+import ru.yandex.practicum.filmorate.storage.genre.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.MPADbStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+public class QueryPlanTest {
+
+    private static final List<Class<?>> STORAGES = List.of(FilmDbStorage.class, UserDbStorage.class,
+            GenreDbStorage.class, MPADbStorage.class, LikeCounter.class, FilmDocuments.class);
+    // Constants that read every row on purpose: startup loads, full listings and the fragments they are built from
+    private static final Map<Class<?>, Set<String>> WHOLE_TABLE_READS = Map.of(
+            FilmDbStorage.class, Set.of("SELECT_FILMS", "FIND_ALL_FILMS", "GET_INDEXED_FIELDS",
+                    "SELECT_FILMS_GENRES", "GET_ALL_FILMS_GENRES", "SELECT_DOCUMENTS"),
+            UserDbStorage.class, Set.of("FIND_ALL_USERS", "GET_ALL_FRIENDS"),
+            GenreDbStorage.class, Set.of("FIND_ALL_GENRES"),
+            MPADbStorage.class, Set.of("FIND_ALL_MPA"));
+    // Constants EXPLAIN cannot take: DDL and non-SQL strings
+    private static final Map<Class<?>, Set<String>> NOT_EXPLAINABLE = Map.of(
+            FilmDbStorage.class, Set.of("RESTART_FILM_ID"),
+            UserDbStorage.class, Set.of("RESTART_USER_ID"),
+            FilmDocuments.class, Set.of("LIKES_COUNT"));
+    // H2 marks a scan as "tableScan", or names an index with no condition when it walks all of it
+    private static final Pattern FULL_SCAN = Pattern.compile(
+            "/\\* [\\w.]+\\.tableScan \\*/|/\\* PUBLIC\\.\\w+ \\*/(?! /\\* direct lookup)");
+    private static final Set<String> SECONDARY_INDEXES = Set.of("FILMS_LIKES_USER_ID", "FRIENDSHIP_FROM_USER_ID");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void testNoQueryScansWholeTable() throws IllegalAccessException {
+        // Given
+        List<String> scans = new ArrayList<>();
+        // When
+        for (Class<?> storage : STORAGES) {
+            Set<String> skipped = new HashSet<>(WHOLE_TABLE_READS.getOrDefault(storage, Set.of()));
+            skipped.addAll(NOT_EXPLAINABLE.getOrDefault(storage, Set.of()));
+            for (Field field : sqlConstants(storage)) {
+                if (skipped.contains(field.getName())) {
+                    continue;
+                }
+                String plan = explain((String) field.get(null));
+                if (FULL_SCAN.matcher(plan).find()) {
+                    scans.add(storage.getSimpleName() + "." + field.getName() + ": " + plan);
+                }
+            }
+        }
+        // Then
+        assertThat(scans).isEmpty();
+    }
+
+    @Test
+    public void testExemptionsNameExistingConstants() {
+        // Then
+        for (Map<Class<?>, Set<String>> exemptions : List.of(WHOLE_TABLE_READS, NOT_EXPLAINABLE)) {
+            exemptions.forEach((storage, names) -> {
+                Set<String> constants = new HashSet<>();
+                sqlConstants(storage).forEach(field -> constants.add(field.getName()));
+                assertThat(constants).containsAll(names);
+            });
+        }
+    }
+
+    @Test
+    public void testSecondaryIndexesCreated() {
+        // When
+        List<String> indexes = jdbcTemplate.queryForList("SELECT index_name FROM information_schema.indexes " +
+                "WHERE table_schema = 'PUBLIC'", String.class);
+        // Then
+        assertThat(indexes).containsAll(SECONDARY_INDEXES);
+    }
+
+    private String explain(String sql) {
+        return jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class).replaceAll("\\s+", " ");
+    }
+
+    private static List<Field> sqlConstants(Class<?> storage) {
+        List<Field> fields = new ArrayList<>();
+        for (Field field : storage.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) && field.getType() == String.class) {
+                field.setAccessible(true);
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,163 @@
+package ru.yandex.practicum.filmorate.dbIntegrationTest;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.datasource.ReadRouting;
+import ru.yandex.practicum.filmorate.datasource.ReplicaDataSources;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmDocument;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.film.LikeCounter;
+import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// A second in-memory H2 stands in for the replica, nothing replicates to it so every row shows where a read went
+@SpringBootTest(properties = {
+        "filmorate.datasource.replicas=" + ReadReplicaTest.REPLICA_URL,
+        "filmorate.datasource.heartbeat-interval-ms=3600000"})
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class ReadReplicaTest {
+
+    static final String REPLICA_URL = "jdbc:h2:mem:replica;DB_CLOSE_DELAY=-1";
+    private static final long REPLICA_USER_ID = 1000;
+    private static final long REPLICA_FILM_ID = 1000;
+
+    private final UserDbStorage storage;
+    private final FilmDbStorage filmStorage;
+    private final ReplicaDataSources replicas;
+    private final LikeCounter likeCounter;
+
+    @Test
+    public void testReadsGoToReplicaWithinLagLimit() {
+        // Given
+        startReplica(System.currentTimeMillis());
+        // When
+        Optional<User> user = storage.findById(REPLICA_USER_ID);
+        // Then
+        assertTrue(user.isPresent());
+        assertEquals("replica", user.get().getLogin());
+    }
+
+    @Test
+    public void testFilmDocumentReadsGoToReplica() {
+        // Given
+        startReplica(System.currentTimeMillis());
+        // When
+        Optional<FilmDocument> document = filmStorage.findDocument(REPLICA_FILM_ID);
+        List<FilmDocument> documents = filmStorage.findDocuments(new long[]{REPLICA_FILM_ID});
+        List<FilmDocument> streamed = new ArrayList<>();
+        filmStorage.forEachDocument(streamed::add);
+        // Then
+        assertTrue(document.isPresent());
+        assertTrue(new String(document.get().getJson(), StandardCharsets.UTF_8).contains("Replica film"));
+        assertEquals(1, documents.size());
+        assertEquals(List.of(REPLICA_FILM_ID), streamed.stream().map(FilmDocument::getId)
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testLaggingReplicaIsSkipped() {
+        // Given
+        startReplica(System.currentTimeMillis() - 60_000);
+        // When
+        Optional<User> user = storage.findById(REPLICA_USER_ID);
+        // Then
+        assertTrue(user.isEmpty());
+    }
+
+    @Test
+    public void testReadsAfterWriteStayOnPrimaryInSession() {
+        // Given
+        startReplica(System.currentTimeMillis());
+        List<Long> writes = new ArrayList<>();
+        Optional<User> readInSession;
+        long id;
+        // When
+        try (ReadRouting.Scope session = ReadRouting.openSession(0, 60_000, writes::add)) {
+            id = storage.create(User.builder().email("primary@mail.ru").login("primary")
+                    .birthday(LocalDate.of(1990, 1, 1)).build()).getId();
+            readInSession = storage.findById(id);
+        }
+        Optional<User> readWithoutSession = storage.findById(id);
+        // Then
+        assertTrue(readInSession.isPresent());
+        assertTrue(readWithoutSession.isEmpty());
+        assertEquals(1, writes.size());
+    }
+
+    @Test
+    public void testRecentWriteReportedByClientKeepsReadsOnPrimary() {
+        // Given
+        startReplica(System.currentTimeMillis());
+        Optional<User> user;
+        // When
+        try (ReadRouting.Scope session = ReadRouting.openSession(System.currentTimeMillis(), 60_000, writtenAt -> {
+        })) {
+            user = storage.findById(REPLICA_USER_ID);
+        }
+        // Then
+        assertTrue(user.isEmpty());
+    }
+
+    @Test
+    @DirtiesContext(methodMode = DirtiesContext.MethodMode.AFTER_METHOD)
+    public void testLikesCountDoesNotGoBackWhileFlushIsReplicated() {
+        // Given
+        startReplica(System.currentTimeMillis());
+        long userId = storage.create(User.builder().email("fan@mail.ru").login("fan")
+                .birthday(LocalDate.of(1990, 1, 1)).build()).getId();
+        Film film = filmStorage.create(Film.builder().name("Liked film").description("Description").duration(100)
+                .releaseDate(LocalDate.of(2000, 1, 1)).mpa(MPA.builder().id(1).build()).build());
+        // The replica has the film as it was before the like was flushed
+        replica().update("INSERT INTO films (film_id, name, description, duration, release_date, rating_id) " +
+                "VALUES (?, ?, ?, ?, ?, ?)", film.getId(), "Liked film", "Description", 100,
+                LocalDate.of(2000, 1, 1), 1);
+        filmStorage.addLikeToFilm(film.getId(), userId);
+        long beforeFlush = filmStorage.findById(film.getId()).orElseThrow().getLikes_count();
+        // When
+        likeCounter.flush();
+        Optional<Film> afterFlush = filmStorage.findById(film.getId());
+        // Then
+        assertEquals(1, beforeFlush);
+        assertEquals(1, afterFlush.orElseThrow().getLikes_count());
+    }
+
+    private void startReplica(long heartbeatAt) {
+        JdbcTemplate replica = replica();
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql"), new ClassPathResource("data.sql"))
+                .execute(replica.getDataSource());
+        replica.update("INSERT INTO users (user_id, email, login, name, birthday) VALUES (?, ?, ?, ?, ?)",
+                REPLICA_USER_ID, "replica@mail.ru", "replica", "Replica", LocalDate.of(1990, 1, 1));
+        replica.update("INSERT INTO films (film_id, name, description, duration, release_date, rating_id) " +
+                "VALUES (?, ?, ?, ?, ?, ?)", REPLICA_FILM_ID, "Replica film", "Description", 100,
+                LocalDate.of(2000, 1, 1), 1);
+        replica.update("INSERT INTO film_documents (film_id, body) VALUES (?, ?)", REPLICA_FILM_ID,
+                "{\"id\":1000,\"name\":\"Replica film\"}".getBytes(StandardCharsets.UTF_8));
+        replica.update("INSERT INTO replication_heartbeat (id, beat_at) VALUES (1, ?)", heartbeatAt);
+        replicas.checkLag();
+    }
+
+    private static JdbcTemplate replica() {
+        return new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "sa", "password"));
+    }
+}
@@ -0,0 +1,70 @@
+package ru.yandex.practicum.filmorate.dbIntegrationTest;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.storage.genre.CachedGenreStorage;
+import ru.yandex.practicum.filmorate.storage.genre.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.CachedMPAStorage;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.BEFORE_EACH_TEST_METHOD)
+public class ReferenceCacheTest {
+
+    private final CachedGenreStorage genreCache;
+    private final CachedMPAStorage mpaCache;
+    private final GenreDbStorage genreDbStorage;
+
+    @Test
+    public void testLoadedOnStartup() {
+        // Then
+        assertEquals(6, genreCache.findAll().size());
+        assertEquals(5, mpaCache.findAll().size());
+        assertThat(genreCache.findById(6).get()).hasFieldOrPropertyWithValue("name", "Боевик");
+        assertThat(mpaCache.findById(3).get()).hasFieldOrPropertyWithValue("name", "PG-13");
+    }
+
+    @Test
+    public void testFindByWrongId() {
+        // Then
+        assertThat(genreCache.findById(0)).isEmpty();
+        assertThat(genreCache.findById(100)).isEmpty();
+        assertThat(mpaCache.findById(-1)).isEmpty();
+    }
+
+    @Test
+    public void testServesSnapshotWithoutQuerying() {
+        // Given
+        genreDbStorage.update(Genre.builder().id(1).name("Приключения").build());
+        // When
+        Optional<Genre> cached = genreCache.findById(1);
+        // Then
+        assertThat(cached.get()).hasFieldOrPropertyWithValue("name", "Комедия");
+    }
+
+    @Test
+    public void testRebuildOnWrites() {
+        // When
+        Genre created = genreCache.create(Genre.builder().name("Приключения").build());
+        mpaCache.update(MPA.builder().id(1).name("ABC").build());
+        boolean isDeleted = genreCache.deleteById(2);
+        // Then
+        assertTrue(isDeleted);
+        assertThat(genreCache.findById(created.getId()).get()).hasFieldOrPropertyWithValue("name", "Приключения");
+        assertThat(genreCache.findById(2)).isEmpty();
+        assertEquals(6, genreCache.findAll().size());
+        assertThat(mpaCache.findById(1).get()).hasFieldOrPropertyWithValue("name", "ABC");
+    }
+}
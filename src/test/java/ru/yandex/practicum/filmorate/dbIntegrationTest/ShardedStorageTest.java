@@ -0,0 +1,174 @@
+package ru.yandex.practicum.filmorate.dbIntegrationTest;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.ShardedFilmStorage;
+import ru.yandex.practicum.filmorate.storage.shard.Shard;
+import ru.yandex.practicum.filmorate.storage.shard.ShardRebalancer;
+import ru.yandex.practicum.filmorate.storage.shard.Shards;
+import ru.yandex.practicum.filmorate.storage.user.ShardedUserStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "filmorate.storage.type=sharded",
+        "filmorate.sharding.shards=" + ShardedStorageTest.SHARD_1 + "," + ShardedStorageTest.SHARD_2})
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+// One context for the class: a context closed between methods would also close the injected shard pools
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_CLASS)
+public class ShardedStorageTest {
+
+    static final String SHARD_1 = "jdbc:h2:file:./target/shards/shard-1";
+    static final String SHARD_2 = "jdbc:h2:file:./target/shards/shard-2";
+    private static final String SHARD_3 = "jdbc:h2:file:./target/shards/shard-3";
+    private static int users;
+
+    private final ShardedUserStorage userStorage;
+    private final ShardedFilmStorage filmStorage;
+    private final Shards shards;
+    private final ShardRebalancer rebalancer;
+
+    @Test
+    public void testUsersAreSpreadAcrossShardsAndMergedInIdOrder() {
+        // Given
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            ids.add(createUser().getId());
+        }
+        // When
+        List<Long> allIds = userStorage.findAll().stream().map(User::getId).collect(Collectors.toList());
+        List<Long> pageIds = userStorage.findAll(ids.get(4), 5).stream().map(User::getId)
+                .collect(Collectors.toList());
+        // Then
+        for (Shard shard : shards.all()) {
+            assertTrue(countRows(shard, "SELECT COUNT(*) FROM users") > 0);
+        }
+        assertTrue(allIds.containsAll(ids));
+        assertEquals(allIds.stream().sorted().collect(Collectors.toList()), allIds);
+        assertEquals(ids.subList(5, 10), pageIds);
+        assertEquals(ids.get(7), userStorage.findById(ids.get(7)).orElseThrow().getId());
+    }
+
+    @Test
+    public void testFriendsOnDifferentShards() {
+        // Given
+        User user = createUser();
+        User friend = createUserOnOtherShard(user.getId());
+        // When
+        userStorage.addToFriends(user.getId(), friend.getId());
+        userStorage.addToFriends(friend.getId(), user.getId());
+        List<User> friends = userStorage.getListOfFriends(user.getId());
+        userStorage.deleteById(friend.getId());
+        // Then
+        assertEquals(List.of(friend.getId()), friends.stream().map(User::getId).collect(Collectors.toList()));
+        assertEquals(0, userStorage.getFriendIds(user.getId()).length);
+        assertEquals(0, countEverywhere("SELECT COUNT(*) FROM friends WHERE friend_id = " + friend.getId()));
+    }
+
+    @Test
+    public void testLikesAreStoredWithTheUserAndCountedOnce() {
+        // Given
+        User user = createUser();
+        User other = createUserOnOtherShard(user.getId());
+        long filmId = createFilm().getId();
+        // When
+        filmStorage.addLikeToFilm(filmId, user.getId());
+        filmStorage.addLikeToFilm(filmId, other.getId());
+        // Then
+        assertEquals(2, filmStorage.findById(filmId).orElseThrow().getLikes_count());
+        assertArrayEquals(new long[]{filmId}, filmStorage.getCommonFilmIds(user.getId(), other.getId()));
+        assertEquals(filmId, filmStorage.getUserFilms(other.getId()).get(0).getId());
+        assertEquals(1, countRows(shards.forUser(user.getId()),
+                "SELECT COUNT(*) FROM likes WHERE film_id = " + filmId));
+        // When
+        filmStorage.deleteById(filmId);
+        // Then
+        assertEquals(0, countEverywhere("SELECT COUNT(*) FROM likes WHERE film_id = " + filmId));
+    }
+
+    @Test
+    public void testRebalanceMovesUsersWithTheirFriendsAndLikes() {
+        // Given
+        User user = createUser();
+        User friend = createUserOnOtherShard(user.getId());
+        long filmId = createFilm().getId();
+        userStorage.addToFriends(user.getId(), friend.getId());
+        filmStorage.addLikeToFilm(filmId, user.getId());
+        long usersBefore = countEverywhere("SELECT COUNT(*) FROM users");
+        try (Shard third = Shard.open("shard-3", SHARD_3, "sa", "password", 2)) {
+            third.getJdbcTemplate().execute("DROP ALL OBJECTS");
+            List<Shard> grown = new ArrayList<>(shards.all());
+            grown.add(third);
+            // When
+            long moved = rebalancer.rebalance(shards.all(), grown);
+            // Then
+            assertTrue(moved > 0);
+            long usersAfter = 0;
+            for (int i = 0; i < grown.size(); i++) {
+                for (Long id : grown.get(i).getJdbcTemplate().queryForList("SELECT user_id FROM users", Long.class)) {
+                    assertEquals(i, Shards.indexOf(id, grown.size()));
+                    usersAfter++;
+                }
+            }
+            assertEquals(usersBefore, usersAfter);
+            Shard userShard = grown.get(Shards.indexOf(user.getId(), grown.size()));
+            assertEquals(1, countRows(userShard, "SELECT COUNT(*) FROM friends WHERE user_id = " + user.getId()));
+            assertEquals(1, countRows(userShard, "SELECT COUNT(*) FROM likes WHERE user_id = " + user.getId()));
+            // When
+            rebalancer.rebalance(grown, shards.all());
+            // Then
+            assertEquals(0, countRows(third, "SELECT COUNT(*) FROM users"));
+            assertEquals(usersBefore, countEverywhere("SELECT COUNT(*) FROM users"));
+            assertArrayEquals(new long[]{filmId}, filmStorage.getUserFilmIds(user.getId()));
+        }
+    }
+
+    private User createUser() {
+        users++;
+        return userStorage.create(User.builder()
+                .email("user" + users + "@mail.ru")
+                .login("user" + users)
+                .name("User " + users)
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build());
+    }
+
+    private User createUserOnOtherShard(long userId) {
+        User user = createUser();
+        while (shards.indexOf(user.getId()) == shards.indexOf(userId)) {
+            user = createUser();
+        }
+        return user;
+    }
+
+    private Film createFilm() {
+        return filmStorage.create(Film.builder()
+                .name("Film")
+                .description("Description")
+                .duration(100)
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .mpa(MPA.builder().id(1).build())
+                .build());
+    }
+
+    private long countRows(Shard shard, String query) {
+        return shard.getJdbcTemplate().queryForObject(query, Long.class);
+    }
+
+    private long countEverywhere(String query) {
+        return shards.all().stream().mapToLong(shard -> countRows(shard, query)).sum();
+    }
+}
@@ -5,6 +5,7 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.user.UserDbStorage;
@@ -23,6 +24,7 @@ import static org.junit.jupiter.api.Assertions.*;
 public class UserDBTest {
 
     private final UserDbStorage storage;
+    private final JdbcTemplate jdbcTemplate;
 
     @Test
     public void testFindUserById() {
@@ -199,6 +201,30 @@ public class UserDBTest {
         assertTrue(storage.getListOfFriends(2).contains(user1));
     }
 
+    @Test
+    public void testFriendshipGraphMatchesTableAfterRepeatedRequest() {
+        // Given
+        for (int i = 1; i <= 3; i++) {
+            storage.create(User.builder()
+                    .email("user" + i + "@mail.ru")
+                    .login("user" + i)
+                    .name("User")
+                    .birthday(LocalDate.of(2000, 4, 5))
+                    .build());
+        }
+        storage.addToFriends(1, 2);
+        storage.addToFriends(3, 2);
+        // When
+        storage.addToFriends(1, 2);
+        UserDbStorage reloaded = new UserDbStorage(jdbcTemplate);
+        reloaded.loadFriendshipGraph();
+        // Then
+        for (long id = 1; id <= 3; id++) {
+            assertArrayEquals(reloaded.getFriendIds(id), storage.getFriendIds(id));
+        }
+        assertArrayEquals(new long[]{1}, storage.getFriendIds(2));
+    }
+
     @Test
     public void testDeleteFromMutualFriendship() {
         // Given
@@ -250,4 +276,73 @@ public class UserDBTest {
         assertEquals(1, storage.findAll().size());
         System.out.println(storage.getListOfFriends(2));
     }
+
+    @Test
+    public void testGetFriendIdsAndCommonFriends() {
+        // Given
+        for (int i = 1; i <= 4; i++) {
+            storage.create(User.builder()
+                    .email("user" + i + "@mail.ru")
+                    .login("user" + i)
+                    .name("User " + i)
+                    .birthday(LocalDate.of(2000, 4, i))
+                    .build());
+        }
+        storage.addToFriends(1, 4);
+        storage.addToFriends(1, 3);
+        storage.addToFriends(2, 3);
+        storage.addToFriends(4, 2);
+        storage.addToFriends(2, 4);
+        // When
+        long[] friendIds = storage.getFriendIds(1);
+        long[] otherFriendIds = storage.getFriendIds(2);
+        List<User> users = storage.findAllByIds(new long[]{4, 10, 3});
+        // Then
+        assertArrayEquals(new long[]{3, 4}, friendIds);
+        assertArrayEquals(new long[]{3, 4}, otherFriendIds);
+        assertArrayEquals(new long[]{2}, storage.getFriendIds(4));
+        assertEquals(2, users.size());
+        assertThat(users.get(0)).hasFieldOrPropertyWithValue("id", 4L);
+        assertThat(users.get(1)).hasFieldOrPropertyWithValue("id", 3L);
+    }
+
+    @Test
+    public void testFindUsersPageAndFriendsPage() {
+        // Given
+        testGetFriendIdsAndCommonFriends();
+        // When
+        List<User> firstPage = storage.findAll(0, 3);
+        List<User> lastPage = storage.findAll(3, 3);
+        List<User> friends = storage.getListOfFriends(1, 3, 10);
+        // Then
+        assertEquals(3, firstPage.size());
+        assertThat(firstPage.get(2)).hasFieldOrPropertyWithValue("id", 3L);
+        assertEquals(1, lastPage.size());
+        assertThat(lastPage.get(0)).hasFieldOrPropertyWithValue("id", 4L);
+        assertEquals(1, friends.size());
+        assertThat(friends.get(0)).hasFieldOrPropertyWithValue("id", 4L);
+    }
+
+    @Test
+    public void testUpdateBumpsVersion() {
+        // Given
+        testUpdate();
+        // When
+        Optional<Long> version = storage.findVersion(1);
+        // Then
+        assertEquals(Optional.of(1L), version);
+        assertEquals(1, storage.findById(1).get().getVersion());
+        assertTrue(storage.findVersion(10).isEmpty());
+    }
+
+    @Test
+    public void testQueryBudgets() {
+        // Given
+        testGetFriendIdsAndCommonFriends();
+        // Then
+        QueryBudget.assertAtMost(1, () -> storage.findAll());
+        QueryBudget.assertAtMost(1, () -> storage.getListOfFriends(1));
+        QueryBudget.assertAtMost(1, () -> storage.getListOfFriends(1, 0, 10));
+        QueryBudget.assertAtMost(0, () -> storage.getFriendIds(1));
+    }
 }
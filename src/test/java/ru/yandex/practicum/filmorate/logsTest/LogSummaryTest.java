@@ -0,0 +1,43 @@
+package ru.yandex.practicum.filmorate.logsTest;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import ru.yandex.practicum.filmorate.logs.LogSummary;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LogSummaryTest {
+
+    @Test
+    public void test1_shouldSummarizeListBySizeAndFirstIds() {
+        //Given
+        List<Film> films = LongStream.rangeClosed(1, 1000)
+                .mapToObj(id -> Film.builder().id(id).name("Film " + id).description("x".repeat(200)).build())
+                .collect(Collectors.toList());
+
+        //When
+        String summary = LogSummary.of(ResponseEntity.ok(films));
+
+        //Then
+        assertEquals("ResponseEntity[200, ArrayList[size=1000, ids=[1, 2, 3, 4, 5, ...]]]", summary);
+    }
+
+    @Test
+    public void test2_shouldSummarizeArgumentsWithoutPayloads() {
+        //Given
+        User user = User.builder().id(7).email("mail@mail.ru").login("login").name("name").build();
+        String longText = "a".repeat(500);
+
+        //When
+        String summary = LogSummary.of(new Object[]{user, 42L, longText, null});
+
+        //Then
+        assertEquals("[User[id=7], 42, " + "a".repeat(100) + "..., null]", summary);
+    }
+}
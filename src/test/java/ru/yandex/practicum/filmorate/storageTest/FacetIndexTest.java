@@ -0,0 +1,83 @@
+package ru.yandex.practicum.filmorate.storageTest;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.storage.film.FacetIndex;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FacetIndexTest {
+
+    @Test
+    public void test1_shouldCombineGenresWithAnyOrAllAndRatingsWithAny() {
+        //Given
+        FacetIndex index = new FacetIndex();
+        index.put(film(1, 1, 1, 2));
+        index.put(film(2, 2, 1));
+        index.put(film(3, 1, 2, 3));
+        index.put(film(4, 3));
+
+        //When
+        FacetIndex.Selection any = index.select(Set.of(1, 2), false, Set.of());
+        FacetIndex.Selection all = index.select(Set.of(1, 2), true, Set.of());
+        FacetIndex.Selection rated = index.select(Set.of(2), false, Set.of(1, 3));
+        FacetIndex.Selection everything = index.select(Set.of(), false, Set.of());
+
+        //Then
+        assertArrayEquals(new long[]{1, 2, 3}, any.getFilmIds());
+        assertArrayEquals(new long[]{1}, all.getFilmIds());
+        assertArrayEquals(new long[]{1, 3}, rated.getFilmIds());
+        assertArrayEquals(new long[]{1, 2, 3, 4}, everything.getFilmIds());
+        assertArrayEquals(new long[0], index.select(Set.of(1, 5), true, Set.of()).getFilmIds());
+    }
+
+    @Test
+    public void test2_shouldCountFacetsOfMatchingFilms() {
+        //Given
+        FacetIndex index = new FacetIndex();
+        index.put(film(1, 1, 1, 2));
+        index.put(film(2, 2, 1));
+        index.put(film(3, 1, 2, 3));
+
+        //When
+        FacetIndex.Selection selection = index.select(Set.of(2), false, Set.of());
+
+        //Then
+        assertEquals(Map.of(1, 1L, 2, 2L, 3, 1L), selection.getGenreCounts());
+        assertEquals(Map.of(1, 2L), selection.getRatingCounts());
+    }
+
+    @Test
+    public void test3_shouldRefileUpdatedFilmsAndForgetRemovedOnes() {
+        //Given
+        FacetIndex index = new FacetIndex();
+        index.put(film(1, 1, 1));
+        index.put(film(2, 1, 1));
+
+        //When
+        index.put(film(1, 2, 2));
+        index.remove(2);
+
+        //Then
+        assertArrayEquals(new long[0], index.select(Set.of(1), false, Set.of()).getFilmIds());
+        assertArrayEquals(new long[0], index.select(Set.of(), false, Set.of(1)).getFilmIds());
+        assertArrayEquals(new long[]{1}, index.select(Set.of(2), false, Set.of(2)).getFilmIds());
+        assertEquals(Map.of(2, 1L), index.select(Set.of(), false, Set.of()).getGenreCounts());
+    }
+
+    private Film film(long id, int ratingId, Integer... genreIds) {
+        return Film.builder()
+                .id(id)
+                .mpa(MPA.builder().id(ratingId).build())
+                .genres(Arrays.stream(genreIds).map(genreId -> Genre.builder().id(genreId).build())
+                        .collect(Collectors.toSet()))
+                .build();
+    }
+}
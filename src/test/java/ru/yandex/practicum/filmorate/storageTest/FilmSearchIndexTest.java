@@ -0,0 +1,73 @@
+package ru.yandex.practicum.filmorate.storageTest;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.storage.film.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.util.Tokenizer;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FilmSearchIndexTest {
+
+    @Test
+    public void test1_shouldFoldCaseAndEndingsOfBothLanguages() {
+        //When
+        List<String> terms = Tokenizer.terms("Ёжики в тумане, Ёжик; Running MOVIES!");
+
+        //Then
+        assertEquals(List.of("ежик", "туман", "ежик", "runn", "movy"), terms);
+    }
+
+    @Test
+    public void test2_shouldRankNameMatchesAboveDescriptionMatches() {
+        //Given
+        FilmSearchIndex index = new FilmSearchIndex();
+        index.put(1, "Комедия положений", "Фильм о пиратах");
+        index.put(2, "Пираты Карибского моря", "Приключения капитана");
+        index.put(3, "Матрица", "Фантастика");
+
+        //When
+        long[] found = index.search("пираты", 10, null);
+
+        //Then
+        assertArrayEquals(new long[]{2, 1}, found);
+    }
+
+    @Test
+    public void test3_shouldMatchLastWordAsPrefix() {
+        //Given
+        FilmSearchIndex index = new FilmSearchIndex();
+        index.put(1, "Matrix", "Drama");
+        index.put(2, "Matrimony", "Drama");
+        index.put(3, "Inception", "Dreams within dreams");
+
+        //When
+        long[] prefix = index.search("matr", 10, null);
+        long[] exact = index.search("matr inception", 10, null);
+
+        //Then
+        assertArrayEquals(new long[]{1, 2}, prefix);
+        assertArrayEquals(new long[]{3}, exact);
+    }
+
+    @Test
+    public void test4_shouldBoostPopularFilmsAndForgetRemovedOnes() {
+        //Given
+        FilmSearchIndex index = new FilmSearchIndex();
+        index.put(1, "Star Wars", "Space opera");
+        index.put(2, "Star Trek", "Space opera");
+        index.put(3, "Star Dust", "Fantasy");
+
+        //When
+        long[] boosted = index.search("space", 10, id -> id == 2 ? 100 : 0);
+        index.put(2, "Trek", "Voyage");
+        index.remove(1);
+
+        //Then
+        assertArrayEquals(new long[]{2, 1}, boosted);
+        assertArrayEquals(new long[0], index.search("space", 10, null));
+        assertArrayEquals(new long[]{3}, index.search("star", 10, null));
+        assertEquals(2, index.size());
+    }
+}
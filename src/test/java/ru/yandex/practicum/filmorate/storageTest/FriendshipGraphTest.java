@@ -0,0 +1,102 @@
+package ru.yandex.practicum.filmorate.storageTest;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.storage.user.FriendshipGraph;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FriendshipGraphTest {
+
+    @Test
+    public void test1_shouldAddAndRemoveEdges() {
+        //Given
+        FriendshipGraph graph = new FriendshipGraph();
+
+        //When
+        boolean isAdded = graph.addEdge(1, 3) && graph.addEdge(1, 2);
+        boolean isAddedTwice = graph.addEdge(1, 2);
+        boolean isRemoved = graph.removeEdge(1, 3);
+
+        //Then
+        assertTrue(isAdded);
+        assertFalse(isAddedTwice);
+        assertTrue(isRemoved);
+        assertFalse(graph.removeEdge(1, 3));
+        assertArrayEquals(new long[]{2}, graph.neighbours(1));
+        assertArrayEquals(new long[0], graph.neighbours(2));
+        assertTrue(graph.hasEdge(1, 2));
+        assertFalse(graph.hasEdge(2, 1));
+    }
+
+    @Test
+    public void test2_shouldLoadSortedEdgesAndRejectUnsorted() {
+        //Given
+        FriendshipGraph graph = new FriendshipGraph();
+        FriendshipGraph.Loader loader = graph.loader();
+
+        //When
+        loader.add(1, 2);
+        loader.add(1, 300_000);
+        loader.add(5, 1);
+        loader.finish();
+
+        //Then
+        assertArrayEquals(new long[]{2, 300_000}, graph.neighbours(1));
+        assertArrayEquals(new long[]{1}, graph.neighbours(5));
+        assertEquals(3, graph.edgeCount());
+        FriendshipGraph.Loader unsorted = graph.loader();
+        unsorted.add(5, 1);
+        assertThrows(IllegalArgumentException.class, () -> unsorted.add(1, 2));
+    }
+
+    @Test
+    public void test3_shouldDropEdgesOfRemovedNode() {
+        //Given
+        FriendshipGraph graph = new FriendshipGraph();
+        graph.addEdge(1, 2);
+        graph.addEdge(2, 1);
+        graph.addEdge(3, 2);
+        graph.addEdge(3, 4);
+
+        //When
+        graph.removeNode(2);
+
+        //Then
+        assertArrayEquals(new long[0], graph.neighbours(1));
+        assertArrayEquals(new long[]{4}, graph.neighbours(3));
+        graph.compact();
+        assertArrayEquals(new long[]{4}, graph.neighbours(3));
+        assertEquals(1, graph.edgeCount());
+    }
+
+    @Test
+    public void test4_shouldMatchSetModelAcrossCompactions() {
+        //Given
+        FriendshipGraph graph = new FriendshipGraph(64);
+        Map<Long, TreeSet<Long>> model = new HashMap<>();
+        Random random = new Random(7);
+
+        //When
+        for (int i = 0; i < 20_000; i++) {
+            long from = random.nextInt(200) + 1;
+            long to = random.nextInt(200) + 1;
+            if (random.nextInt(3) == 0) {
+                assertEquals(model.getOrDefault(from, new TreeSet<>()).remove(to), graph.removeEdge(from, to));
+            } else {
+                assertEquals(model.computeIfAbsent(from, id -> new TreeSet<>()).add(to), graph.addEdge(from, to));
+            }
+            if (i % 5_000 == 0) {
+                graph.compact();
+            }
+        }
+        graph.compact();
+
+        //Then
+        for (long id = 1; id <= 200; id++) {
+            long[] expected = model.getOrDefault(id, new TreeSet<>()).stream().mapToLong(Long::longValue).toArray();
+            assertArrayEquals(expected, graph.neighbours(id));
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package ru.yandex.practicum.filmorate.storageTest;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.genre.InMemoryGenreStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.InMemoryMPAStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InMemoryStorageConcurrencyTest {
+
+    private static final int THREADS = 8;
+
+    @Test
+    public void test1_shouldCountEveryConcurrentLike() throws Exception {
+        //Given
+        InMemoryFilmStorage storage = new InMemoryFilmStorage(new InMemoryGenreStorage(), new InMemoryMPAStorage());
+        for (int i = 0; i < 10; i++) {
+            storage.create(film());
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        //When
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            long firstUserId = thread * 1000L;
+            futures.add(executor.submit(() -> {
+                for (long userId = firstUserId; userId < firstUserId + 1000; userId++) {
+                    for (long filmId = 1; filmId <= 10; filmId++) {
+                        storage.addLikeToFilm(filmId, userId);
+                    }
+                    if (userId % 2 == 0) {
+                        storage.removeLikeFromFilm(1, userId);
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        //Then
+        assertEquals(THREADS * 500, storage.findById(1).orElseThrow().getLikes_count());
+        assertEquals(THREADS * 1500, storage.findById(1).orElseThrow().getVersion());
+        assertEquals(THREADS * 1000, storage.findById(2).orElseThrow().getLikes_count());
+        assertArrayEquals(new long[]{2, 3, 4, 5, 6, 7, 8, 9, 10, 1}, storage.findPopularIds(10));
+        assertEquals(9, storage.getUserFilmIds(0).length);
+        assertEquals(10, storage.getUserFilmIds(1).length);
+        assertFalse(storage.addLikeToFilm(2, 1));
+    }
+
+    @Test
+    public void test2_shouldGiveUniqueIdsToConcurrentlyCreatedUsers() throws Exception {
+        //Given
+        InMemoryUserStorage storage = new InMemoryUserStorage();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        //When
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    storage.create(User.builder().email("user@mail.ru").login("login").name("name").build());
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(1, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        //Then
+        List<User> users = storage.findAll();
+        assertEquals(THREADS * 1000, users.size());
+        assertEquals(THREADS * 1000, users.stream().map(User::getId).collect(Collectors.toSet()).size());
+        assertEquals(THREADS * 1000, users.get(users.size() - 1).getId());
+    }
+
+    @Test
+    public void test3_shouldFindReferenceDataOfEveryInstanceById() {
+        //Given
+        new InMemoryGenreStorage();
+        InMemoryGenreStorage genreStorage = new InMemoryGenreStorage();
+        InMemoryMPAStorage mpaStorage = new InMemoryMPAStorage();
+
+        //When
+        String genreName = genreStorage.findById(2).orElseThrow().getName();
+        String mpaName = mpaStorage.findById(5).orElseThrow().getName();
+
+        //Then
+        assertEquals("Драма", genreName);
+        assertEquals("NC-17", mpaName);
+        assertTrue(genreStorage.findById(7).isEmpty());
+    }
+
+    @Test
+    public void test4_shouldNotChangeFilmsAlreadyReturnedToReaders() {
+        //Given
+        InMemoryFilmStorage storage = new InMemoryFilmStorage(new InMemoryGenreStorage(), new InMemoryMPAStorage());
+        storage.create(film());
+        Film read = storage.findById(1).orElseThrow();
+
+        //When
+        storage.addLikeToFilm(1, 1);
+        storage.addLikeToFilm(1, 2);
+        storage.removeLikeFromFilm(1, 1);
+
+        //Then
+        assertEquals(0, read.getLikes_count());
+        assertEquals(0, read.getVersion());
+        Film reread = storage.findById(1).orElseThrow();
+        assertEquals(1, reread.getLikes_count());
+        assertEquals(3, reread.getVersion());
+        assertEquals(read.getName(), reread.getName());
+    }
+
+    private Film film() {
+        return Film.builder()
+                .name("Film")
+                .description("Description")
+                .duration(100)
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .mpa(MPA.builder().id(1).build())
+                .build();
+    }
+}
@@ -0,0 +1,192 @@
+package ru.yandex.practicum.filmorate.storageTest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.MPA;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.film.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.genre.InMemoryGenreStorage;
+import ru.yandex.practicum.filmorate.storage.journal.Journal;
+import ru.yandex.practicum.filmorate.storage.journal.JournaledStorage;
+import ru.yandex.practicum.filmorate.storage.mpa.InMemoryMPAStorage;
+import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void test1_shouldRestoreFilmsFromSnapshotAndJournal() throws IOException {
+        //Given
+        InMemoryFilmStorage storage = filmStorage();
+        Journal journal = open(storage);
+        for (int i = 0; i < 5; i++) {
+            storage.create(film("Film " + i));
+        }
+        for (long userId = 1; userId <= 4; userId++) {
+            storage.addLikeToFilm(2, userId);
+            storage.addLikeToFilm(3, userId);
+        }
+        journal.checkpoint(storage::writeSnapshot);
+        storage.removeLikeFromFilm(3, 1);
+        storage.addLikeToFilm(4, 1);
+        Film updated = film("Updated");
+        updated.setId(1);
+        storage.update(updated);
+        storage.deleteById(5);
+        journal.close();
+
+        //When
+        InMemoryFilmStorage restored = filmStorage();
+        Journal reopened = open(restored);
+
+        //Then
+        assertEquals(storage.findAll(), restored.findAll());
+        assertEquals("Updated", restored.findById(1).orElseThrow().getName());
+        assertEquals(Set.of(1, 2), restored.findById(1).orElseThrow().getGenres().stream()
+                .map(Genre::getId).collect(Collectors.toSet()));
+        assertEquals(3, restored.findById(3).orElseThrow().getLikes_count());
+        assertArrayEquals(storage.findPopularIds(4), restored.findPopularIds(4));
+        assertArrayEquals(new long[]{2, 4}, restored.getUserFilmIds(1));
+        assertEquals(6, restored.create(film("New")).getId());
+        reopened.close();
+    }
+
+    @Test
+    public void test2_shouldRestoreUsersAndFriendsFromSnapshotAndJournal() throws IOException {
+        //Given
+        InMemoryUserStorage storage = new InMemoryUserStorage();
+        Journal journal = open(storage);
+        for (int i = 0; i < 4; i++) {
+            storage.create(user("login" + i));
+        }
+        storage.addToFriends(1, 2);
+        storage.addToFriends(1, 3);
+        storage.addToFriends(2, 1);
+        journal.checkpoint(storage::writeSnapshot);
+        storage.addToFriends(1, 4);
+        storage.deleteFromFriends(1, 2);
+        storage.deleteById(3);
+        User renamed = user("renamed");
+        renamed.setId(2);
+        storage.update(renamed);
+        journal.close();
+
+        //When
+        InMemoryUserStorage restored = new InMemoryUserStorage();
+        Journal reopened = open(restored);
+
+        //Then
+        assertEquals(storage.findAll(), restored.findAll());
+        assertArrayEquals(new long[]{4}, restored.getFriendIds(1));
+        assertArrayEquals(new long[]{1}, restored.getFriendIds(2));
+        assertEquals(1, restored.findVersion(2).orElseThrow());
+        assertEquals(5, restored.create(user("login5")).getId());
+        reopened.close();
+    }
+
+    @Test
+    public void test3_shouldStopAtTornRecord() throws IOException {
+        //Given
+        InMemoryUserStorage storage = new InMemoryUserStorage();
+        Journal journal = open(storage);
+        storage.create(user("login1"));
+        storage.create(user("login2"));
+        journal.close();
+        Path segment;
+        try (Stream<Path> files = Files.list(dir)) {
+            segment = files.filter(file -> file.toString().endsWith(".journal")).findFirst().orElseThrow();
+        }
+        Files.write(segment, new byte[]{0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+
+        //When
+        InMemoryUserStorage restored = new InMemoryUserStorage();
+        Journal reopened = open(restored);
+        int restoredCount = restored.findAll().size();
+        restored.create(user("login3"));
+        reopened.close();
+        InMemoryUserStorage restoredAgain = new InMemoryUserStorage();
+        open(restoredAgain).close();
+
+        //Then
+        assertEquals(2, restoredCount);
+        assertEquals(List.of("login1", "login2", "login3"), restoredAgain.findAll().stream()
+                .map(User::getLogin).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void test4_shouldLeaveNothingOfFailedImportChunk() throws IOException {
+        //Given
+        InMemoryFilmStorage storage = filmStorage();
+        Journal journal = open(storage);
+        storage.create(film("Existing"));
+        Film generated = film("Generated");
+        Film first = film("First");
+        first.setId(10);
+        Film duplicate = film("Duplicate");
+        duplicate.setId(10);
+
+        //When
+        assertThrows(IllegalArgumentException.class, () -> storage.createAll(List.of(generated, first, duplicate)));
+        journal.close();
+        InMemoryFilmStorage restored = filmStorage();
+        Journal reopened = open(restored);
+
+        //Then
+        assertEquals(0, generated.getId());
+        for (InMemoryFilmStorage films : List.of(storage, restored)) {
+            assertEquals(List.of("Existing"), films.findAll().stream().map(Film::getName)
+                    .collect(Collectors.toList()));
+            assertArrayEquals(new long[]{1}, films.findPopularIds(10));
+            assertArrayEquals(new long[0], films.search("generated first", 10, false));
+            assertArrayEquals(new long[]{1}, films.select(Set.of(1), false, Set.of()).getFilmIds());
+        }
+        reopened.close();
+    }
+
+    private Journal open(JournaledStorage storage) throws IOException {
+        Journal journal = Journal.open(dir, storage.journalName(), storage::replay);
+        storage.finishReplay();
+        storage.attach(journal);
+        return journal;
+    }
+
+    private InMemoryFilmStorage filmStorage() {
+        return new InMemoryFilmStorage(new InMemoryGenreStorage(), new InMemoryMPAStorage());
+    }
+
+    private Film film(String name) {
+        return Film.builder()
+                .name(name)
+                .description("Description")
+                .duration(100)
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .mpa(MPA.builder().id(1).build())
+                .genres(Set.of(Genre.builder().id(1).build(), Genre.builder().id(2).build()))
+                .build();
+    }
+
+    private User user(String login) {
+        return User.builder()
+                .email(login + "@mail.ru")
+                .login(login)
+                .name("name")
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build();
+    }
+}
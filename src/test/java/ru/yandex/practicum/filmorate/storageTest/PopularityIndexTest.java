@@ -0,0 +1,72 @@
+package ru.yandex.practicum.filmorate.storageTest;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.storage.film.PopularityIndex;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PopularityIndexTest {
+
+    @Test
+    public void test1_shouldKeepFilmRankedWhenLikesAreUnchanged() {
+        //Given
+        PopularityIndex index = new PopularityIndex();
+        index.put(1, 2);
+        index.put(2, 1);
+
+        //When
+        index.put(1, 2);
+        index.add(2, 0);
+
+        //Then
+        assertArrayEquals(new long[]{1, 2}, index.top(10));
+        assertEquals(2, index.likes(1));
+    }
+
+    @Test
+    public void test2_shouldReorderFilmsOnLikesChange() {
+        //Given
+        PopularityIndex index = new PopularityIndex();
+        index.put(1, 2);
+        index.put(2, 1);
+
+        //When
+        index.add(2, 2);
+        index.remove(1);
+        index.put(3, 3);
+
+        //Then
+        assertArrayEquals(new long[]{2, 3}, index.top(10));
+    }
+
+    @Test
+    public void test3_shouldNotRankFilmTwiceWhileItsLikesChange() throws Exception {
+        //Given
+        PopularityIndex index = new PopularityIndex();
+        for (long filmId = 1; filmId <= 5; filmId++) {
+            index.put(filmId, 0);
+        }
+
+        //When
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+            for (int i = 0; i < 1_000_000; i++) {
+                index.add(i % 5 + 1, -1);
+            }
+        });
+        int duplicates = 0;
+        while (!writer.isDone()) {
+            long[] top = index.top(10);
+            if (Arrays.stream(top).distinct().count() != top.length) {
+                duplicates++;
+            }
+        }
+        writer.get(1, TimeUnit.MINUTES);
+
+        //Then
+        assertEquals(0, duplicates);
+    }
+}
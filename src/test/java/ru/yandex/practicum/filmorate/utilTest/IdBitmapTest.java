@@ -0,0 +1,55 @@
+package ru.yandex.practicum.filmorate.utilTest;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.util.IdBitmap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdBitmapTest {
+
+    @Test
+    public void test1_shouldAddRemoveAndCountIds() {
+        //Given
+        IdBitmap bitmap = new IdBitmap();
+
+        //When
+        boolean isAdded = bitmap.add(5) && bitmap.add(3_000_000_000L) && bitmap.add(1);
+        boolean isAddedTwice = bitmap.add(5);
+        boolean isRemoved = bitmap.remove(1);
+
+        //Then
+        assertTrue(isAdded);
+        assertFalse(isAddedTwice);
+        assertTrue(isRemoved);
+        assertFalse(bitmap.remove(1));
+        assertEquals(2, bitmap.cardinality());
+        assertTrue(bitmap.contains(3_000_000_000L));
+        assertFalse(bitmap.contains(-5));
+        assertArrayEquals(new long[]{5, 3_000_000_000L}, bitmap.toArray());
+        assertThrows(IllegalArgumentException.class, () -> bitmap.add(1L << 32));
+    }
+
+    @Test
+    public void test2_shouldIntersectBitmaps() {
+        //Given
+        IdBitmap even = new IdBitmap();
+        IdBitmap thirds = new IdBitmap();
+        for (long id = 0; id < 100_000; id++) {
+            if (id % 2 == 0) {
+                even.add(id);
+            }
+            if (id % 3 == 0) {
+                thirds.add(id);
+            }
+        }
+
+        //When
+        long[] common = IdBitmap.intersect(even, thirds);
+
+        //Then
+        assertEquals(16_667, common.length);
+        assertEquals(0, common[0]);
+        assertEquals(6, common[1]);
+        assertEquals(99_996, common[common.length - 1]);
+    }
+}
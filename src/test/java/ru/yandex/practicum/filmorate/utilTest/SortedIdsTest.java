@@ -0,0 +1,75 @@
+package ru.yandex.practicum.filmorate.utilTest;
+
+import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.util.SortedIds;
+
+import java.util.List;
+import java.util.Random;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+public class SortedIdsTest {
+
+    @Test
+    public void test1_shouldIntersectArraysOfSimilarSize() {
+        //Given
+        long[] a = {1, 3, 5, 7, 9};
+        long[] b = {2, 3, 4, 5, 10};
+
+        //When
+        long[] common = SortedIds.intersect(a, b);
+
+        //Then
+        assertArrayEquals(new long[]{3, 5}, common);
+    }
+
+    @Test
+    public void test2_shouldGallopThroughMuchLargerArray() {
+        //Given
+        long[] small = {0, 17, 4_000, 99_998, 99_999, 150_000, 250_000};
+        long[] large = LongStream.range(0, 100_000).map(id -> id * 2).toArray();
+
+        //When
+        long[] common = SortedIds.intersect(small, large);
+
+        //Then
+        assertArrayEquals(new long[]{0, 4_000, 99_998, 150_000}, common);
+        assertArrayEquals(common, SortedIds.intersect(large, small));
+    }
+
+    @Test
+    public void test3_shouldMatchNaiveIntersectionOnRandomData() {
+        //Given
+        Random random = new Random(42);
+        long[] small = random.longs(300, 0, 50_000).sorted().distinct().toArray();
+        long[] large = random.longs(40_000, 0, 50_000).sorted().distinct().toArray();
+
+        //When
+        long[] common = SortedIds.intersect(small, large);
+
+        //Then
+        long[] expected = LongStream.of(small)
+                .filter(id -> LongStream.of(large).anyMatch(other -> other == id))
+                .toArray();
+        assertArrayEquals(expected, common);
+    }
+
+    @Test
+    public void test4_shouldHandleEmptyArraysAndSortUnorderedIds() {
+        //Then
+        assertArrayEquals(new long[0], SortedIds.intersect(new long[0], new long[]{1, 2}));
+        assertArrayEquals(new long[]{1, 2, 8}, SortedIds.of(List.of(8L, 1L, 2L)));
+    }
+
+    @Test
+    public void test5_shouldPageAfterGivenId() {
+        //Given
+        long[] ids = {2, 4, 6, 8};
+        //Then
+        assertArrayEquals(new long[]{2, 4}, SortedIds.page(ids, 0, 2));
+        assertArrayEquals(new long[]{6, 8}, SortedIds.page(ids, 4, 5));
+        assertArrayEquals(new long[]{6}, SortedIds.page(ids, 5, 1));
+        assertArrayEquals(new long[0], SortedIds.page(ids, 8, Integer.MAX_VALUE));
+    }
+}
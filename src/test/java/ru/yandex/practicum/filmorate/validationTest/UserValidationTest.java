@@ -3,6 +3,7 @@ package ru.yandex.practicum.filmorate.validationTest;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import ru.yandex.practicum.filmorate.async.StorageExecutor;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.UserService;
 import ru.yandex.practicum.filmorate.storage.user.InMemoryUserStorage;
@@ -137,7 +138,7 @@ public class UserValidationTest {
                 .build();
 
         //When
-        UserService service = new UserService(new InMemoryUserStorage());
+        UserService service = new UserService(new InMemoryUserStorage(), StorageExecutor.inline());
         service.createUser(user);
 
         //Then